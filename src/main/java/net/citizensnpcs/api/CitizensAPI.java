@@ -5,6 +5,7 @@ import java.io.File;
 import org.bukkit.Bukkit;
 import org.bukkit.event.Listener;
 import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
 
 import net.citizensnpcs.api.ai.speech.SpeechFactory;
 import net.citizensnpcs.api.command.CommandManager;
@@ -12,6 +13,7 @@ import net.citizensnpcs.api.npc.NPC;
 import net.citizensnpcs.api.npc.NPCDataStore;
 import net.citizensnpcs.api.npc.NPCRegistry;
 import net.citizensnpcs.api.npc.NPCSelector;
+import net.citizensnpcs.api.npc.NPCSpatialIndex;
 import net.citizensnpcs.api.scripting.ScriptCompiler;
 import net.citizensnpcs.api.trait.TraitFactory;
 
@@ -22,6 +24,18 @@ public final class CitizensAPI {
     private CitizensAPI() {
     }
 
+    private static void cancelTasks() {
+        if (spatialIndexTask != null) {
+            spatialIndexTask.cancel();
+            spatialIndexTask = null;
+        }
+        spatialIndex = null;
+        if (tickTask != null) {
+            tickTask.cancel();
+            tickTask = null;
+        }
+    }
+
     /**
      * Creates a new <em>anonymous</em> {@link NPCRegistry} with its own set of {@link NPC}s. This is not stored by the
      * Citizens plugin.
@@ -65,6 +79,19 @@ public final class CitizensAPI {
         return getImplementation().getCommandManager();
     }
 
+    /**
+     * Gets the number of server ticks counted so far. The count is shared by all NPCs, so work that runs every N ticks
+     * can be spread over the ticks by NPC id. Counting starts on the first call once an implementation is enabled.
+     *
+     * @return The current tick
+     */
+    public static long getCurrentTick() {
+        if (tickTask == null && hasImplementation() && getPlugin().isEnabled()) {
+            tickTask = Bukkit.getScheduler().runTaskTimer(getPlugin(), () -> currentTick++, 1, 1);
+        }
+        return currentTick;
+    }
+
     /**
      * @return The data folder of the current implementation
      */
@@ -120,6 +147,21 @@ public final class CitizensAPI {
         return getImplementation().getNPCRegistry();
     }
 
+    /**
+     * Gets the shared {@link NPCSpatialIndex} of the spawned NPCs in every {@link NPCRegistry}, which is updated every
+     * tick.
+     *
+     * @return The spatial index
+     */
+    public static NPCSpatialIndex getNPCSpatialIndex() {
+        if (spatialIndex == null) {
+            spatialIndex = new NPCSpatialIndex(() -> getNPCRegistries().iterator());
+            spatialIndex.update();
+            spatialIndexTask = Bukkit.getScheduler().runTaskTimer(getPlugin(), spatialIndex::update, 1, 1);
+        }
+        return spatialIndex;
+    }
+
     /**
      * @return The current {@link Plugin} providing an implementation
      */
@@ -209,12 +251,14 @@ public final class CitizensAPI {
             getImplementation().onImplementationChanged();
         }
         instance = implementation;
+        cancelTasks();
     }
 
     /**
      * Shuts down any resources currently being held.
      */
     public static void shutdown() {
+        cancelTasks();
         if (scriptCompiler == null)
             return;
         instance = null;
@@ -222,6 +266,10 @@ public final class CitizensAPI {
         scriptCompiler = null;
     }
 
+    private static long currentTick;
     private static CitizensPlugin instance = null;
     private static ScriptCompiler scriptCompiler;
+    private static NPCSpatialIndex spatialIndex;
+    private static BukkitTask spatialIndexTask;
+    private static BukkitTask tickTask;
 }
\ No newline at end of file
@@ -52,6 +52,16 @@ public interface GoalController extends Runnable, Iterable<GoalEntry> {
      */
     void clear();
 
+    /**
+     * Returns how often the controller is run by its NPC, in ticks.
+     *
+     * @see net.citizensnpcs.api.npc.NPCTickScheduler
+     * @return The tick period
+     */
+    default int getTickPeriod() {
+        return 1;
+    }
+
     /**
      * @return Whether a goal is currently being executed
      */
@@ -88,6 +98,26 @@ public interface GoalController extends Runnable, Iterable<GoalEntry> {
      */
     void setPaused(boolean paused);
 
+    /**
+     * Asks the controller to check every goal on its next tick, for example after an event that may allow a goal to
+     * start. Controllers that check every goal each tick can ignore this.
+     *
+     * @see ScheduledGoal
+     */
+    default void wake() {
+    }
+
+    /**
+     * Asks the controller to check the given goal on its next tick.
+     *
+     * @see #wake()
+     * @param goal
+     *            The goal to check
+     */
+    default void wake(Goal goal) {
+        wake();
+    }
+
     public static interface GoalEntry extends Comparable<GoalEntry> {
         /**
          * @return The {@link Behavior} held by this entry if it holds one, otherwise null
@@ -36,6 +36,7 @@ public class NavigatorParameters implements Cloneable {
     private float straightLineTargetingDistance;
     private StuckAction stuckAction;
     private int updatePathRate;
+    private boolean useHierarchicalPathfinder;
     private boolean useNewPathfinder;
 
     /**
@@ -535,6 +536,27 @@ public class NavigatorParameters implements Cloneable {
         return this;
     }
 
+    /**
+     * @see #useHierarchicalPathfinder(boolean)
+     * @return Whether to use the hierarchical pathfinder
+     */
+    public boolean useHierarchicalPathfinder() {
+        return useHierarchicalPathfinder;
+    }
+
+    /**
+     * Sets whether to search long paths using a hierarchical (HPA*) graph in
+     * {@link net.citizensnpcs.api.hpastar.HPAGraph} before falling back to the A* pathfinder. Only used if
+     * {@link #useNewPathfinder()} is true.
+     *
+     * @param use
+     *            Whether to use the hierarchical pathfinder
+     */
+    public NavigatorParameters useHierarchicalPathfinder(boolean use) {
+        useHierarchicalPathfinder = use;
+        return this;
+    }
+
     /**
      * @see #useNewPathfinder(boolean)
      * @return Whether to use the new pathfinder
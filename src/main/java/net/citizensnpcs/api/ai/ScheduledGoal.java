@@ -0,0 +1,17 @@
+package net.citizensnpcs.api.ai;
+
+/**
+ * A {@link Goal} that only needs {@link #shouldExecute(GoalSelector)} to be checked every so often while it is not
+ * executing, for example because it scans for nearby entities. Goals that can only start after an event, such as
+ * navigation completing, can return 0 and call {@link GoalController#wake(Goal)} from the event instead.
+ */
+public interface ScheduledGoal extends Goal {
+    /**
+     * Returns how long to wait after {@link #shouldExecute(GoalSelector)} returns false before checking it again. The
+     * interval is counted in runs of the {@link GoalController}, which is every tick unless the controller has a
+     * longer tick period, which the NPC's level of detail can lengthen further.
+     *
+     * @return The number of controller runs to wait, or 0 to wait until the goal is woken
+     */
+    int getReevaluationInterval();
+}
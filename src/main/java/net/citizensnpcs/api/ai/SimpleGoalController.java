@@ -2,8 +2,10 @@ package net.citizensnpcs.api.ai;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
@@ -15,6 +17,12 @@ import net.citizensnpcs.api.ai.tree.ForwardingBehaviorGoalAdapter;
 /**
  * A simple {@link GoalController} implementation that stores goals as a {@link ArrayList}. It works with both
  * {@link Behavior}, {@link Goal} and will also consider {@link PrioritisableGoal}s if implemented.
+ *
+ * By default every goal that is not executing is checked each time the controller runs. Goals implementing
+ * {@link ScheduledGoal}, and all other goals once {@link #setReevaluationInterval(int)} is raised, are only checked
+ * again after their interval, counted in runs of the controller, or when the controller is woken. The controller wakes
+ * itself when goals are added or removed, when the executing goal finishes and when it is unpaused, so an idle NPC
+ * whose goals are all waiting costs almost nothing per tick.
  */
 public class SimpleGoalController implements GoalController {
     private final List<Goal> executingGoals = Lists.newArrayList();
@@ -22,8 +30,14 @@ public class SimpleGoalController implements GoalController {
     private Goal executingRootGoal;
     private boolean hasPrioritisableGoal;
     private volatile boolean paused;
+    private long nextEvaluation;
     private final List<GoalEntry> possibleGoals = Lists.newArrayList();
+    private int reevaluationInterval = 1;
     private final GoalSelector selector = new SimpleGoalSelector();
+    private long tick;
+    private int tickPeriod = 1;
+    private final Map<Goal, Long> wakeTicks = new IdentityHashMap<Goal, Long>();
+    private boolean woken = true;
 
     @Override
     public void addBehavior(Behavior behavior, int priority) {
@@ -43,6 +57,7 @@ public class SimpleGoalController implements GoalController {
             return;
         possibleGoals.add(entry);
         Collections.sort(possibleGoals);
+        woken = true;
     }
 
     private void addGoalToExecution(Goal goal) {
@@ -79,6 +94,7 @@ public class SimpleGoalController implements GoalController {
             }
         });
         hasPrioritisableGoal = true;
+        woken = true;
     }
 
     @Override
@@ -90,6 +106,7 @@ public class SimpleGoalController implements GoalController {
     public void clear() {
         finishCurrentGoalExecution();
         possibleGoals.clear();
+        wakeTicks.clear();
     }
 
     private void finishCurrentGoalExecution() {
@@ -98,6 +115,19 @@ public class SimpleGoalController implements GoalController {
         resetGoalList();
         executingPriority = -1;
         executingRootGoal = null;
+        woken = true;
+    }
+
+    /**
+     * @see #setReevaluationInterval(int)
+     */
+    public int getReevaluationInterval() {
+        return reevaluationInterval;
+    }
+
+    @Override
+    public int getTickPeriod() {
+        return tickPeriod;
     }
 
     @Override
@@ -129,6 +159,8 @@ public class SimpleGoalController implements GoalController {
             @Override
             public void remove() {
                 itr.remove();
+                wakeTicks.remove(cur.getGoal());
+                woken = true;
                 if (cur.getGoal() == executingRootGoal) {
                     finishCurrentGoalExecution();
                 }
@@ -142,6 +174,8 @@ public class SimpleGoalController implements GoalController {
             Goal test = possibleGoals.get(i).getGoal();
             if (test.equals(behavior)) {
                 possibleGoals.remove(i--);
+                wakeTicks.remove(test);
+                woken = true;
                 if (test == executingRootGoal)
                     finishCurrentGoalExecution();
             }
@@ -156,6 +190,8 @@ public class SimpleGoalController implements GoalController {
             if (!test.equals(goal))
                 continue;
             possibleGoals.remove(j--);
+            wakeTicks.remove(test);
+            woken = true;
             if (test == executingRootGoal) {
                 finishCurrentGoalExecution();
             }
@@ -184,7 +220,11 @@ public class SimpleGoalController implements GoalController {
     public void run() {
         if (possibleGoals.isEmpty() || paused)
             return;
-        trySelectGoal();
+        tick++;
+        if (woken || tick >= nextEvaluation) {
+            woken = false;
+            trySelectGoal();
+        }
         for (int i = 0; i < executingGoals.size(); ++i) {
             Goal goal = executingGoals.get(i);
             goal.run(selector);
@@ -193,26 +233,76 @@ public class SimpleGoalController implements GoalController {
 
     @Override
     public void setPaused(boolean paused) {
+        if (this.paused && !paused) {
+            woken = true;
+        }
         this.paused = paused;
     }
 
+    /**
+     * Sets how often the controller is run by its NPC, in ticks. Reevaluation intervals are counted in runs of the
+     * controller.
+     *
+     * @param period
+     *            The tick period
+     */
+    public void setTickPeriod(int period) {
+        Preconditions.checkArgument(period > 0, "period must be positive");
+        this.tickPeriod = period;
+    }
+
+    /**
+     * Sets the number of controller runs to wait after a goal's {@link Goal#shouldExecute(GoalSelector)} returns false
+     * before checking it again, for goals that are not {@link ScheduledGoal}s. Defaults to 1, which checks every run.
+     *
+     * @param ticks
+     *            The interval in runs, or 0 to only check goals after the controller is woken
+     */
+    public void setReevaluationInterval(int ticks) {
+        Preconditions.checkArgument(ticks >= 0, "interval cannot be negative");
+        this.reevaluationInterval = ticks;
+        wake();
+    }
+
     private void setupExecution(GoalEntry entry) {
         finishCurrentGoalExecution();
         executingPriority = entry.getPriority();
         executingRootGoal = entry.getGoal();
+        wakeTicks.remove(executingRootGoal);
+        // goals of the same priority that were not checked this tick may still replace the new goal
+        nextEvaluation = tick + 1;
         addGoalToExecution(entry.getGoal());
     }
 
+    private void sleep(Goal goal) {
+        int interval = goal instanceof ScheduledGoal ? ((ScheduledGoal) goal).getReevaluationInterval()
+                : reevaluationInterval;
+        long wakeTick = interval <= 0 ? Long.MAX_VALUE : tick + interval;
+        wakeTicks.put(goal, wakeTick);
+        nextEvaluation = Math.min(nextEvaluation, wakeTick);
+    }
+
     private void trySelectGoal() {
         int searchPriority = Math.max(executingPriority, 1);
         if (hasPrioritisableGoal) {
             Collections.sort(possibleGoals);
         }
+        // prioritisable goals may rise above the executing goal at any time
+        nextEvaluation = hasPrioritisableGoal ? tick + 1 : Long.MAX_VALUE;
         for (int i = possibleGoals.size() - 1; i >= 0; --i) {
             GoalEntry entry = possibleGoals.get(i);
             if (searchPriority > entry.getPriority())
                 return;
-            if (entry.getGoal() == executingRootGoal || !entry.getGoal().shouldExecute(selector)) {
+            Goal goal = entry.getGoal();
+            if (goal == executingRootGoal)
+                continue;
+            Long wakeTick = wakeTicks.get(goal);
+            if (wakeTick != null && wakeTick > tick) {
+                nextEvaluation = Math.min(nextEvaluation, wakeTick);
+                continue;
+            }
+            if (!goal.shouldExecute(selector)) {
+                sleep(goal);
                 continue;
             }
             if (i == 0) {
@@ -244,6 +334,18 @@ public class SimpleGoalController implements GoalController {
         }
     }
 
+    @Override
+    public void wake() {
+        wakeTicks.clear();
+        woken = true;
+    }
+
+    @Override
+    public void wake(Goal goal) {
+        wakeTicks.remove(goal);
+        woken = true;
+    }
+
     public class SimpleGoalSelector implements GoalSelector {
         @Override
         public void finish() {
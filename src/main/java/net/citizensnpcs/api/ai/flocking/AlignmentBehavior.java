@@ -13,7 +13,7 @@ import net.citizensnpcs.api.npc.NPC;
  *      "https://en.wikipedia.org/wiki/Flocking_(behavior)">https://en.wikipedia.org/wiki/Flocking_(behavior)</a>
  */
 public class AlignmentBehavior implements FlockBehavior {
-    private final double weight;
+    final double weight;
 
     public AlignmentBehavior(double weight) {
         this.weight = weight;
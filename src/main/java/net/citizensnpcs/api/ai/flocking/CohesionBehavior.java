@@ -14,7 +14,7 @@ import net.citizensnpcs.api.npc.NPC;
  *      "https://en.wikipedia.org/wiki/Flocking_(behavior)">https://en.wikipedia.org/wiki/Flocking_(behavior)</a>
  */
 public class CohesionBehavior implements FlockBehavior {
-    private final double weight;
+    final double weight;
 
     public CohesionBehavior(double weight) {
         this.weight = weight;
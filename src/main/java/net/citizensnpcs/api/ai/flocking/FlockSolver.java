@@ -0,0 +1,268 @@
+package net.citizensnpcs.api.ai.flocking;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bukkit.Location;
+import org.bukkit.entity.Entity;
+import org.bukkit.util.Vector;
+
+import com.google.common.collect.Lists;
+
+import net.citizensnpcs.api.npc.NPC;
+
+/**
+ * Steers a whole flock at once, as a {@link Runnable} that should be run every tick instead of one {@link Flocker} per
+ * NPC. The positions and velocities of the members and their neighbours are read once into flat arrays, and
+ * {@link SeparationBehavior}, {@link AlignmentBehavior} and {@link CohesionBehavior} are computed together in a
+ * single pass over each member's neighbours. Other {@link FlockBehavior}s are called as usual.
+ *
+ * Results are the same as running a {@link Flocker} with the same behaviors for every member, except that every member
+ * sees the velocities from the start of the tick.
+ */
+public class FlockSolver implements Runnable {
+    private final List<FlockBehavior> behaviors;
+    private final boolean custom;
+    private final NPCFlock flock;
+    double[] forces = new double[48];
+    private final Map<NPC, Integer> indices = new IdentityHashMap<NPC, Integer>();
+    private double maxForce = 1.5;
+    int memberCount;
+    private final Collection<NPC> members;
+    int[] neighbours = new int[64];
+    private NPC[] npcs = new NPC[16];
+    int[] offsets = new int[17];
+    double[] positions = new double[48];
+    private final int[] separationCounts;
+    private final SeparationBehavior[] separations;
+    private final double[] separationSums;
+    int size;
+    double[] velocities = new double[48];
+
+    /**
+     * @param members
+     *            the NPCs to steer, which is read every tick
+     * @param flock
+     *            the flock giving the neighbours of each member
+     * @param behaviors
+     *            the behaviors to combine
+     */
+    public FlockSolver(Collection<NPC> members, NPCFlock flock, FlockBehavior... behaviors) {
+        this.members = members;
+        this.flock = flock;
+        this.behaviors = Arrays.asList(behaviors);
+        List<SeparationBehavior> separations = Lists.newArrayList();
+        boolean custom = false;
+        for (FlockBehavior behavior : behaviors) {
+            if (behavior instanceof SeparationBehavior) {
+                separations.add((SeparationBehavior) behavior);
+            } else if (!(behavior instanceof AlignmentBehavior) && !(behavior instanceof CohesionBehavior)) {
+                custom = true;
+            }
+        }
+        this.custom = custom;
+        this.separations = separations.toArray(new SeparationBehavior[separations.size()]);
+        this.separationCounts = new int[separations.size()];
+        this.separationSums = new double[separations.size() * 2];
+    }
+
+    private int add(NPC npc) {
+        Integer index = indices.get(npc);
+        if (index != null)
+            return index;
+        if (size == npcs.length) {
+            npcs = Arrays.copyOf(npcs, size * 2);
+            positions = Arrays.copyOf(positions, size * 6);
+            velocities = Arrays.copyOf(velocities, size * 6);
+        }
+        Entity entity = npc.getEntity();
+        Location location = entity.getLocation(LOCATION_CACHE);
+        Vector velocity = entity.getVelocity();
+        int base = size * 3;
+        positions[base] = location.getX();
+        positions[base + 1] = location.getY();
+        positions[base + 2] = location.getZ();
+        velocities[base] = velocity.getX();
+        velocities[base + 1] = velocity.getY();
+        velocities[base + 2] = velocity.getZ();
+        npcs[size] = npc;
+        indices.put(npc, size);
+        return size++;
+    }
+
+    private void addNeighbour(int offset, int neighbour) {
+        if (offset == neighbours.length) {
+            neighbours = Arrays.copyOf(neighbours, offset * 2);
+        }
+        neighbours[offset] = neighbour;
+    }
+
+    /**
+     * Adds the behaviors that are not computed by {@link #solve()}, clips the forces and sets the new velocities.
+     */
+    private void apply() {
+        for (int i = 0; i < memberCount; i++) {
+            if (offsets[i] == offsets[i + 1])
+                continue;
+            int base = i * 3;
+            double x = forces[base], y = forces[base + 1], z = forces[base + 2];
+            if (custom) {
+                Collection<NPC> nearby = getNeighbours(i);
+                for (FlockBehavior behavior : behaviors) {
+                    if (behavior instanceof SeparationBehavior || behavior instanceof AlignmentBehavior
+                            || behavior instanceof CohesionBehavior)
+                        continue;
+                    Vector vector = behavior.getVector(npcs[i], nearby);
+                    x += vector.getX();
+                    y += vector.getY();
+                    z += vector.getZ();
+                }
+            }
+            double length = Math.sqrt(x * x + y * y + z * z);
+            if (length > maxForce) {
+                x = x / length * maxForce;
+                y = y / length * maxForce;
+                z = z / length * maxForce;
+            }
+            npcs[i].getEntity().setVelocity(
+                    new Vector(velocities[base] + x, velocities[base + 1] + y, velocities[base + 2] + z));
+        }
+    }
+
+    private void clear() {
+        Arrays.fill(npcs, 0, size, null);
+        indices.clear();
+        size = 0;
+    }
+
+    private Collection<NPC> getNeighbours(int member) {
+        List<NPC> nearby = Lists.newArrayListWithCapacity(offsets[member + 1] - offsets[member]);
+        for (int k = offsets[member]; k < offsets[member + 1]; k++) {
+            nearby.add(npcs[neighbours[k]]);
+        }
+        return nearby;
+    }
+
+    /**
+     * Reads the spawned members and their spawned neighbours. Members are stored first, so that the index of a member
+     * is also its index into {@link #offsets} and {@link #forces}.
+     */
+    private void load() {
+        for (NPC npc : members) {
+            if (npc.isSpawned()) {
+                add(npc);
+            }
+        }
+        memberCount = size;
+        if (offsets.length <= memberCount) {
+            offsets = new int[memberCount * 2 + 1];
+        }
+        if (forces.length < memberCount * 3) {
+            forces = new double[memberCount * 6];
+        }
+        int offset = 0;
+        for (int i = 0; i < memberCount; i++) {
+            offsets[i] = offset;
+            for (NPC neighbour : flock.getNearby(npcs[i])) {
+                if (!neighbour.isSpawned())
+                    continue;
+                addNeighbour(offset++, add(neighbour));
+            }
+        }
+        offsets[memberCount] = offset;
+    }
+
+    @Override
+    public void run() {
+        try {
+            load();
+            solve();
+            apply();
+        } finally {
+            clear();
+        }
+    }
+
+    /**
+     * Sets the maximum length of the resultant flocking vector.
+     *
+     * @param maxForce
+     *            the new maximum length
+     */
+    public void setMaxForce(double maxForce) {
+        if (maxForce == 0)
+            throw new IllegalArgumentException();
+        this.maxForce = maxForce;
+    }
+
+    /**
+     * Computes the combined force of the built in behaviors on every member from the loaded arrays.
+     */
+    void solve() {
+        for (int i = 0; i < memberCount; i++) {
+            int base = i * 3, start = offsets[i], end = offsets[i + 1];
+            forces[base] = forces[base + 1] = forces[base + 2] = 0;
+            if (start == end)
+                continue;
+            double x = positions[base], y = positions[base + 1], z = positions[base + 2];
+            double px = 0, py = 0, pz = 0, vx = 0, vy = 0, vz = 0;
+            Arrays.fill(separationCounts, 0);
+            Arrays.fill(separationSums, 0);
+            for (int k = start; k < end; k++) {
+                int j = neighbours[k] * 3;
+                px += positions[j];
+                py += positions[j + 1];
+                pz += positions[j + 2];
+                vx += velocities[j];
+                vy += velocities[j + 1];
+                vz += velocities[j + 2];
+                if (separations.length == 0)
+                    continue;
+                double dx = x - positions[j], dz = z - positions[j + 2];
+                double dist = Math.sqrt(dx * dx + dz * dz);
+                if (dist == 0)
+                    continue;
+                double scale = 1 / (dist * 50);
+                for (int s = 0; s < separations.length; s++) {
+                    if (dist > separations[s].separation)
+                        continue;
+                    separationSums[s * 2] += dx / dist * scale;
+                    separationSums[s * 2 + 1] += dz / dist * scale;
+                    separationCounts[s]++;
+                }
+            }
+            double inverse = 1.0 / (end - start);
+            double cx = x - px * inverse, cy = y - py * inverse, cz = z - pz * inverse;
+            double cohesionLength = Math.sqrt(cx * cx + cy * cy + cz * cz);
+            double fx = 0, fy = 0, fz = 0;
+            int separation = 0;
+            for (FlockBehavior behavior : behaviors) {
+                if (behavior instanceof SeparationBehavior) {
+                    double weight = separations[separation].weight;
+                    int count = Math.max(1, separationCounts[separation]);
+                    fx += separationSums[separation * 2] / count * weight;
+                    fz += separationSums[separation * 2 + 1] / count * weight;
+                    separation++;
+                } else if (behavior instanceof AlignmentBehavior) {
+                    double weight = ((AlignmentBehavior) behavior).weight;
+                    fx += (vx * inverse - velocities[base]) * weight;
+                    fy += (vy * inverse - velocities[base + 1]) * weight;
+                    fz += (vz * inverse - velocities[base + 2]) * weight;
+                } else if (behavior instanceof CohesionBehavior && cohesionLength != 0) {
+                    double weight = ((CohesionBehavior) behavior).weight;
+                    fx += cx / cohesionLength * weight;
+                    fy += cy / cohesionLength * weight;
+                    fz += cz / cohesionLength * weight;
+                }
+            }
+            forces[base] = fx;
+            forces[base + 1] = fy;
+            forces[base + 2] = fz;
+        }
+    }
+
+    private static final Location LOCATION_CACHE = new Location(null, 0, 0, 0);
+}
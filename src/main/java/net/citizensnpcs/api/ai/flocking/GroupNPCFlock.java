@@ -1,23 +1,35 @@
 package net.citizensnpcs.api.ai.flocking;
 
-import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
+import java.util.Map;
 
+import org.bukkit.Location;
+import org.bukkit.World;
+
+import com.google.common.collect.Lists;
+
+import net.citizensnpcs.api.CitizensAPI;
 import net.citizensnpcs.api.npc.NPC;
 
 /**
  * Defines a static flock of NPCs with an optional radius. If the radius is positive then NPCs will only be considered
  * part of the flock if they are within the base NPC's radius currently.
+ *
+ * With a radius, the nearby members of every member are computed together from one snapshot of their positions,
+ * taken on the first call in each tick of {@link CitizensAPI#getCurrentTick()}. The returned collections are reused by
+ * the next snapshot and must not be modified.
  */
 public class GroupNPCFlock implements NPCFlock {
+    private Map<NPC, List<NPC>> nearby = new IdentityHashMap<NPC, List<NPC>>();
     private final List<NPC> npcs;
     private final double radius;
+    private long snapshotTick = -1;
 
     public GroupNPCFlock(Iterable<NPC> npcs, double radius) {
-        this.npcs = new ArrayList<NPC>();
+        this.npcs = Lists.newArrayList(npcs);
         this.radius = radius;
     }
 
@@ -25,18 +37,66 @@ public class GroupNPCFlock implements NPCFlock {
     public Collection<NPC> getNearby(final NPC npc) {
         if (radius < 0)
             return npcs;
-        return npcs.stream().filter(new Predicate<NPC>() {
-            @Override
-            public boolean test(NPC input) {
-                return input.getStoredLocation().distance(npc.getStoredLocation()) < radius;
-            }
-        }).collect(Collectors.<NPC> toList());
+        long tick = CitizensAPI.getCurrentTick();
+        if (tick != snapshotTick) {
+            snapshot();
+            snapshotTick = tick;
+        }
+        List<NPC> result = nearby.get(npc);
+        return result == null ? Collections.<NPC> emptyList() : result;
     }
 
     public List<NPC> getNPCs() {
         return npcs;
     }
 
+    private void snapshot() {
+        Map<NPC, List<NPC>> previous = nearby;
+        nearby = new IdentityHashMap<NPC, List<NPC>>();
+        int size = npcs.size();
+        NPC[] members = new NPC[size];
+        World[] worlds = new World[size];
+        double[] positions = new double[size * 3];
+        int count = 0;
+        for (NPC npc : npcs) {
+            Location location = npc.isSpawned() ? npc.getEntity().getLocation(LOCATION_CACHE)
+                    : npc.getStoredLocation();
+            List<NPC> list = previous.get(npc);
+            if (list == null) {
+                list = Lists.newArrayList();
+            } else {
+                list.clear();
+            }
+            nearby.put(npc, list);
+            if (location == null)
+                continue;
+            members[count] = npc;
+            worlds[count] = location.getWorld();
+            positions[count * 3] = location.getX();
+            positions[count * 3 + 1] = location.getY();
+            positions[count * 3 + 2] = location.getZ();
+            count++;
+        }
+        double radiusSquared = radius * radius;
+        // each pair is checked once, adding members in the order of the group
+        for (int i = 0; i < count; i++) {
+            List<NPC> list = nearby.get(members[i]);
+            if (radiusSquared > 0) {
+                list.add(members[i]);
+            }
+            for (int j = i + 1; j < count; j++) {
+                if (worlds[i] != worlds[j])
+                    continue;
+                double dx = positions[i * 3] - positions[j * 3], dy = positions[i * 3 + 1] - positions[j * 3 + 1],
+                        dz = positions[i * 3 + 2] - positions[j * 3 + 2];
+                if (dx * dx + dy * dy + dz * dz < radiusSquared) {
+                    list.add(members[j]);
+                    nearby.get(members[j]).add(members[i]);
+                }
+            }
+        }
+    }
+
     public static GroupNPCFlock create(Iterable<NPC> npcs) {
         return new GroupNPCFlock(npcs, -1);
     }
@@ -44,4 +104,6 @@ public class GroupNPCFlock implements NPCFlock {
     public static GroupNPCFlock createWithRadius(Iterable<NPC> npcs, double radius) {
         return new GroupNPCFlock(npcs, radius);
     }
+
+    private static final Location LOCATION_CACHE = new Location(null, 0, 0, 0);
 }
@@ -2,15 +2,13 @@ package net.citizensnpcs.api.ai.flocking;
 
 import java.util.Collection;
 
-import org.bukkit.entity.Entity;
-
-import com.google.common.collect.Lists;
-
 import net.citizensnpcs.api.CitizensAPI;
 import net.citizensnpcs.api.npc.NPC;
+import net.citizensnpcs.api.npc.NPCSpatialIndex;
 
 /**
- * A dynamic flock of NPCs that checks for entity NPCs within a certain block radius.
+ * A dynamic flock of NPCs that checks for navigating NPCs within a certain block radius using the
+ * {@link NPCSpatialIndex}.
  */
 public class RadiusNPCFlock implements NPCFlock {
     private Collection<NPC> cached;
@@ -25,8 +23,7 @@ public class RadiusNPCFlock implements NPCFlock {
     /**
      * 
      * @param radius
-     *            the radius to look for nearby NPCs, in blocks @see
-     *            {@link Entity#getNearbyEntities(double, double, double)}
+     *            the radius to look for nearby NPCs, in blocks
      * @param maxCacheTicks
      *            the maximum cache ticks to cache the nearby NPC 'flock' (default 30)
      */
@@ -42,13 +39,8 @@ public class RadiusNPCFlock implements NPCFlock {
         }
         cached = null;
         cacheTicks = 0;
-        Collection<NPC> ret = Lists.newArrayList();
-        for (Entity entity : npc.getEntity().getNearbyEntities(radius, radius, radius)) {
-            NPC npc2 = CitizensAPI.getNPCRegistry().getNPC(entity);
-            if (npc2 != null && npc2.getNavigator().isNavigating()) {
-                ret.add(npc2);
-            }
-        }
+        Collection<NPC> ret = CitizensAPI.getNPCSpatialIndex().getNearby(npc.getStoredLocation(), radius,
+                other -> other != npc && other.getNavigator().isNavigating());
         if (maxCacheTicks <= 0) {
             return ret;
         }
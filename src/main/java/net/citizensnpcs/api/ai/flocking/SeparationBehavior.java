@@ -13,8 +13,8 @@ import net.citizensnpcs.api.npc.NPC;
  *      "https://en.wikipedia.org/wiki/Flocking_(behavior)">https://en.wikipedia.org/wiki/Flocking_(behavior)</a>
  */
 public class SeparationBehavior implements FlockBehavior {
-    private double separation = 0.5;
-    private final double weight;
+    double separation = 0.5;
+    final double weight;
 
     public SeparationBehavior(double weight) {
         this.weight = weight;
@@ -31,7 +31,7 @@ public class SeparationBehavior implements FlockBehavior {
         Vector pos = npc.getEntity().getLocation().toVector();
         int count = 0;
         for (NPC neighbor : nearby) {
-            Vector diff = pos.subtract(neighbor.getEntity().getLocation().toVector()).setY(0);
+            Vector diff = pos.clone().subtract(neighbor.getEntity().getLocation().toVector()).setY(0);
             double dist = diff.length();
             if (dist > separation || dist == 0) {
                 continue;
@@ -0,0 +1,82 @@
+package net.citizensnpcs.api.ai.goals;
+
+import java.util.List;
+
+import org.bukkit.Location;
+import org.bukkit.util.Vector;
+
+import net.citizensnpcs.api.ai.Goal;
+import net.citizensnpcs.api.ai.tree.Behavior;
+import net.citizensnpcs.api.ai.tree.BehaviorGoalAdapter;
+import net.citizensnpcs.api.ai.tree.BehaviorStatus;
+import net.citizensnpcs.api.astar.pathfinder.FlowField;
+import net.citizensnpcs.api.npc.NPC;
+
+/**
+ * A {@link Goal}/{@link Behavior} that moves an {@link NPC} to the goal of a {@link FlowField}. Any number of NPCs can
+ * share one field: each reads its path from the field instead of running its own search, and reads it again whenever
+ * the field changes, for example when its goal moves.
+ */
+public class FlowFieldGoal extends BehaviorGoalAdapter {
+    private final FlowField field;
+    private boolean finished;
+    private final NPC npc;
+    private int version = -1;
+
+    public FlowFieldGoal(NPC npc, FlowField field) {
+        this.npc = npc;
+        this.field = field;
+    }
+
+    private boolean canReach() {
+        Location location = npc.getEntity().getLocation(NPC_LOCATION);
+        int x = location.getBlockX(), y = location.getBlockY(), z = location.getBlockZ();
+        // like FlowField#getPath, also check the block below in case the NPC is slightly above the ground
+        return !Float.isNaN(field.getCost(x, y, z)) || !Float.isNaN(field.getCost(x, y - 1, z));
+    }
+
+    public FlowField getField() {
+        return field;
+    }
+
+    private boolean navigate() {
+        List<Vector> path = field.getPath(npc.getEntity().getLocation(NPC_LOCATION), MAX_PATH_LENGTH);
+        version = field.getVersion();
+        if (path == null)
+            return false;
+        if (path.isEmpty()) {
+            finished = true;
+        } else {
+            npc.getNavigator().setTarget(path);
+        }
+        return true;
+    }
+
+    @Override
+    public void reset() {
+        npc.getNavigator().cancelNavigation();
+        finished = false;
+        version = -1;
+    }
+
+    @Override
+    public BehaviorStatus run() {
+        if (finished)
+            return BehaviorStatus.SUCCESS;
+        if (!npc.isSpawned())
+            return BehaviorStatus.FAILURE;
+        if (field.getVersion() != version || !npc.getNavigator().isNavigating()) {
+            if (!navigate())
+                return BehaviorStatus.FAILURE;
+        }
+        return finished ? BehaviorStatus.SUCCESS : BehaviorStatus.RUNNING;
+    }
+
+    @Override
+    public boolean shouldExecute() {
+        return npc.isSpawned() && canReach();
+    }
+
+    private static final int MAX_PATH_LENGTH = 64;
+    private static final Location NPC_LOCATION = new Location(null, 0, 0, 0);
+}
@@ -9,6 +9,7 @@ import org.bukkit.entity.EntityType;
 
 import net.citizensnpcs.api.ai.Goal;
 import net.citizensnpcs.api.ai.Navigator;
+import net.citizensnpcs.api.ai.ScheduledGoal;
 import net.citizensnpcs.api.ai.event.CancelReason;
 import net.citizensnpcs.api.ai.event.NavigatorCallback;
 import net.citizensnpcs.api.ai.tree.Behavior;
@@ -20,20 +21,28 @@ import net.citizensnpcs.api.npc.NPC;
  * A sample {@link Goal}/{@link Behavior} that will target specific {@link EntityType}s within a certain radius and
  * start following them using {@link Navigator#setTarget(Entity, boolean)}.
  */
-public class TargetNearbyEntityGoal extends BehaviorGoalAdapter {
+public class TargetNearbyEntityGoal extends BehaviorGoalAdapter implements ScheduledGoal {
     private final boolean aggressive;
     private boolean finished;
     private final NPC npc;
     private final double radius;
     private CancelReason reason;
+    private final int reevaluationInterval;
     private Entity target;
     private final Set<EntityType> targets;
 
-    private TargetNearbyEntityGoal(NPC npc, Set<EntityType> targets, boolean aggressive, double radius) {
+    private TargetNearbyEntityGoal(NPC npc, Set<EntityType> targets, boolean aggressive, double radius,
+            int reevaluationInterval) {
         this.npc = npc;
         this.targets = targets;
         this.aggressive = aggressive;
         this.radius = radius;
+        this.reevaluationInterval = reevaluationInterval;
+    }
+
+    @Override
+    public int getReevaluationInterval() {
+        return reevaluationInterval;
     }
 
     @Override
@@ -82,6 +91,7 @@ public class TargetNearbyEntityGoal extends BehaviorGoalAdapter {
         private boolean aggressive;
         private final NPC npc;
         private double radius = 10D;
+        private int reevaluationInterval = 1;
         private Set<EntityType> targetTypes = EnumSet.noneOf(EntityType.class);
 
         public Builder(NPC npc) {
@@ -94,7 +104,7 @@ public class TargetNearbyEntityGoal extends BehaviorGoalAdapter {
         }
 
         public TargetNearbyEntityGoal build() {
-            return new TargetNearbyEntityGoal(npc, targetTypes, aggressive, radius);
+            return new TargetNearbyEntityGoal(npc, targetTypes, aggressive, radius, reevaluationInterval);
         }
 
         public Builder radius(double radius) {
@@ -102,6 +112,14 @@ public class TargetNearbyEntityGoal extends BehaviorGoalAdapter {
             return this;
         }
 
+        /**
+         * Sets how many runs of the goal controller to wait between scans for targets while the goal is not running.
+         */
+        public Builder reevaluationInterval(int ticks) {
+            this.reevaluationInterval = ticks;
+            return this;
+        }
+
         public Builder targets(Set<EntityType> targetTypes) {
             this.targetTypes = targetTypes;
             return this;
@@ -1,7 +1,18 @@
 package net.citizensnpcs.api.astar;
 
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
 import com.google.common.base.Preconditions;
 import com.google.common.base.Supplier;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
 public class AStarMachine<N extends AStarNode, P extends Plan> {
     private Supplier<AStarStorage> storageSupplier;
@@ -18,8 +29,56 @@ public class AStarMachine<N extends AStarNode, P extends Plan> {
         neighbour.h = h;
     }
 
-    private AStarStorage getInitialisedStorage(AStarGoal<N> goal, N start) {
-        AStarStorage storage = storageSupplier.get();
+    private AStarSearchContext acquireContext(AStarGoal<N> goal, N start) {
+        AStarSearchContext context = pollContext();
+        initialiseStorage(context.getStorage(), goal, start);
+        start.context = context;
+        return context;
+    }
+
+    /**
+     * Creates an {@link AnytimeAStarState} that quickly finds a path using a heuristic inflated by
+     * <code>initialWeight</code>, then refines it over further calls to {@link #run(AnytimeAStarState, int)} by
+     * lowering the weight by <code>weightStep</code> until it reaches 1 and the path is optimal.
+     *
+     * @param goal
+     *            The {@link AStarGoal} state
+     * @param start
+     *            The starting {@link AStarNode}
+     * @param initialWeight
+     *            The initial heuristic weight, at least 1. The first path costs at most this many times the optimal
+     *            path
+     * @param weightStep
+     *            The amount to decrease the weight by after each path is found
+     * @return The created state
+     */
+    public AnytimeAStarState getAnytimeStateFor(AStarGoal<N> goal, N start, float initialWeight, float weightStep) {
+        Preconditions.checkArgument(initialWeight >= 1, "initialWeight must be at least 1");
+        Preconditions.checkArgument(weightStep > 0, "weightStep must be positive");
+        AStarSearchContext context = pollContext();
+        start.context = context;
+        return new AnytimeAStarState(goal, start, context, initialWeight, weightStep);
+    }
+
+    /**
+     * Builds a plan through the meeting point of a bidirectional search by reversing the parent links of the backward
+     * half onto the forward half.
+     */
+    @SuppressWarnings("unchecked")
+    private P join(AStarNode meetForward, AStarNode meetBackward) {
+        AStarNode previous = meetForward;
+        AStarNode node = meetBackward.parent;
+        while (node != null) {
+            AStarNode next = node.parent;
+            node.parent = previous;
+            node.parents = null;
+            previous = node;
+            node = next;
+        }
+        return (P) previous.buildPlan();
+    }
+
+    private AStarStorage initialiseStorage(AStarStorage storage, AStarGoal<N> goal, N start) {
         storage.open(start);
         start.g = goal.getInitialCost(start);
         start.h = 0;
@@ -37,7 +96,7 @@ public class AStarMachine<N extends AStarNode, P extends Plan> {
      * @return The created state
      */
     public AStarState getStateFor(AStarGoal<N> goal, N start) {
-        return new AStarState(goal, start, getInitialisedStorage(goal, start));
+        return new AStarState(goal, start, acquireContext(goal, start));
     }
 
     /**
@@ -52,9 +111,72 @@ public class AStarMachine<N extends AStarNode, P extends Plan> {
         return run(state, -1);
     }
 
+    /**
+     * Continues an anytime search for up to <code>maxIterations</code> node expansions and returns the best
+     * {@link Plan} found so far. The returned plan may be replaced by a cheaper one on later calls until
+     * {@link AnytimeAStarState#isOptimal()} returns true, at which point the state releases its pooled
+     * {@link AStarSearchContext}.
+     *
+     * @param state
+     *            The state to use
+     * @param maxIterations
+     *            The maximum number of iterations, or -1 to run until the optimal plan is found
+     * @return The best plan found so far, or <code>null</code> if none has been found yet
+     */
+    @SuppressWarnings("unchecked")
+    public P run(AnytimeAStarState state, int maxIterations) {
+        if (state.context == null)
+            return state.plan;
+        AStarGoal<N> goal = state.goal;
+        int iterations = 0;
+        while (true) {
+            N node = state.peekOpen();
+            if (node == null || (state.goalNode != null
+                    && state.goalNode.g + state.weight * state.goalNode.h <= state.getKey(node))) {
+                // the incumbent is within the current bound: publish it and tighten the bound
+                if (state.goalNode != null && state.planNode != state.goalNode) {
+                    state.plan = (P) state.goalNode.buildPlan();
+                    state.planNode = state.goalNode;
+                }
+                state.bound = state.weight;
+                if (state.weight <= 1 || state.goalNode == null) {
+                    state.release();
+                    return state.plan;
+                }
+                state.decreaseWeight();
+                continue;
+            }
+            if (maxIterations >= 0 && iterations++ >= maxIterations)
+                return state.plan;
+            state.open.poll();
+            state.closed.add(node);
+            if (goal.isFinished(node))
+                continue;
+            for (AStarNode neighbour : node.getNeighbours()) {
+                float g = node.g + goal.g(node, (N) neighbour);
+                AStarNode existing = state.best.get(neighbour);
+                if (existing != null && existing.g <= g)
+                    continue;
+                neighbour.g = g;
+                neighbour.h = goal.h((N) neighbour);
+                neighbour.parent = node;
+                state.best.put(neighbour, neighbour);
+                if (goal.isFinished((N) neighbour) && (state.goalNode == null || g < state.goalNode.g)) {
+                    state.goalNode = neighbour;
+                }
+                if (state.closed.contains(neighbour)) {
+                    state.incons.add(neighbour);
+                } else {
+                    state.open.add(neighbour);
+                }
+            }
+        }
+    }
+
     /**
      * Runs the machine using the given {@link AStarState}'s {@link AStarStorage}. Can be used to provide a continuation
-     * style usage of the A* algorithm.
+     * style usage of the A* algorithm. Once a plan has been built or the frontier is exhausted the state releases its
+     * pooled {@link AStarSearchContext} and cannot be run again.
      *
      * @param state
      *            The state to use
@@ -63,7 +185,13 @@ public class AStarMachine<N extends AStarNode, P extends Plan> {
      * @return The generated {@link Plan}, or <code>null</code> if not found
      */
     public P run(AStarState state, int maxIterations) {
-        return run(state.storage, state.goal, state.start, maxIterations);
+        if (state.context == null)
+            return null;
+        P plan = run(state.context.getStorage(), state.goal, state.start, maxIterations);
+        if (plan != null || state.isEmpty()) {
+            state.release();
+        }
+        return plan;
     }
 
     @SuppressWarnings("unchecked")
@@ -117,11 +245,138 @@ public class AStarMachine<N extends AStarNode, P extends Plan> {
      * @return The generated {@link Plan}, or <code>null</code> if it was not found
      */
     public P runFully(AStarGoal<N> goal, N start, int iterations) {
-        return run(getInitialisedStorage(goal, start), goal, start, iterations);
+        AStarSearchContext context = acquireContext(goal, start);
+        try {
+            return run(context.getStorage(), goal, start, iterations);
+        } finally {
+            releaseContext(context, start);
+        }
     }
 
     /**
-     * Sets the {@link Supplier} to use to generate instances of {@link AStarStorage} for use while searching.
+     * Runs the machine from both the start and the goal until the two searches meet. Each iteration alternately expands
+     * one node of the forward and the backward search, and the search stops once neither frontier can improve on the
+     * cheapest meeting point found so far. This usually expands far fewer nodes than {@link #runFully} over long
+     * distances.
+     *
+     * Falls back to a forward-only search if the goal cannot produce a reverse start node, if the backward search is
+     * exhausted without meeting the forward search, or if it finds a move that is not
+     * {@link BidirectionalAStarGoal#isReversible(AStarNode, AStarNode) reversible}.
+     *
+     * @param goal
+     *            The {@link BidirectionalAStarGoal} state
+     * @param start
+     *            The starting {@link AStarNode}
+     * @param maxIterations
+     *            The maximum number of iterations, shared between both searches
+     * @return The generated {@link Plan}, or <code>null</code> if it was not found
+     */
+    @SuppressWarnings("unchecked")
+    public P runBidirectionally(BidirectionalAStarGoal<N> goal, N start, int maxIterations) {
+        N reverseStart = goal.createReverseStart(start);
+        if (reverseStart == null)
+            return runFully(goal, start, maxIterations);
+        AStarSearchContext forwardContext = acquireContext(goal, start);
+        AStarSearchContext backwardContext = acquireContext(goal, reverseStart);
+        try {
+            AStarStorage forward = forwardContext.getStorage();
+            AStarStorage backward = backwardContext.getStorage();
+            // forward costs start at the goal's initial cost, backward costs start at zero
+            float offset = start.g;
+            reverseStart.g = 0;
+            Map<AStarNode, AStarNode> forwardSeen = Maps.newHashMap();
+            Map<AStarNode, AStarNode> backwardSeen = Maps.newHashMap();
+            forwardSeen.put(start, start);
+            backwardSeen.put(reverseStart, reverseStart);
+            AStarNode meetForward = null, meetBackward = null;
+            float bestCost = Float.POSITIVE_INFINITY;
+            int iterations = 0;
+            while (true) {
+                if (maxIterations >= 0 && iterations >= maxIterations)
+                    return null;
+                iterations++;
+                AStarNode forwardBest = forward.getBestNode();
+                AStarNode backwardBest = backward.getBestNode();
+                if (forwardBest == null)
+                    return meetForward == null ? null : join(meetForward, meetBackward);
+                if (meetForward != null && (backwardBest == null
+                        || Math.max(forwardBest.getPathCost() - offset, backwardBest.getPathCost()) >= bestCost))
+                    return join(meetForward, meetBackward);
+                if (backwardBest == null)
+                    return run(forward, goal, start, maxIterations < 0 ? -1 : maxIterations - iterations);
+                if ((iterations & 1) == 0) {
+                    N node = (N) forward.removeBestNode();
+                    if (node == null)
+                        continue;
+                    if (goal.isFinished(node))
+                        return (P) node.buildPlan();
+                    forward.close(node);
+                    for (AStarNode neighbour : node.getNeighbours()) {
+                        f(goal, node, (N) neighbour);
+                        if (!forward.shouldExamine(neighbour))
+                            continue;
+                        forward.open(neighbour);
+                        neighbour.parent = node;
+                        forwardSeen.put(neighbour, neighbour);
+                        AStarNode other = backwardSeen.get(neighbour);
+                        if (other != null && neighbour.g - offset + other.g < bestCost) {
+                            bestCost = neighbour.g - offset + other.g;
+                            meetForward = neighbour;
+                            meetBackward = other;
+                        }
+                    }
+                } else {
+                    N node = (N) backward.removeBestNode();
+                    if (node == null)
+                        continue;
+                    backward.close(node);
+                    for (AStarNode neighbour : node.getNeighbours()) {
+                        N predecessor = (N) neighbour;
+                        if (!goal.isReversible(predecessor, node))
+                            return run(forward, goal, start, maxIterations < 0 ? -1 : maxIterations - iterations);
+                        predecessor.g = node.g + goal.g(predecessor, node);
+                        predecessor.h = goal.h(predecessor, start);
+                        if (!backward.shouldExamine(predecessor))
+                            continue;
+                        backward.open(predecessor);
+                        predecessor.parent = node;
+                        backwardSeen.put(predecessor, predecessor);
+                        AStarNode other = forwardSeen.get(predecessor);
+                        if (other != null && other.g - offset + predecessor.g < bestCost) {
+                            bestCost = other.g - offset + predecessor.g;
+                            meetForward = other;
+                            meetBackward = predecessor;
+                        }
+                    }
+                }
+            }
+        } finally {
+            releaseContext(backwardContext, reverseStart);
+            releaseContext(forwardContext, start);
+        }
+    }
+
+    private AStarSearchContext pollContext() {
+        AStarSearchContext context = CONTEXT_POOL.get().poll();
+        if (context == null) {
+            context = new AStarSearchContext();
+        }
+        context.prepare(storageSupplier);
+        return context;
+    }
+
+    private void releaseContext(AStarSearchContext context, N start) {
+        start.context = null;
+        context.release();
+        Deque<AStarSearchContext> pool = CONTEXT_POOL.get();
+        if (pool.size() < MAX_POOLED_CONTEXTS) {
+            pool.push(context);
+        }
+    }
+
+    /**
+     * Sets the {@link Supplier} to use to generate instances of {@link AStarStorage} for use while searching. Storages
+     * that support {@link AStarStorage#reset()} are recycled between searches on the same thread.
      *
      * @param newSupplier
      *            The new supplier to use
@@ -130,27 +385,166 @@ public class AStarMachine<N extends AStarNode, P extends Plan> {
         storageSupplier = newSupplier;
     }
 
+    /**
+     * The state of an anytime search created by {@link AStarMachine#getAnytimeStateFor(AStarGoal, AStarNode, float,
+     * float)}. Expands nodes by <code>g + weight * h</code>, keeping the best route to each node and the nodes improved
+     * after being expanded so that the search can be resumed with a lower weight instead of restarting.
+     */
+    public class AnytimeAStarState {
+        private final Map<AStarNode, AStarNode> best = Maps.newHashMap();
+        private float bound = Float.POSITIVE_INFINITY;
+        private final Set<AStarNode> closed = Sets.newHashSet();
+        private AStarSearchContext context;
+        private final AStarGoal<N> goal;
+        private AStarNode goalNode;
+        private final List<AStarNode> incons = Lists.newArrayList();
+        private PriorityQueue<AStarNode> open;
+        private P plan;
+        private AStarNode planNode;
+        private final N start;
+        private float weight;
+        private final float weightStep;
+
+        private AnytimeAStarState(AStarGoal<N> goal, N start, AStarSearchContext context, float weight,
+                float weightStep) {
+            this.goal = goal;
+            this.start = start;
+            this.context = context;
+            this.weight = weight;
+            this.weightStep = weightStep;
+            this.open = new PriorityQueue<AStarNode>(64, new Comparator<AStarNode>() {
+                @Override
+                public int compare(AStarNode o1, AStarNode o2) {
+                    return Float.compare(getKey(o1), getKey(o2));
+                }
+            });
+            start.g = goal.getInitialCost(start);
+            start.h = goal.h(start);
+            best.put(start, start);
+            open.add(start);
+            if (goal.isFinished(start)) {
+                goalNode = start;
+            }
+        }
+
+        private void decreaseWeight() {
+            weight = Math.max(1, weight - weightStep);
+            List<AStarNode> rekeyed = Lists.newArrayListWithCapacity(open.size() + incons.size());
+            for (AStarNode node : open) {
+                if (best.get(node) == node) {
+                    rekeyed.add(node);
+                }
+            }
+            rekeyed.addAll(incons);
+            incons.clear();
+            closed.clear();
+            open.clear();
+            open.addAll(rekeyed);
+        }
+
+        private float getKey(AStarNode node) {
+            return node.g + weight * node.h;
+        }
+
+        /**
+         * @return The best plan found so far, or null
+         */
+        public P getPlan() {
+            return plan;
+        }
+
+        /**
+         * @return The factor by which the cost of {@link #getPlan()} may exceed the optimal cost
+         */
+        public float getSuboptimalityBound() {
+            return bound;
+        }
+
+        /**
+         * @return The current heuristic weight
+         */
+        public float getWeight() {
+            return weight;
+        }
+
+        /**
+         * @return Whether the search has finished, either with an optimal plan or because no plan exists
+         */
+        public boolean isFinished() {
+            return context == null;
+        }
+
+        /**
+         * @return Whether {@link #getPlan()} is known to be optimal
+         */
+        public boolean isOptimal() {
+            return plan != null && bound <= 1;
+        }
+
+        @SuppressWarnings("unchecked")
+        private N peekOpen() {
+            while (!open.isEmpty()) {
+                AStarNode node = open.peek();
+                if (best.get(node) == node && !closed.contains(node))
+                    return (N) node;
+                open.poll();
+            }
+            return null;
+        }
+
+        /**
+         * Returns the pooled search context to the machine early, for example when the current plan is good enough.
+         * The state cannot be refined further after being released.
+         */
+        public void release() {
+            if (context == null)
+                return;
+            releaseContext(context, start);
+            context = null;
+            best.clear();
+            closed.clear();
+            incons.clear();
+            open.clear();
+            goalNode = planNode = null;
+        }
+    }
+
     public class AStarState {
+        private AStarSearchContext context;
         private final AStarGoal<N> goal;
         private final N start;
-        private final AStarStorage storage;
 
-        private AStarState(AStarGoal<N> goal, N start, AStarStorage storage) {
+        private AStarState(AStarGoal<N> goal, N start, AStarSearchContext context) {
             this.goal = goal;
             this.start = start;
-            this.storage = storage;
+            this.context = context;
         }
 
         @SuppressWarnings("unchecked")
         public N getBestNode() {
-            return (N) storage.getBestNode();
+            return context == null ? null : (N) context.getStorage().getBestNode();
         }
 
         public boolean isEmpty() {
-            return storage.getBestNode() == null;
+            return getBestNode() == null;
+        }
+
+        /**
+         * Returns the pooled search context to the machine early, for example when the search is abandoned. The state
+         * cannot be run after being released.
+         */
+        public void release() {
+            if (context == null)
+                return;
+            releaseContext(context, start);
+            context = null;
         }
     }
 
+    // shared by every machine, since a context adapts to the storage supplier and node type of each search
+    private static final ThreadLocal<Deque<AStarSearchContext>> CONTEXT_POOL = ThreadLocal.withInitial(ArrayDeque::new);
+    private static final int MAX_POOLED_CONTEXTS = 4;
+
     /**
      * Creates an AStarMachine using {@link SimpleAStarStorage} as the storage backend.
      *
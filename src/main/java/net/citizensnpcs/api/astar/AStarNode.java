@@ -6,12 +6,14 @@ import java.util.List;
 import com.google.common.collect.Lists;
 
 public abstract class AStarNode implements Comparable<AStarNode> {
+    AStarSearchContext context;
     float g, h;
     AStarNode parent;
     List<AStarNode> parents;
 
     protected AStarNode(AStarNode parent) {
         this.parent = parent;
+        this.context = parent == null ? null : parent.context;
     }
 
     public abstract Plan buildPlan();
@@ -24,6 +26,14 @@ public abstract class AStarNode implements Comparable<AStarNode> {
     @Override
     public abstract boolean equals(Object other);
 
+    /**
+     * Returns the pooled {@link AStarSearchContext} of the search this node belongs to, or null if the search is not
+     * pooled. Nodes obtained from the context must not be referenced after the {@link Plan} has been built.
+     */
+    protected AStarSearchContext getContext() {
+        return context;
+    }
+
     public abstract Iterable<AStarNode> getNeighbours();
 
     protected AStarNode getParent() {
@@ -48,6 +58,18 @@ public abstract class AStarNode implements Comparable<AStarNode> {
         return g + h;
     }
 
+    /**
+     * Resets the search state of a node recycled from an {@link AStarSearchContext} so that it can be reused as a
+     * child of the given parent.
+     */
+    protected void reinitialise(AStarNode parent) {
+        this.parent = parent;
+        this.context = parent == null ? null : parent.context;
+        this.parents = null;
+        this.g = 0;
+        this.h = 0;
+    }
+
     @Override
     public abstract int hashCode();
 }
@@ -0,0 +1,125 @@
+package net.citizensnpcs.api.astar;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.base.Supplier;
+
+/**
+ * Reusable per-search state handed out by an {@link AStarMachine}: a recycled {@link AStarStorage}, an arena of
+ * {@link AStarNode}s from previous searches and scratch lists for neighbour generation. Contexts are pooled per thread
+ * and released by the machine once the {@link Plan} has been built, so repeated searches on the same thread produce
+ * very little garbage.
+ *
+ * Nodes opt into pooling by calling {@link #reuseNode(Class)} and {@link #trackNode(AStarNode)} when creating
+ * neighbours. Since pooled nodes are recycled after the search, a {@link Plan} must copy any mutable node state it
+ * keeps.
+ */
+public class AStarSearchContext {
+    private Class<?> arenaType;
+    private int nextNode;
+    private final ArrayList<AStarNode> nodes = new ArrayList<AStarNode>();
+    private final List<List<?>> scratchLists = new ArrayList<List<?>>();
+    private AStarStorage storage;
+    private Supplier<AStarStorage> storageSupplier;
+    private int typicalNodes;
+
+    AStarSearchContext() {
+    }
+
+    AStarStorage getStorage() {
+        return storage;
+    }
+
+    /**
+     * Returns a cleared list that is reused across searches. The list stays valid until the next call with the same
+     * id.
+     *
+     * @param id
+     *            The scratch list id
+     * @return The cleared list
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<T> getScratchList(int id) {
+        while (scratchLists.size() <= id) {
+            scratchLists.add(new ArrayList<Object>());
+        }
+        List<T> list = (List<T>) scratchLists.get(id);
+        list.clear();
+        return list;
+    }
+
+    void prepare(Supplier<AStarStorage> supplier) {
+        if (storage == null || storageSupplier != supplier) {
+            storage = supplier.get();
+            storageSupplier = supplier;
+        }
+    }
+
+    /**
+     * Resets the context for reuse by a later search. The node arena is trimmed to about twice the number of nodes
+     * recent searches used, so that one unusually large search does not keep its nodes alive.
+     */
+    void release() {
+        if (!storage.reset()) {
+            storage = null;
+        }
+        typicalNodes += (nextNode - typicalNodes) / 4;
+        nextNode = 0;
+        int keep = Math.min(MAX_POOLED_NODES, Math.max(MIN_POOLED_NODES, typicalNodes * 2));
+        if (nodes.size() > keep) {
+            nodes.subList(keep, nodes.size()).clear();
+            nodes.trimToSize();
+        }
+        for (List<?> list : scratchLists) {
+            list.clear();
+        }
+    }
+
+    /**
+     * Returns a node that was rejected immediately after being obtained, so that the next call to
+     * {@link #reuseNode(Class)} hands it out again. Does nothing unless the node is the most recently handed out node.
+     */
+    public void recycleNode(AStarNode node) {
+        if (nextNode > 0 && nodes.get(nextNode - 1) == node) {
+            nextNode--;
+        }
+    }
+
+    /**
+     * Returns a node allocated by a previous search that can be reinitialised via
+     * {@link AStarNode#reinitialise(AStarNode)}, or null if a new node should be allocated and passed to
+     * {@link #trackNode(AStarNode)}.
+     *
+     * @param type
+     *            The node class
+     * @return A recycled node or null
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends AStarNode> T reuseNode(Class<T> type) {
+        if (nextNode >= nodes.size())
+            return null;
+        if (arenaType != type) {
+            nodes.clear();
+            nextNode = 0;
+            arenaType = type;
+            return null;
+        }
+        return (T) nodes.get(nextNode++);
+    }
+
+    /**
+     * Registers a newly allocated node so that it can be recycled by later searches.
+     */
+    public void trackNode(AStarNode node) {
+        if (arenaType != node.getClass()) {
+            nodes.clear();
+            arenaType = node.getClass();
+        }
+        nodes.add(node);
+        nextNode = nodes.size();
+    }
+
+    private static final int MAX_POOLED_NODES = 1 << 13;
+    private static final int MIN_POOLED_NODES = 256;
+}
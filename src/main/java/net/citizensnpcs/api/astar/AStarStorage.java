@@ -26,6 +26,15 @@ public interface AStarStorage {
      */
     AStarNode removeBestNode();
 
+    /**
+     * Clears the open and closed sets and the frontier so that the storage can be reused for a new search.
+     *
+     * @return Whether the storage was reset and can be reused, false if reuse is not supported
+     */
+    default boolean reset() {
+        return false;
+    }
+
     /**
      * Returns whether to examine a given {@link AStarNode}.
      */
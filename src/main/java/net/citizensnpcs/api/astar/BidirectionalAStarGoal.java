@@ -0,0 +1,42 @@
+package net.citizensnpcs.api.astar;
+
+/**
+ * An {@link AStarGoal} that can also be searched backwards from the goal, allowing
+ * {@link AStarMachine#runBidirectionally(BidirectionalAStarGoal, AStarNode, int)} to expand from both ends and meet in
+ * the middle.
+ */
+public interface BidirectionalAStarGoal<T extends AStarNode> extends AStarGoal<T> {
+    /**
+     * Creates a node representing the goal state from which a reverse search can be started. The node's
+     * {@link AStarNode#getNeighbours()} are treated as its predecessors.
+     *
+     * @param start
+     *            The start node of the forward search
+     * @return The reverse start node, or null if the goal cannot be searched backwards
+     */
+    T createReverseStart(T start);
+
+    /**
+     * Returns the estimated heuristic cost of traversing between two arbitrary {@link AStarNode}s. Used to guide the
+     * reverse search towards the start node.
+     *
+     * @param from
+     *            The node to start from
+     * @param to
+     *            The node to estimate the cost to
+     * @return The heuristic cost
+     */
+    float h(T from, T to);
+
+    /**
+     * Returns whether the move between the two nodes costs the same and is equally valid in both directions. When a
+     * directional move is found the search falls back to searching forwards only.
+     *
+     * @param from
+     *            The node the move starts from
+     * @param to
+     *            The node the move ends at
+     * @return Whether the move is reversible
+     */
+    boolean isReversible(T from, T to);
+}
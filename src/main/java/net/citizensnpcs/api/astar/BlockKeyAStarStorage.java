@@ -0,0 +1,84 @@
+package net.citizensnpcs.api.astar;
+
+import java.util.PriorityQueue;
+import java.util.Queue;
+
+import com.google.common.base.Supplier;
+
+/**
+ * An {@link AStarStorage} for {@link BlockKeyedNode}s that keeps the g-costs of the open and closed sets in primitive
+ * {@link LongFloatTable}s keyed by the node's packed block key. This avoids boxing a {@link Float} and hashing the node
+ * on every lookup.
+ *
+ * The storage can be {@link #reset()} and reused between searches without reallocating its tables.
+ */
+public class BlockKeyAStarStorage implements AStarStorage {
+    private final LongFloatTable closed = new LongFloatTable(512);
+    private final LongFloatTable open = new LongFloatTable(128);
+    private final Queue<AStarNode> queue = new PriorityQueue<AStarNode>(128);
+
+    @Override
+    public void close(AStarNode node) {
+        long key = key(node);
+        open.remove(key);
+        closed.put(key, node.g);
+    }
+
+    @Override
+    public AStarNode getBestNode() {
+        return queue.peek();
+    }
+
+    @Override
+    public void open(AStarNode node) {
+        long key = key(node);
+        queue.offer(node);
+        open.put(key, node.g);
+        closed.remove(key);
+    }
+
+    @Override
+    public AStarNode removeBestNode() {
+        return queue.poll();
+    }
+
+    @Override
+    public boolean reset() {
+        open.clear();
+        closed.clear();
+        queue.clear();
+        return true;
+    }
+
+    @Override
+    public boolean shouldExamine(AStarNode neighbour) {
+        long key = key(neighbour);
+        float openG = open.get(key);
+        if (openG > neighbour.g) {
+            open.remove(key);
+            openG = Float.NaN;
+        }
+        float closedG = closed.get(key);
+        if (closedG > neighbour.g) {
+            closed.remove(key);
+            closedG = Float.NaN;
+        }
+        return Float.isNaN(closedG) && Float.isNaN(openG);
+    }
+
+    @Override
+    public String toString() {
+        return "BlockKeyAStarStorage [closed=" + closed + ", open=" + open + "]";
+    }
+
+    private static long key(AStarNode node) {
+        return ((BlockKeyedNode) node).getBlockKey();
+    }
+
+    public static final Supplier<AStarStorage> FACTORY = new Supplier<AStarStorage>() {
+        @Override
+        public AStarStorage get() {
+            return new BlockKeyAStarStorage();
+        }
+    };
+}
@@ -0,0 +1,36 @@
+package net.citizensnpcs.api.astar;
+
+/**
+ * An {@link AStarNode} that lies on a block grid and can be identified by a packed <code>long</code> block key. This
+ * allows storages such as {@link BlockKeyAStarStorage} to avoid boxing and object hashing when tracking nodes.
+ */
+public interface BlockKeyedNode {
+    /**
+     * Returns the packed block key of this node. Two nodes that are equal must return the same key.
+     *
+     * @see #pack(int, int, int)
+     */
+    long getBlockKey();
+
+    /**
+     * Packs a block coordinate into a single <code>long</code>. X and Z use 26 bits each and Y uses 12 bits, which
+     * covers the full range of block coordinates in a Minecraft world.
+     *
+     * @return The packed block key
+     */
+    static long pack(int x, int y, int z) {
+        return ((x & 0x3FFFFFFL) << 38) | ((z & 0x3FFFFFFL) << 12) | (y & 0xFFFL);
+    }
+
+    static int unpackX(long key) {
+        return (int) (key >> 38);
+    }
+
+    static int unpackY(long key) {
+        return (int) (key << 52 >> 52);
+    }
+
+    static int unpackZ(long key) {
+        return (int) (key << 26 >> 38);
+    }
+}
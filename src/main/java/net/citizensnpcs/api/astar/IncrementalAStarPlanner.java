@@ -0,0 +1,318 @@
+package net.citizensnpcs.api.astar;
+
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * A Lifelong Planning A* (LPA*) planner that keeps its search tree between plans, so that when the graph changes only
+ * the affected part of the tree is searched again. Call {@link #invalidate(Predicate)} with the nodes whose
+ * neighbours may have changed, or {@link #setGoal(AStarGoal)} when the goal moves, and then {@link #run(int)} to
+ * repair the plan.
+ *
+ * Nodes are identified by {@link AStarNode#equals(Object)} and their neighbours must not depend on the node they were
+ * reached from. The cost returned by {@link AStarGoal#g(AStarNode, AStarNode)} must not depend on the goal. The planner
+ * is rooted at the start node: create a new planner once the agent leaves the planned route.
+ */
+public class IncrementalAStarPlanner<N extends AStarNode, P extends Plan> {
+    private boolean consistent;
+    private final Map<N, Entry> entries = Maps.newHashMap();
+    private AStarGoal<N> goal;
+    private final List<Entry> goals = Lists.newArrayList();
+    private final PriorityQueue<QueueKey> open = new PriorityQueue<QueueKey>();
+    private final Entry start;
+
+    public IncrementalAStarPlanner(AStarGoal<N> goal, N start) {
+        this.goal = Preconditions.checkNotNull(goal);
+        this.start = getEntry(start);
+        this.start.rhs = 0;
+        push(this.start);
+    }
+
+    private P buildPlan(Entry best) {
+        Entry entry = best;
+        for (int i = 0; entry != start && entry.pred != null && i <= entries.size(); i++) {
+            entry.node.parent = entry.pred.node;
+            entry.node.parents = null;
+            entry.node.g = entry.g;
+            entry = entry.pred;
+        }
+        start.node.parent = null;
+        start.node.parents = null;
+        @SuppressWarnings("unchecked")
+        P plan = (P) best.node.buildPlan();
+        return plan;
+    }
+
+    private int compare(float k1, float k2, Entry entry) {
+        float min = Math.min(entry.g, entry.rhs);
+        int cmp = Float.compare(k1, min + goal.h(entry.node));
+        return cmp != 0 ? cmp : Float.compare(k2, min);
+    }
+
+    private void expand(Entry entry) {
+        entry.succs = Lists.newArrayList();
+        for (AStarNode neighbour : entry.node.getNeighbours()) {
+            @SuppressWarnings("unchecked")
+            N node = (N) neighbour;
+            Entry to = getEntry(node);
+            Edge edge = new Edge(entry, to, goal.g(entry.node, node));
+            entry.succs.add(edge);
+            to.preds.add(edge);
+        }
+    }
+
+    private Entry getBestGoal() {
+        Entry best = null;
+        float bestKey = Float.POSITIVE_INFINITY;
+        for (Entry entry : goals) {
+            float key = Math.min(entry.g, entry.rhs) + goal.h(entry.node);
+            if (best == null || key < bestKey) {
+                best = entry;
+                bestKey = key;
+            }
+        }
+        return best;
+    }
+
+    private Entry getEntry(N node) {
+        Entry entry = entries.get(node);
+        if (entry == null) {
+            entries.put(node, entry = new Entry(node));
+            if (goal.isFinished(node)) {
+                goals.add(entry);
+            }
+        } else if (entry.stale) {
+            // adopt the regenerated node so that per-node state such as callbacks is rebuilt
+            entries.remove(node);
+            entries.put(node, entry);
+            entry.node = node;
+            entry.stale = false;
+        }
+        return entry;
+    }
+
+    public AStarGoal<N> getGoal() {
+        return goal;
+    }
+
+    /**
+     * @return The number of nodes in the search tree
+     */
+    public int getNodeCount() {
+        return entries.size();
+    }
+
+    /**
+     * Marks the given nodes as changed, regenerating their neighbours and queueing every node whose cost may have
+     * changed as a result. The predicate must match every node whose neighbours or edge costs may have changed, which
+     * usually includes the nodes next to the changed ones.
+     *
+     * @param affected
+     *            Matches the changed nodes
+     */
+    public void invalidate(Predicate<? super N> affected) {
+        invalidate(affected, null);
+    }
+
+    /**
+     * Marks the given nodes as changed as in {@link #invalidate(Predicate)}, first passing each of them to the given
+     * callback exactly once so that state cached on the node can be reset before it is expanded again.
+     *
+     * @param affected
+     *            Matches the changed nodes
+     * @param reset
+     *            Called with each changed node, or <code>null</code>
+     */
+    public void invalidate(Predicate<? super N> affected, Consumer<? super N> reset) {
+        List<Entry> changed = Lists.newArrayList();
+        for (Entry entry : entries.values()) {
+            if (affected.test(entry.node)) {
+                entry.stale = entry != start;
+                changed.add(entry);
+            }
+        }
+        if (reset != null) {
+            for (Entry entry : changed) {
+                reset.accept(entry.node);
+            }
+        }
+        List<Entry> update = Lists.newArrayList();
+        for (Entry entry : changed) {
+            if (entry.succs == null)
+                continue;
+            for (Edge edge : entry.succs) {
+                edge.to.preds.remove(edge);
+                update.add(edge.to);
+            }
+            expand(entry);
+            for (Edge edge : entry.succs) {
+                update.add(edge.to);
+            }
+        }
+        for (Entry entry : update) {
+            updateVertex(entry);
+        }
+        consistent = false;
+    }
+
+    /**
+     * Returns whether the last call to {@link #run(int)} finished repairing the plan. If not, it should be called
+     * again.
+     */
+    public boolean isConsistent() {
+        return consistent;
+    }
+
+    private QueueKey peek() {
+        QueueKey top = open.peek();
+        while (top != null && top.version != top.entry.version) {
+            open.poll();
+            top = open.peek();
+        }
+        return top;
+    }
+
+    private void push(Entry entry) {
+        entry.version++;
+        if (entry.g == entry.rhs)
+            return;
+        float min = Math.min(entry.g, entry.rhs);
+        open.add(new QueueKey(entry, min + goal.h(entry.node), min));
+    }
+
+    /**
+     * Repairs the plan for up to the given number of node expansions.
+     *
+     * @param maxIterations
+     *            The maximum number of expansions, or -1 for no limit
+     * @return The current plan, or <code>null</code> if there is no plan or the iteration limit was reached first
+     * @see #isConsistent()
+     */
+    public P run(int maxIterations) {
+        int iterations = 0;
+        while (true) {
+            Entry best = getBestGoal();
+            QueueKey top = peek();
+            if (top == null || (best != null && best.g == best.rhs && compare(top.k1, top.k2, best) >= 0)) {
+                consistent = true;
+                return best == null || best.g == Float.POSITIVE_INFINITY ? null : buildPlan(best);
+            }
+            if (maxIterations >= 0 && iterations++ >= maxIterations) {
+                consistent = false;
+                return null;
+            }
+            open.poll();
+            Entry entry = top.entry;
+            entry.version++;
+            if (entry.g > entry.rhs) {
+                entry.g = entry.rhs;
+                if (entry.succs == null) {
+                    expand(entry);
+                }
+                for (Edge edge : entry.succs) {
+                    Entry to = edge.to;
+                    if (to != start && entry.g + edge.cost < to.rhs) {
+                        to.rhs = entry.g + edge.cost;
+                        to.pred = entry;
+                        push(to);
+                    }
+                }
+            } else {
+                entry.g = Float.POSITIVE_INFINITY;
+                updateVertex(entry);
+                if (entry.succs != null) {
+                    for (Edge edge : entry.succs) {
+                        if (edge.to.pred == entry) {
+                            updateVertex(edge.to);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Changes the goal while keeping the search tree, for example when following a moving target. The edge costs of
+     * the new goal must be the same as the old goal.
+     */
+    public void setGoal(AStarGoal<N> goal) {
+        this.goal = Preconditions.checkNotNull(goal);
+        goals.clear();
+        open.clear();
+        for (Entry entry : entries.values()) {
+            if (goal.isFinished(entry.node)) {
+                goals.add(entry);
+            }
+            push(entry);
+        }
+        consistent = false;
+    }
+
+    private void updateVertex(Entry entry) {
+        if (entry != start) {
+            entry.rhs = Float.POSITIVE_INFINITY;
+            entry.pred = null;
+            for (Edge edge : entry.preds) {
+                float cost = edge.from.g + edge.cost;
+                if (cost < entry.rhs) {
+                    entry.rhs = cost;
+                    entry.pred = edge.from;
+                }
+            }
+        }
+        push(entry);
+    }
+
+    private class Edge {
+        private final float cost;
+        private final Entry from;
+        private final Entry to;
+
+        private Edge(Entry from, Entry to, float cost) {
+            this.from = from;
+            this.to = to;
+            this.cost = cost;
+        }
+    }
+
+    private class Entry {
+        private float g = Float.POSITIVE_INFINITY;
+        private N node;
+        private Entry pred;
+        private final List<Edge> preds = Lists.newArrayListWithCapacity(8);
+        private float rhs = Float.POSITIVE_INFINITY;
+        private boolean stale;
+        private List<Edge> succs;
+        private int version;
+
+        private Entry(N node) {
+            this.node = node;
+        }
+    }
+
+    private class QueueKey implements Comparable<QueueKey> {
+        private final Entry entry;
+        private final float k1, k2;
+        private final int version;
+
+        private QueueKey(Entry entry, float k1, float k2) {
+            this.entry = entry;
+            this.k1 = k1;
+            this.k2 = k2;
+            this.version = entry.version;
+        }
+
+        @Override
+        public int compareTo(QueueKey other) {
+            int cmp = Float.compare(k1, other.k1);
+            return cmp != 0 ? cmp : Float.compare(k2, other.k2);
+        }
+    }
+}
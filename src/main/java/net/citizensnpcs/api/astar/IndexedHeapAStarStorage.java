@@ -0,0 +1,261 @@
+package net.citizensnpcs.api.astar;
+
+import java.util.Arrays;
+
+import com.google.common.base.Supplier;
+
+/**
+ * An {@link AStarStorage} for {@link BlockKeyedNode}s backed by an indexed d-ary heap. Each block key appears in the
+ * frontier at most once: when a cheaper route to an open node is found its entry is replaced and sifted up in
+ * O(log n) instead of adding a duplicate entry, so stale entries are never polled and expanded again.
+ *
+ * The number of decrease-key operations can be inspected with {@link #getDecreaseKeyCount()}.
+ */
+public class IndexedHeapAStarStorage implements AStarStorage {
+    private final int arity;
+    private final LongFloatTable closed = new LongFloatTable(512);
+    private int decreaseKeys;
+    private AStarNode[] heap = new AStarNode[128];
+    private final HeapIndex index = new HeapIndex(128);
+    private int size;
+
+    public IndexedHeapAStarStorage() {
+        this(4);
+    }
+
+    /**
+     * @param arity
+     *            The number of children of each heap node, must be at least 2
+     */
+    public IndexedHeapAStarStorage(int arity) {
+        if (arity < 2)
+            throw new IllegalArgumentException("arity must be at least 2");
+        this.arity = arity;
+    }
+
+    @Override
+    public void close(AStarNode node) {
+        long key = key(node);
+        int idx = index.get(key);
+        if (idx >= 0) {
+            removeAt(idx);
+        }
+        closed.put(key, node.g);
+    }
+
+    /**
+     * @return The number of times an open node was replaced by a cheaper route instead of being added again
+     */
+    public int getDecreaseKeyCount() {
+        return decreaseKeys;
+    }
+
+    @Override
+    public AStarNode getBestNode() {
+        return size == 0 ? null : heap[0];
+    }
+
+    @Override
+    public void open(AStarNode node) {
+        long key = key(node);
+        closed.remove(key);
+        int idx = index.get(key);
+        if (idx >= 0) {
+            AStarNode existing = heap[idx];
+            heap[idx] = node;
+            if (node.compareTo(existing) < 0) {
+                decreaseKeys++;
+                siftUp(idx);
+            } else {
+                siftDown(idx);
+            }
+            return;
+        }
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size << 1);
+        }
+        heap[size] = node;
+        index.put(key, size);
+        siftUp(size++);
+    }
+
+    private void removeAt(int idx) {
+        AStarNode removed = heap[idx];
+        index.put(key(removed), -1);
+        AStarNode last = heap[--size];
+        heap[size] = null;
+        if (idx == size)
+            return;
+        heap[idx] = last;
+        index.put(key(last), idx);
+        if (last.compareTo(removed) < 0) {
+            siftUp(idx);
+        } else {
+            siftDown(idx);
+        }
+    }
+
+    @Override
+    public AStarNode removeBestNode() {
+        if (size == 0)
+            return null;
+        AStarNode best = heap[0];
+        removeAt(0);
+        return best;
+    }
+
+    @Override
+    public boolean reset() {
+        Arrays.fill(heap, 0, size, null);
+        size = 0;
+        index.clear();
+        closed.clear();
+        decreaseKeys = 0;
+        return true;
+    }
+
+    private void set(int idx, AStarNode node) {
+        heap[idx] = node;
+        index.put(key(node), idx);
+    }
+
+    @Override
+    public boolean shouldExamine(AStarNode neighbour) {
+        long key = key(neighbour);
+        int idx = index.get(key);
+        if (idx >= 0 && heap[idx].g <= neighbour.g)
+            return false;
+        float closedG = closed.get(key);
+        if (closedG <= neighbour.g)
+            return false;
+        if (!Float.isNaN(closedG)) {
+            closed.remove(key);
+        }
+        return true;
+    }
+
+    private void siftDown(int idx) {
+        AStarNode node = heap[idx];
+        while (true) {
+            int first = idx * arity + 1;
+            if (first >= size)
+                break;
+            int best = first;
+            int end = Math.min(first + arity, size);
+            for (int child = first + 1; child < end; child++) {
+                if (heap[child].compareTo(heap[best]) < 0) {
+                    best = child;
+                }
+            }
+            if (heap[best].compareTo(node) >= 0)
+                break;
+            set(idx, heap[best]);
+            idx = best;
+        }
+        set(idx, node);
+    }
+
+    private void siftUp(int idx) {
+        AStarNode node = heap[idx];
+        while (idx > 0) {
+            int parent = (idx - 1) / arity;
+            if (node.compareTo(heap[parent]) >= 0)
+                break;
+            set(idx, heap[parent]);
+            idx = parent;
+        }
+        set(idx, node);
+    }
+
+    @Override
+    public String toString() {
+        return "IndexedHeapAStarStorage [open=" + size + ", closed=" + closed + ", decreaseKeys=" + decreaseKeys
+                + "]";
+    }
+
+    private static long key(AStarNode node) {
+        return ((BlockKeyedNode) node).getBlockKey();
+    }
+
+    /**
+     * Maps block keys to their position in the heap, or -1 once removed.
+     */
+    private static class HeapIndex {
+        private int generation = 1;
+        private long[] keys;
+        private int mask;
+        private int size;
+        private int[] stamps;
+        private int[] values;
+
+        private HeapIndex(int expectedSize) {
+            allocate(Integer.highestOneBit(Math.max(16, expectedSize * 2) - 1) << 1);
+        }
+
+        private void allocate(int capacity) {
+            keys = new long[capacity];
+            values = new int[capacity];
+            stamps = new int[capacity];
+            mask = capacity - 1;
+        }
+
+        private void clear() {
+            size = 0;
+            if (++generation == 0) {
+                Arrays.fill(stamps, 0);
+                generation = 1;
+            }
+        }
+
+        private int get(long key) {
+            int idx = LongFloatTable.mix(key) & mask;
+            while (stamps[idx] == generation) {
+                if (keys[idx] == key)
+                    return values[idx];
+                idx = (idx + 1) & mask;
+            }
+            return -1;
+        }
+
+        private void put(long key, int value) {
+            int idx = LongFloatTable.mix(key) & mask;
+            while (stamps[idx] == generation) {
+                if (keys[idx] == key) {
+                    values[idx] = value;
+                    return;
+                }
+                idx = (idx + 1) & mask;
+            }
+            if (value < 0)
+                return;
+            stamps[idx] = generation;
+            keys[idx] = key;
+            values[idx] = value;
+            if (++size > (mask >> 1)) {
+                rehash();
+            }
+        }
+
+        private void rehash() {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            int[] oldStamps = stamps;
+            int oldGeneration = generation;
+            allocate(oldKeys.length << 1);
+            generation = 1;
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldStamps[i] != oldGeneration || oldValues[i] < 0)
+                    continue;
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    public static final Supplier<AStarStorage> FACTORY = new Supplier<AStarStorage>() {
+        @Override
+        public AStarStorage get() {
+            return new IndexedHeapAStarStorage();
+        }
+    };
+}
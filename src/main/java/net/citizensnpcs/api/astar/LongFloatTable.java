@@ -0,0 +1,147 @@
+package net.citizensnpcs.api.astar;
+
+import java.util.Arrays;
+
+/**
+ * An open-addressing hash table mapping primitive <code>long</code> keys to <code>float</code> values. Designed to be
+ * reused between searches: {@link #clear()} is O(1) and does not release the backing arrays.
+ *
+ * Removed or missing keys are reported as {@link Float#NaN}.
+ */
+public class LongFloatTable {
+    private int generation = 1;
+    private long[] keys;
+    private int mask;
+    private int size;
+    private int[] stamps;
+    private float[] values;
+
+    public LongFloatTable() {
+        this(256);
+    }
+
+    public LongFloatTable(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * Adds the delta to every value in the table, dropping the entries whose new value is greater than the maximum.
+     * Dropped and removed entries no longer take up slots afterwards.
+     */
+    public void addToAll(float delta, float max) {
+        rehash(keys.length, delta, max);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new float[capacity];
+        stamps = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Removes all entries from the table while keeping the backing arrays for reuse.
+     */
+    public void clear() {
+        size = 0;
+        if (++generation == 0) {
+            Arrays.fill(stamps, 0);
+            generation = 1;
+        }
+    }
+
+    /**
+     * @return Whether the table contains a (non-removed) value for the key
+     */
+    public boolean containsKey(long key) {
+        return !Float.isNaN(get(key));
+    }
+
+    /**
+     * @return The value associated with the key, or {@link Float#NaN} if there is none
+     */
+    public float get(long key) {
+        int idx = mix(key) & mask;
+        while (stamps[idx] == generation) {
+            if (keys[idx] == key)
+                return values[idx];
+            idx = (idx + 1) & mask;
+        }
+        return Float.NaN;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Associates the value with the key, replacing any previous value.
+     */
+    public void put(long key, float value) {
+        int idx = mix(key) & mask;
+        while (stamps[idx] == generation) {
+            if (keys[idx] == key) {
+                values[idx] = value;
+                return;
+            }
+            idx = (idx + 1) & mask;
+        }
+        stamps[idx] = generation;
+        keys[idx] = key;
+        values[idx] = value;
+        if (++size > (mask >> 1)) {
+            rehash(keys.length << 1, 0, Float.POSITIVE_INFINITY);
+        }
+    }
+
+    private void rehash(int capacity, float delta, float max) {
+        long[] oldKeys = keys;
+        float[] oldValues = values;
+        int[] oldStamps = stamps;
+        int oldGeneration = generation;
+        allocate(capacity);
+        generation = 1;
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldStamps[i] != oldGeneration || Float.isNaN(oldValues[i]))
+                continue;
+            float value = oldValues[i] + delta;
+            if (value <= max) {
+                put(oldKeys[i], value);
+            }
+        }
+    }
+
+    /**
+     * Removes the value associated with the key. The slot is kept as a tombstone until the next {@link #clear()} so
+     * that probe sequences stay intact.
+     */
+    public void remove(long key) {
+        int idx = mix(key) & mask;
+        while (stamps[idx] == generation) {
+            if (keys[idx] == key) {
+                values[idx] = Float.NaN;
+                return;
+            }
+            idx = (idx + 1) & mask;
+        }
+    }
+
+    /**
+     * @return The number of occupied slots, including removed entries
+     */
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return "LongFloatTable [size=" + size + ", capacity=" + keys.length + "]";
+    }
+
+    static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,256 @@
+package net.citizensnpcs.api.astar;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+import net.citizensnpcs.api.util.Messaging;
+
+/**
+ * Runs pending {@link AStarMachine.AStarState}s within a shared per-tick time budget so that the cost of pathfinding
+ * per tick stays flat no matter how many searches are started at once. {@link #tick()} should be called once per
+ * server tick, and each search receives a slice of the budget proportional to its priority. Any budget left over by
+ * searches that finish early is shared round-robin between the remaining searches.
+ *
+ * Completed plans, or <code>null</code> if no plan could be found, are passed to the callback given on submission. A
+ * search that throws is logged, marked as failed and completed with <code>null</code> without affecting the others.
+ * Not thread-safe: searches should be submitted and cancelled from the thread calling {@link #tick()}.
+ */
+public class PathfindingScheduler {
+    private final List<Ticket> pending = Lists.newArrayList();
+    private int iterationBatch = 32;
+    private long tickBudget;
+
+    /**
+     * @param tickBudget
+     *            The time budget per tick
+     * @param unit
+     *            The unit of the time budget
+     */
+    public PathfindingScheduler(long tickBudget, TimeUnit unit) {
+        setTickBudget(tickBudget, unit);
+    }
+
+    /**
+     * Cancels all pending searches without calling their callbacks.
+     */
+    public void cancelAll() {
+        for (Ticket ticket : Lists.newArrayList(pending)) {
+            ticket.cancel();
+        }
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * @return The time budget per tick in nanoseconds
+     */
+    public long getTickBudgetNanos() {
+        return tickBudget;
+    }
+
+    /**
+     * Sets the number of iterations to run a search for between checks of the time budget.
+     */
+    public void setIterationBatch(int iterationBatch) {
+        this.iterationBatch = Math.max(1, iterationBatch);
+    }
+
+    public void setTickBudget(long tickBudget, TimeUnit unit) {
+        Preconditions.checkArgument(tickBudget > 0, "budget must be positive");
+        this.tickBudget = unit.toNanos(tickBudget);
+    }
+
+    /**
+     * Submits a search with the default priority of 1.
+     *
+     * @see #submit(AStarMachine, AStarMachine.AStarState, int, Consumer)
+     */
+    public <N extends AStarNode, P extends Plan> Ticket submit(AStarMachine<N, P> machine,
+            AStarMachine<N, P>.AStarState state, Consumer<P> callback) {
+        return submit(machine, state, 1, callback);
+    }
+
+    /**
+     * Submits a search to be run over the following ticks.
+     *
+     * @param machine
+     *            The machine that created the state
+     * @param state
+     *            The search state
+     * @param priority
+     *            The relative share of the tick budget the search receives, at least 1
+     * @param callback
+     *            Called with the finished plan, or <code>null</code> if no plan could be found
+     * @return A ticket that can be used to cancel the search
+     */
+    public <N extends AStarNode, P extends Plan> Ticket submit(AStarMachine<N, P> machine,
+            AStarMachine<N, P>.AStarState state, int priority, Consumer<P> callback) {
+        Preconditions.checkNotNull(machine);
+        Preconditions.checkNotNull(state);
+        Preconditions.checkNotNull(callback);
+        Ticket ticket = new Search<N, P>(machine, state, callback);
+        ticket.setPriority(priority);
+        pending.add(ticket);
+        return ticket;
+    }
+
+    /**
+     * Runs pending searches until the tick budget has been used or all searches have finished.
+     */
+    public void tick() {
+        if (pending.isEmpty())
+            return;
+        long deadline = System.nanoTime() + tickBudget;
+        int size = pending.size();
+        long totalPriority = 0;
+        for (Ticket ticket : pending) {
+            totalPriority += ticket.priority;
+        }
+        List<Ticket> finished = Lists.newArrayList();
+        int visited = 0;
+        for (; visited < size; visited++) {
+            Ticket ticket = pending.get(visited);
+            long now = System.nanoTime();
+            if (now >= deadline)
+                break;
+            long slice = tickBudget * ticket.priority / totalPriority;
+            if (ticket.runUntil(Math.min(deadline, now + slice))) {
+                finished.add(ticket);
+            }
+        }
+        boolean running = finished.size() < size;
+        while (running && System.nanoTime() < deadline) {
+            running = false;
+            for (int i = 0; i < size; i++) {
+                Ticket ticket = pending.get(i);
+                if (ticket.done)
+                    continue;
+                if (ticket.runUntil(0)) {
+                    finished.add(ticket);
+                } else {
+                    running = true;
+                }
+                if (System.nanoTime() >= deadline)
+                    break;
+            }
+        }
+        // searches that missed out when the budget ran out go first next tick
+        Collections.rotate(pending, -Math.max(1, visited));
+        pending.removeIf(ticket -> ticket.done);
+        for (Ticket ticket : finished) {
+            ticket.complete();
+        }
+    }
+
+    private class Search<N extends AStarNode, P extends Plan> extends Ticket {
+        private final Consumer<P> callback;
+        private final AStarMachine<N, P> machine;
+        private P plan;
+        private final AStarMachine<N, P>.AStarState state;
+
+        private Search(AStarMachine<N, P> machine, AStarMachine<N, P>.AStarState state, Consumer<P> callback) {
+            this.machine = machine;
+            this.state = state;
+            this.callback = callback;
+        }
+
+        @Override
+        void complete() {
+            callback.accept(plan);
+        }
+
+        @Override
+        void release() {
+            state.release();
+        }
+
+        @Override
+        boolean runUntil(long deadline) {
+            try {
+                do {
+                    plan = machine.run(state, iterationBatch);
+                    if (plan != null || state.isEmpty()) {
+                        done = true;
+                        return true;
+                    }
+                } while (System.nanoTime() < deadline);
+            } catch (Throwable t) {
+                Messaging.severe("Error while pathfinding:", t);
+                plan = null;
+                failed = done = true;
+                release();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * A handle to a search submitted to a {@link PathfindingScheduler}.
+     */
+    public abstract class Ticket {
+        private boolean cancelled;
+        boolean done;
+        boolean failed;
+        private int priority;
+
+        private Ticket() {
+        }
+
+        /**
+         * Cancels the search and releases its state. The callback will not be called.
+         */
+        public void cancel() {
+            if (done)
+                return;
+            cancelled = done = true;
+            pending.remove(this);
+            release();
+        }
+
+        abstract void complete();
+
+        public int getPriority() {
+            return priority;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * @return Whether the search has finished or been cancelled
+         */
+        public boolean isDone() {
+            return done;
+        }
+
+        /**
+         * @return Whether the search threw an exception, in which case the callback was called with <code>null</code>
+         */
+        public boolean isFailed() {
+            return failed;
+        }
+
+        abstract void release();
+
+        /**
+         * Runs the search in batches until it finishes, fails or the deadline passes. Always runs at least one batch.
+         *
+         * @return Whether the search finished or failed
+         */
+        abstract boolean runUntil(long deadline);
+
+        public void setPriority(int priority) {
+            Preconditions.checkArgument(priority >= 1, "priority must be at least 1");
+            this.priority = priority;
+        }
+    }
+}
@@ -40,6 +40,14 @@ public class SimpleAStarStorage implements AStarStorage {
         return queue.poll();
     }
 
+    @Override
+    public boolean reset() {
+        closed.clear();
+        open.clear();
+        queue.clear();
+        return true;
+    }
+
     @Override
     public boolean shouldExamine(AStarNode neighbour) {
         Float openG = open.get(neighbour);
@@ -1,43 +1,61 @@
 package net.citizensnpcs.api.astar.pathfinder;
 
-import java.util.concurrent.Callable;
-
 import org.bukkit.Bukkit;
 import org.bukkit.ChunkSnapshot;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.World;
+import org.bukkit.block.data.BlockData;
 
 import net.citizensnpcs.api.util.BoundingBox;
+import net.citizensnpcs.api.util.SpigotUtil;
 
+/**
+ * A {@link BlockSource} that can be safely read off the main thread. It must be created on the main thread, which
+ * snapshots every loaded chunk in the bounding region up front. Chunks that are not loaded are never loaded or
+ * generated. Reads from other threads never touch the world: blocks in chunks that were not snapshotted are treated as
+ * solid, so a search fails rather than plan a path through unknown terrain.
+ */
 public class AsyncChunkSnapshotBlockSource extends CachingChunkBlockSource<ChunkSnapshot> {
+    /**
+     * Snapshots only the chunks within <code>margin</code> blocks of the line between the two locations.
+     */
+    public AsyncChunkSnapshotBlockSource(Location from, Location to, int margin) {
+        super(from, to, margin);
+    }
+
     public AsyncChunkSnapshotBlockSource(Location location, float radius) {
         super(location, radius);
     }
 
+    public AsyncChunkSnapshotBlockSource(World world, int minX, int minZ, int maxX, int maxZ) {
+        super(world, minX, minZ, maxX, maxZ);
+    }
+
     public AsyncChunkSnapshotBlockSource(World world, int x, int z, float radius) {
         super(world, x, z, radius);
     }
 
+    @Override
+    protected boolean canAccessWorld() {
+        return Bukkit.isPrimaryThread();
+    }
+
+    @Override
+    protected BlockData getBlockData(ChunkSnapshot chunk, int x, int y, int z) {
+        return SpigotUtil.isUsing1_13API() ? chunk.getBlockData(x, y, z) : null;
+    }
+
     @Override
     protected ChunkSnapshot getChunkObject(int x, int z) {
-        // TODO: pre-load multiple chunks on cache miss
-        Callable<ChunkSnapshot> call = () -> world.getChunkAt(x, z).getChunkSnapshot(false, false, false);
-        try {
-            if (!Bukkit.isPrimaryThread()) {
-                return Bukkit.getScheduler().callSyncMethod(null, call).get();
-            } else {
-                return call.call();
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return null;
+        if (!Bukkit.isPrimaryThread() || !world.isChunkLoaded(x, z))
+            return null;
+        return world.getChunkAt(x, z).getChunkSnapshot(false, false, false);
     }
 
     @Override
     protected BoundingBox getCollisionBox(ChunkSnapshot chunk, int x, int y, int z) {
-        return null; // TODO
+        return ChunkSnapshotBlockSource.getSolidCollisionBox(chunk, x, y, z);
     }
 
     @Override
@@ -0,0 +1,83 @@
+package net.citizensnpcs.api.astar.pathfinder;
+
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.plugin.Plugin;
+
+import com.google.common.base.Preconditions;
+
+import net.citizensnpcs.api.astar.AStarMachine;
+import net.citizensnpcs.api.util.Messaging;
+
+/**
+ * Runs {@link VectorNode} searches on a worker {@link Executor} instead of the main thread. The loaded chunks along
+ * the line from the start to the destination are snapshotted on the main thread in one batch using an
+ * {@link AsyncChunkSnapshotBlockSource}, after which the search and all {@link BlockExaminer}s only read from the
+ * snapshots. The finished {@link Path} is handed back on the main thread.
+ *
+ * Examiners must only read blocks through the given {@link BlockSource} and must not be shared with searches running
+ * at the same time if they keep state between calls.
+ */
+public class AsyncPathfinder {
+    private final Executor executor;
+    private final AStarMachine<VectorNode, Path> machine = AStarMachine.createWithDefaultStorage();
+    private int margin = 16;
+    private final Plugin plugin;
+
+    public AsyncPathfinder(Plugin plugin, Executor executor) {
+        this.plugin = plugin;
+        this.executor = executor;
+    }
+
+    /**
+     * Snapshots the loaded chunks between the start and destination and queues a search on the worker executor. Must be
+     * called on the main thread.
+     *
+     * @param start
+     *            The start location
+     * @param dest
+     *            The destination
+     * @param range
+     *            The distance squared from the destination at which the search is finished
+     * @param maxIterations
+     *            The maximum number of iterations, or -1 for no limit
+     * @param callback
+     *            Called on the main thread with the path, or <code>null</code> if none was found
+     * @param examiners
+     *            The examiners to use
+     */
+    public void findPath(Location start, Location dest, float range, int maxIterations, Consumer<Path> callback,
+            BlockExaminer... examiners) {
+        Preconditions.checkState(Bukkit.isPrimaryThread(), "paths must be requested on the main thread");
+        Preconditions.checkArgument(start.getWorld() == dest.getWorld(), "start and destination in different worlds");
+        BlockSource source = new AsyncChunkSnapshotBlockSource(start, dest, margin);
+        VectorGoal goal = new VectorGoal(dest, range);
+        VectorNode node = new VectorNode(goal, start, source, examiners);
+        executor.execute(() -> {
+            Path path = null;
+            try {
+                path = machine.runFully(goal, node, maxIterations);
+            } catch (Throwable t) {
+                Messaging.severe("Error while pathfinding asynchronously:", t);
+            }
+            Path result = path;
+            Bukkit.getScheduler().runTask(plugin, () -> callback.accept(result));
+        });
+    }
+
+    public int getMargin() {
+        return margin;
+    }
+
+    /**
+     * Sets the number of blocks either side of the line from the start to the destination to snapshot. Blocks outside
+     * of the snapshotted chunks, including chunks that are not loaded, are treated as solid and cannot be pathed
+     * through.
+     */
+    public void setMargin(int margin) {
+        this.margin = Math.max(0, margin);
+    }
+}
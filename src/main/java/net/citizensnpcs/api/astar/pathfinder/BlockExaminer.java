@@ -3,6 +3,14 @@ package net.citizensnpcs.api.astar.pathfinder;
 public interface BlockExaminer {
     float getCost(BlockSource source, PathPoint point);
 
+    /**
+     * Returns whether moves into or out of the point may only be valid in one direction, for example drops that cannot
+     * be jumped back up or ladders. Bidirectional searches fall back to forward-only search when this returns true.
+     */
+    default boolean isDirectional(BlockSource source, PathPoint point) {
+        return false;
+    }
+
     PassableState isPassable(BlockSource source, PathPoint point);
 
     public enum PassableState {
@@ -0,0 +1,103 @@
+package net.citizensnpcs.api.astar.pathfinder;
+
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.util.Vector;
+
+import net.citizensnpcs.api.util.BoundingBox;
+
+/**
+ * A {@link BlockSource} that caches the {@link BlockFlags} of another source for the duration of a search. Flags are
+ * stored in lazily allocated 16x16x16 sections of a flat array covering a 256 block window centred on the search
+ * origin. Lookups outside of the window are passed through to the wrapped source.
+ */
+public class BlockFlagCache extends BlockSource {
+    private final int originX, originY, originZ;
+    private final char[][] sections = new char[WINDOW_SECTIONS * WINDOW_SECTIONS * WINDOW_SECTIONS][];
+    private final BlockSource source;
+
+    public BlockFlagCache(BlockSource source, int x, int y, int z) {
+        this.source = source;
+        this.originX = (x >> 4) - WINDOW_SECTIONS / 2;
+        this.originY = (y >> 4) - WINDOW_SECTIONS / 2;
+        this.originZ = (z >> 4) - WINDOW_SECTIONS / 2;
+    }
+
+    public BlockFlagCache(BlockSource source, Vector origin) {
+        this(source, origin.getBlockX(), origin.getBlockY(), origin.getBlockZ());
+    }
+
+    @Override
+    public Block getBlockAt(int x, int y, int z) {
+        return source.getBlockAt(x, y, z);
+    }
+
+    @Override
+    public Block getBlockAt(Vector position) {
+        return source.getBlockAt(position);
+    }
+
+    @Override
+    public BlockData getBlockDataAt(int x, int y, int z) {
+        return source.getBlockDataAt(x, y, z);
+    }
+
+    @Override
+    public int getBlockFlags(int x, int y, int z) {
+        int sx = (x >> 4) - originX, sy = (y >> 4) - originY, sz = (z >> 4) - originZ;
+        if ((sx | sy | sz) < 0 || sx >= WINDOW_SECTIONS || sy >= WINDOW_SECTIONS || sz >= WINDOW_SECTIONS)
+            return source.getBlockFlags(x, y, z);
+        int idx = (sx * WINDOW_SECTIONS + sy) * WINDOW_SECTIONS + sz;
+        char[] section = sections[idx];
+        if (section == null) {
+            section = sections[idx] = new char[16 * 16 * 16];
+        }
+        int local = ((y & 15) << 8) | ((z & 15) << 4) | (x & 15);
+        int flags = section[local];
+        if (flags == 0) {
+            flags = source.getBlockFlags(x, y, z) | KNOWN;
+            section[local] = (char) flags;
+        }
+        return flags & ~KNOWN;
+    }
+
+    @Override
+    public BoundingBox getCollisionBox(int x, int y, int z) {
+        return source.getCollisionBox(x, y, z);
+    }
+
+    @Override
+    public Material getMaterialAt(int x, int y, int z) {
+        return source.getMaterialAt(x, y, z);
+    }
+
+    /**
+     * @return The wrapped source
+     */
+    public BlockSource getSource() {
+        return source;
+    }
+
+    @Override
+    public World getWorld() {
+        return source.getWorld();
+    }
+
+    /**
+     * Forgets the cached flags of the given block so that they are read from the wrapped source again.
+     */
+    public void invalidate(int x, int y, int z) {
+        int sx = (x >> 4) - originX, sy = (y >> 4) - originY, sz = (z >> 4) - originZ;
+        if ((sx | sy | sz) < 0 || sx >= WINDOW_SECTIONS || sy >= WINDOW_SECTIONS || sz >= WINDOW_SECTIONS)
+            return;
+        char[] section = sections[(sx * WINDOW_SECTIONS + sy) * WINDOW_SECTIONS + sz];
+        if (section != null) {
+            section[((y & 15) << 8) | ((z & 15) << 4) | (x & 15)] = 0;
+        }
+    }
+
+    private static final int KNOWN = 1 << 15;
+    private static final int WINDOW_SECTIONS = 16;
+}
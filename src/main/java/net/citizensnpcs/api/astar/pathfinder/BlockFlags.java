@@ -0,0 +1,59 @@
+package net.citizensnpcs.api.astar.pathfinder;
+
+/**
+ * Bit flags classifying a block for pathfinding, as returned by {@link BlockSource#getBlockFlags(int, int, int)}.
+ */
+public final class BlockFlags {
+    private BlockFlags() {
+    }
+
+    /**
+     * @see MinecraftBlockExaminer#canStandIn(org.bukkit.block.Block...)
+     */
+    public static boolean canStandIn(int flags) {
+        return (flags & (SOLID | TOP_SLAB | CLOSED_TRAPDOOR)) == 0;
+    }
+
+    /**
+     * @see MinecraftBlockExaminer#canStandOn(org.bukkit.Material)
+     */
+    public static boolean canStandOn(int flags) {
+        return (flags & STANDABLE) != 0;
+    }
+
+    public static boolean isLiquidOrInLiquid(int flags) {
+        return (flags & (LIQUID | WATERLOGGED)) != 0;
+    }
+
+    /**
+     * Returns whether the flags describe a floor that can be walked onto from any direction at no extra cost.
+     */
+    public static boolean isPlainFloor(int flags) {
+        return (flags & STANDABLE) != 0 && (flags & (NOT_JUMPABLE | CLIMBABLE | LIQUID | SLOW)) == 0;
+    }
+
+    public static final int AIR = 1;
+    public static final int CLIMBABLE = 1 << 1;
+    public static final int CLOSED_TRAPDOOR = 1 << 2;
+    public static final int DOOR = 1 << 3;
+    public static final int GATE = 1 << 14;
+    public static final int LAVA = 1 << 4;
+    public static final int LIQUID = 1 << 5;
+    public static final int NOT_JUMPABLE = 1 << 6;
+    /**
+     * A floor that slows movement, such as soul sand or ice.
+     */
+    public static final int SLOW = 1 << 7;
+    public static final int SOLID = 1 << 8;
+    public static final int STANDABLE = 1 << 9;
+    /**
+     * A slab that is not a bottom slab.
+     */
+    public static final int TOP_SLAB = 1 << 10;
+    /**
+     * A trapdoor, open or closed. Only set on 1.13+.
+     */
+    public static final int TRAPDOOR = 1 << 11;
+    public static final int WATERLOGGED = 1 << 12;
+    public static final int WEB = 1 << 13;
+}
@@ -3,6 +3,7 @@ package net.citizensnpcs.api.astar.pathfinder;
 import org.bukkit.Material;
 import org.bukkit.World;
 import org.bukkit.block.Block;
+import org.bukkit.block.data.BlockData;
 import org.bukkit.util.Vector;
 
 import net.citizensnpcs.api.util.BoundingBox;
@@ -16,6 +17,23 @@ public abstract class BlockSource {
         return getWorld().getBlockAt(position.getBlockX(), position.getBlockY(), position.getBlockZ());
     }
 
+    /**
+     * Returns the {@link BlockData} at the given position, or null if it is not available. Only supported when using
+     * the 1.13 API.
+     */
+    public BlockData getBlockDataAt(int x, int y, int z) {
+        return getBlockAt(x, y, z).getBlockData();
+    }
+
+    /**
+     * Returns the {@link BlockFlags} classifying the block at the given position.
+     */
+    public int getBlockFlags(int x, int y, int z) {
+        Material material = getMaterialAt(x, y, z);
+        return MinecraftBlockExaminer.getBlockFlags(material,
+                MinecraftBlockExaminer.hasDataFlags(material) ? getBlockDataAt(x, y, z) : null);
+    }
+
     public abstract BoundingBox getCollisionBox(int x, int y, int z);
 
     public BoundingBox getCollisionBox(Vector pos) {
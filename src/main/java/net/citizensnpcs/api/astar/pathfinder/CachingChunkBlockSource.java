@@ -5,17 +5,30 @@ import java.util.Map;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.World;
+import org.bukkit.block.data.BlockData;
 
 import com.google.common.collect.Maps;
 
 import net.citizensnpcs.api.util.BoundingBox;
 import net.citizensnpcs.api.util.SpigotUtil;
 
+/**
+ * A {@link BlockSource} that caches chunk objects for the rectangle given on construction, or for a corridor along the
+ * line between two locations. Chunks outside of the rectangle are fetched on the first miss together with a batch of
+ * neighbouring chunks in the direction the search is expanding, so that wide searches do not fall through to the world
+ * on every block lookup.
+ */
 public abstract class CachingChunkBlockSource<T> extends BlockSource {
     private final Map<ChunkCoord, ChunkCache> chunkCache = Maps.newHashMap();
     private final Object[][] chunks;
     private final int chunkX;
     private final int chunkZ;
+    private long hits;
+    private ChunkCache lastCache;
+    private int lastChunkX, lastChunkZ;
+    private long misses;
+    private int prefetchedChunks;
+    private int prefetchRadius = 1;
     protected final World world;
 
     protected CachingChunkBlockSource(Location location, float radius) {
@@ -26,20 +39,92 @@ public abstract class CachingChunkBlockSource<T> extends BlockSource {
         this(world, (int) (x - radius), (int) (z - radius), (int) (x + radius), (int) (z + radius));
     }
 
+    /**
+     * Caches only the chunks within <code>margin</code> blocks of the line between the two locations, so that long
+     * searches do not cache the whole rectangle around them. Chunks of the rectangle outside of the corridor are
+     * left missing.
+     */
+    protected CachingChunkBlockSource(Location from, Location to, int margin) {
+        this(from.getWorld(), Math.min(from.getBlockX(), to.getBlockX()) - margin,
+                Math.min(from.getBlockZ(), to.getBlockZ()) - margin,
+                Math.max(from.getBlockX(), to.getBlockX()) + margin,
+                Math.max(from.getBlockZ(), to.getBlockZ()) + margin,
+                new Corridor(from.getBlockX(), from.getBlockZ(), to.getBlockX(), to.getBlockZ(), margin));
+    }
+
     protected CachingChunkBlockSource(World world, int minX, int minZ, int maxX, int maxZ) {
+        this(world, minX, minZ, maxX, maxZ, null);
+    }
+
+    private CachingChunkBlockSource(World world, int minX, int minZ, int maxX, int maxZ, Corridor corridor) {
         this.world = world;
         this.chunkX = minX >> 4;
         this.chunkZ = minZ >> 4;
         int maxChunkX = maxX >> 4, maxChunkZ = maxZ >> 4;
 
         chunks = new Object[maxChunkX - chunkX + 1][maxChunkZ - chunkZ + 1];
-        for (int x = chunkX; x < maxChunkX; x++) {
-            for (int z = chunkZ; z < maxChunkZ; z++) {
-                chunks[x - chunkX][z - chunkZ] = getChunkObject(x, z);
+        for (int x = chunkX; x <= maxChunkX; x++) {
+            for (int z = chunkZ; z <= maxChunkZ; z++) {
+                if (corridor == null || corridor.contains(x, z)) {
+                    chunks[x - chunkX][z - chunkZ] = getChunkObject(x, z);
+                }
             }
         }
     }
 
+    /**
+     * Returns whether blocks outside of the cached chunks may be read from the world on the current thread. If not,
+     * missing blocks are treated as solid so that searches never plan through terrain they cannot see.
+     */
+    protected boolean canAccessWorld() {
+        return true;
+    }
+
+    @Override
+    public int getBlockFlags(int x, int y, int z) {
+        if (!SpigotUtil.checkYSafe(y, world))
+            return MinecraftBlockExaminer.getBlockFlags(Material.AIR, null);
+        T chunk = getSpecific(x, z);
+        if (chunk == null)
+            return canAccessWorld() ? MinecraftBlockExaminer.getBlockFlags(world.getBlockAt(x, y, z))
+                    : BlockFlags.SOLID;
+        Material material = getType(chunk, x & 15, y, z & 15);
+        return MinecraftBlockExaminer.getBlockFlags(material,
+                MinecraftBlockExaminer.hasDataFlags(material) ? getBlockData(chunk, x & 15, y, z & 15) : null);
+    }
+
+    @Override
+    public BlockData getBlockDataAt(int x, int y, int z) {
+        if (!SpigotUtil.checkYSafe(y, world)) {
+            return null;
+        }
+        T chunk = getSpecific(x, z);
+        if (chunk != null)
+            return getBlockData(chunk, x & 15, y, z & 15);
+        return canAccessWorld() ? world.getBlockAt(x, y, z).getBlockData() : null;
+    }
+
+    /**
+     * Returns the {@link BlockData} of a cached chunk, or null if the chunk object does not support it.
+     */
+    protected BlockData getBlockData(T chunk, int x, int y, int z) {
+        return null;
+    }
+
+    /**
+     * @return The number of block lookups answered from cached chunks
+     */
+    public long getCacheHits() {
+        return hits;
+    }
+
+    /**
+     * @return The number of block lookups that could not be answered from cached chunks
+     */
+    public long getCacheMisses() {
+        return misses;
+    }
+
     protected abstract T getChunkObject(int x, int z);
 
     @Override
@@ -50,6 +135,9 @@ public abstract class CachingChunkBlockSource<T> extends BlockSource {
         T chunk = getSpecific(x, z);
         if (chunk != null)
             return getCollisionBox(chunk, x & 15, y, z & 15);
+        if (!canAccessWorld()) {
+            return new BoundingBox(x, y, z, x + 1, y + 1, z + 1);
+        }
         if (!SUPPORT_BOUNDING_BOX) {
             return null;
         }
@@ -73,29 +161,84 @@ public abstract class CachingChunkBlockSource<T> extends BlockSource {
         T chunk = getSpecific(x, z);
         if (chunk != null)
             return getType(chunk, x & 15, y, z & 15);
-        return world.getBlockAt(x, y, z).getType();
+        return canAccessWorld() ? world.getBlockAt(x, y, z).getType() : Material.STONE;
+    }
+
+    /**
+     * @return The number of chunks fetched outside of the initial rectangle
+     */
+    public int getPrefetchedChunks() {
+        return prefetchedChunks;
+    }
+
+    public int getPrefetchRadius() {
+        return prefetchRadius;
     }
 
     @SuppressWarnings("unchecked")
     private T getSpecific(int x, int z) {
-        int xx = (x >> 4) - chunkX;
-        int zz = (z >> 4) - chunkZ;
+        int cx = x >> 4, cz = z >> 4;
+        int xx = cx - chunkX;
+        int zz = cz - chunkZ;
         if (xx >= 0 && xx < chunks.length) {
             Object[] inner = chunks[xx];
             if (zz >= 0 && zz < inner.length) {
-                return (T) inner[zz];
+                T chunk = (T) inner[zz];
+                if (chunk != null) {
+                    hits++;
+                } else {
+                    misses++;
+                }
+                return chunk;
             }
         }
-        ChunkCoord key = new ChunkCoord(x >> 4, z >> 4);
-        ChunkCache prev = chunkCache.get(key);
-        if (prev == null) {
-            chunkCache.put(key, prev = new ChunkCache());
-        } else if (prev.obj != null) {
-            return prev.obj;
-        } else if (++prev.hitCount >= 2) {
-            return prev.obj = getChunkObject(x >> 4, z >> 4);
+        ChunkCache cache = lastCache != null && lastChunkX == cx && lastChunkZ == cz ? lastCache : null;
+        if (cache == null) {
+            cache = chunkCache.get(new ChunkCoord(cx, cz));
+            if (cache == null) {
+                cache = prefetch(cx, cz);
+            }
+            lastCache = cache;
+            lastChunkX = cx;
+            lastChunkZ = cz;
         }
-        return null;
+        if (cache.obj != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return cache.obj;
+    }
+
+    /**
+     * Fetches the missed chunk together with a square of chunks ahead of it, extending away from the initial
+     * rectangle in the direction of the miss.
+     */
+    private ChunkCache prefetch(int cx, int cz) {
+        ChunkCache missed = new ChunkCache();
+        chunkCache.put(new ChunkCoord(cx, cz), missed);
+        if (!canAccessWorld())
+            return missed;
+        missed.obj = getChunkObject(cx, cz);
+        prefetchedChunks++;
+        int dx = Integer.signum(cx - (chunkX + chunks.length / 2));
+        int dz = Integer.signum(cz - (chunkZ + chunks[0].length / 2));
+        int centreX = cx + dx * prefetchRadius, centreZ = cz + dz * prefetchRadius;
+        for (int x = centreX - prefetchRadius; x <= centreX + prefetchRadius; x++) {
+            for (int z = centreZ - prefetchRadius; z <= centreZ + prefetchRadius; z++) {
+                int xx = x - chunkX, zz = z - chunkZ;
+                if (xx >= 0 && xx < chunks.length && zz >= 0 && zz < chunks[xx].length)
+                    continue;
+                ChunkCoord key = new ChunkCoord(x, z);
+                if (chunkCache.containsKey(key) || !world.isChunkLoaded(x, z))
+                    continue;
+                ChunkCache cache = new ChunkCache();
+                cache.obj = getChunkObject(x, z);
+                chunkCache.put(key, cache);
+                prefetchedChunks++;
+            }
+        }
+        return missed;
     }
 
     protected abstract Material getType(T chunk, int x, int y, int z);
@@ -105,11 +248,42 @@ public abstract class CachingChunkBlockSource<T> extends BlockSource {
         return world;
     }
 
+    /**
+     * Sets the radius of the square of chunks fetched in the direction of a miss outside of the initial rectangle. A
+     * radius of 0 fetches only the missed chunk.
+     */
+    public void setPrefetchRadius(int prefetchRadius) {
+        this.prefetchRadius = Math.max(0, prefetchRadius);
+    }
+
     private class ChunkCache {
-        int hitCount;
         T obj;
     }
 
+    private static class Corridor {
+        private final int fromX, fromZ, toX, toZ;
+        private final double reach;
+
+        public Corridor(int fromX, int fromZ, int toX, int toZ, int margin) {
+            this.fromX = fromX;
+            this.fromZ = fromZ;
+            this.toX = toX;
+            this.toZ = toZ;
+            // measured from the centre of a chunk, so allow for half its diagonal
+            this.reach = margin + 8 * Math.sqrt(2);
+        }
+
+        public boolean contains(int chunkX, int chunkZ) {
+            double x = (chunkX << 4) + 8, z = (chunkZ << 4) + 8;
+            double dx = toX - fromX, dz = toZ - fromZ;
+            double lengthSquared = dx * dx + dz * dz;
+            double t = lengthSquared == 0 ? 0
+                    : Math.max(0, Math.min(1, ((x - fromX) * dx + (z - fromZ) * dz) / lengthSquared));
+            double ox = fromX + t * dx - x, oz = fromZ + t * dz - z;
+            return ox * ox + oz * oz <= reach * reach;
+        }
+    }
+
     private static class ChunkCoord {
         int x, z;
 
@@ -4,8 +4,10 @@ import org.bukkit.ChunkSnapshot;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.World;
+import org.bukkit.block.data.BlockData;
 
 import net.citizensnpcs.api.util.BoundingBox;
+import net.citizensnpcs.api.util.SpigotUtil;
 
 public class ChunkSnapshotBlockSource extends CachingChunkBlockSource<ChunkSnapshot> {
     public ChunkSnapshotBlockSource(Location location, float radius) {
@@ -16,6 +18,11 @@ public class ChunkSnapshotBlockSource extends CachingChunkBlockSource<ChunkSnaps
         super(world, x, z, radius);
     }
 
+    @Override
+    protected BlockData getBlockData(ChunkSnapshot chunk, int x, int y, int z) {
+        return SpigotUtil.isUsing1_13API() ? chunk.getBlockData(x, y, z) : null;
+    }
+
     @Override
     protected ChunkSnapshot getChunkObject(int x, int z) {
         return world.getChunkAt(x, z).getChunkSnapshot(false, false, false);
@@ -23,7 +30,7 @@ public class ChunkSnapshotBlockSource extends CachingChunkBlockSource<ChunkSnaps
 
     @Override
     protected BoundingBox getCollisionBox(ChunkSnapshot chunk, int x, int y, int z) {
-        return null; // TODO
+        return getSolidCollisionBox(chunk, x, y, z);
     }
 
     @Override
@@ -35,4 +42,15 @@ public class ChunkSnapshotBlockSource extends CachingChunkBlockSource<ChunkSnaps
     protected Material getType(ChunkSnapshot chunk, int x, int y, int z) {
         return chunk.getBlockType(x, y, z);
     }
+
+    /**
+     * Approximates the collision box of a snapshotted block as a full block if it is solid, since snapshots do not
+     * store block shapes.
+     */
+    static BoundingBox getSolidCollisionBox(ChunkSnapshot chunk, int x, int y, int z) {
+        if (!chunk.getBlockType(x, y, z).isSolid())
+            return BoundingBox.EMPTY;
+        int blockX = (chunk.getX() << 4) + x, blockZ = (chunk.getZ() << 4) + z;
+        return new BoundingBox(blockX, y, blockZ, blockX + 1, y + 1, blockZ + 1);
+    }
 }
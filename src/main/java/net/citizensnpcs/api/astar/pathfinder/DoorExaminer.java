@@ -31,8 +31,8 @@ public class DoorExaminer implements BlockExaminer {
 
     @Override
     public PassableState isPassable(BlockSource source, PathPoint point) {
-        Material in = source.getMaterialAt(point.getVector());
-        if (MinecraftBlockExaminer.isDoor(in) || MinecraftBlockExaminer.isGate(in)) {
+        int flags = source.getBlockFlags(point.getBlockX(), point.getBlockY(), point.getBlockZ());
+        if ((flags & (BlockFlags.DOOR | BlockFlags.GATE)) != 0) {
             point.addCallback(new DoorOpener());
             return PassableState.PASSABLE;
         }
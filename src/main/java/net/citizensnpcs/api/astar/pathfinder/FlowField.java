@@ -0,0 +1,271 @@
+package net.citizensnpcs.api.astar.pathfinder;
+
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.bukkit.Location;
+import org.bukkit.util.Vector;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import net.citizensnpcs.api.astar.AStarNode;
+import net.citizensnpcs.api.astar.BlockKeyedNode;
+import net.citizensnpcs.api.astar.LongFloatTable;
+
+/**
+ * A flow field (Dijkstra map) holding the cost of walking from every reachable block within a maximum cost to a shared
+ * goal. It is computed once from the goal outwards, after which any number of NPCs can read their path to the goal by
+ * following the lowest cost neighbour, instead of each running their own search.
+ *
+ * The neighbours of every block within the maximum cost are cached, so moving the goal with {@link #setGoal(Location)}
+ * only updates the costs that decrease and does not read the block source again for known blocks. Blocks that end up
+ * beyond the maximum cost are forgotten along with their neighbours. Call {@link #invalidate(int, int, int)}
+ * when a block changes. Uses the same neighbours as {@link VectorNode}, which assumes that walking is symmetric:
+ * examiners that generate neighbours depending on the direction of travel are not supported.
+ */
+public class FlowField {
+    private final Map<Long, long[]> adjacency = Maps.newHashMap();
+    private final LongFloatTable costs = new LongFloatTable(1024);
+    private boolean dirty;
+    private long goal;
+    private final float maxCost;
+    private final VectorNode root;
+    private final BlockFlagCache source;
+    private int version;
+
+    /**
+     * @param goal
+     *            The goal
+     * @param maxCost
+     *            The maximum walking distance from the goal to compute costs for
+     * @param source
+     *            The block source
+     * @param examiners
+     *            The examiners to use
+     */
+    public FlowField(Location goal, float maxCost, BlockSource source, BlockExaminer... examiners) {
+        this.maxCost = maxCost;
+        this.source = source instanceof BlockFlagCache ? (BlockFlagCache) source
+                : new BlockFlagCache(source, goal.toVector());
+        VectorGoal vectorGoal = new VectorGoal(goal, 0);
+        this.root = new VectorNode(null, vectorGoal, vectorGoal.goal, this.source, examiners);
+        this.goal = root.getBlockKey();
+        rebuild();
+    }
+
+    private float distance(long from, long to) {
+        int dx = BlockKeyedNode.unpackX(from) - BlockKeyedNode.unpackX(to);
+        int dy = BlockKeyedNode.unpackY(from) - BlockKeyedNode.unpackY(to);
+        int dz = BlockKeyedNode.unpackZ(from) - BlockKeyedNode.unpackZ(to);
+        return (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    private long[] getAdjacency(long key) {
+        long[] neighbours = adjacency.get(key);
+        if (neighbours == null) {
+            VectorNode node = root.createAt(BlockKeyedNode.unpackX(key), BlockKeyedNode.unpackY(key),
+                    BlockKeyedNode.unpackZ(key));
+            List<Long> keys = Lists.newArrayList();
+            for (AStarNode neighbour : node.getNeighbours()) {
+                keys.add(((VectorNode) neighbour).getBlockKey());
+            }
+            neighbours = new long[keys.size()];
+            for (int i = 0; i < neighbours.length; i++) {
+                neighbours[i] = keys.get(i);
+            }
+            adjacency.put(key, neighbours);
+        }
+        return neighbours;
+    }
+
+    /**
+     * @return The walking cost from the block to the goal, or {@link Float#NaN} if the goal cannot be reached within
+     *         the maximum cost
+     */
+    public float getCost(int x, int y, int z) {
+        update();
+        return getCost(BlockKeyedNode.pack(x, y, z));
+    }
+
+    private float getCost(long key) {
+        float cost = costs.get(key);
+        return cost <= maxCost ? cost : Float.NaN;
+    }
+
+    public Vector getGoal() {
+        return new Vector(BlockKeyedNode.unpackX(goal), BlockKeyedNode.unpackY(goal), BlockKeyedNode.unpackZ(goal));
+    }
+
+    private long getNext(long key) {
+        long best = key;
+        float bestCost = getCost(key);
+        for (long neighbour : getAdjacency(key)) {
+            float cost = getCost(neighbour);
+            if (Float.isNaN(cost))
+                continue;
+            cost += distance(key, neighbour);
+            if (cost < bestCost) {
+                best = neighbour;
+                bestCost = cost;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the path from the given location towards the goal by following the lowest cost neighbours.
+     *
+     * @param from
+     *            The start location
+     * @param maxLength
+     *            The maximum number of blocks to return
+     * @return The blocks after the start, or <code>null</code> if the start cannot reach the goal
+     */
+    public List<Vector> getPath(Location from, int maxLength) {
+        update();
+        long key = locate(from);
+        if (key == NONE)
+            return null;
+        List<Vector> path = Lists.newArrayList();
+        while (key != goal && path.size() < maxLength) {
+            long next = getNext(key);
+            if (next == key)
+                break;
+            path.add(new Vector(BlockKeyedNode.unpackX(next), BlockKeyedNode.unpackY(next),
+                    BlockKeyedNode.unpackZ(next)));
+            key = next;
+        }
+        return path;
+    }
+
+    /**
+     * Returns the version of the costs, which changes whenever the goal moves or the costs are recomputed. Paths read
+     * from an older version may no longer lead to the goal.
+     */
+    public int getVersion() {
+        update();
+        return version;
+    }
+
+    /**
+     * Marks the block at the given position as changed. Costs are recomputed the next time they are read.
+     */
+    public void invalidate(int x, int y, int z) {
+        source.invalidate(x, y, z);
+        // examiners read the block below and above a node, and nodes generate neighbours one block away
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dy = -2; dy <= 2; dy++) {
+                for (int dz = -1; dz <= 1; dz++) {
+                    dirty |= adjacency.remove(BlockKeyedNode.pack(x + dx, y + dy, z + dz)) != null;
+                }
+            }
+        }
+    }
+
+    private long locate(Location location) {
+        int x = location.getBlockX(), y = location.getBlockY(), z = location.getBlockZ();
+        // entities can be slightly above the block they are walking on, for example when jumping
+        for (int dy = 0; dy >= -1; dy--) {
+            long key = BlockKeyedNode.pack(x, y + dy, z);
+            if (!Float.isNaN(getCost(key)))
+                return key;
+        }
+        return NONE;
+    }
+
+    private void propagate(PriorityQueue<Entry> queue) {
+        while (!queue.isEmpty()) {
+            Entry entry = queue.poll();
+            if (entry.cost > costs.get(entry.key))
+                continue;
+            for (long neighbour : getAdjacency(entry.key)) {
+                float cost = entry.cost + distance(entry.key, neighbour);
+                if (cost > maxCost)
+                    continue;
+                float existing = costs.get(neighbour);
+                if (!Float.isNaN(existing) && existing <= cost)
+                    continue;
+                costs.put(neighbour, cost);
+                queue.add(new Entry(neighbour, cost));
+            }
+        }
+    }
+
+    private void rebuild() {
+        costs.clear();
+        dirty = false;
+        version++;
+        if (root.createReverseStart(getGoal()) != null) {
+            PriorityQueue<Entry> queue = new PriorityQueue<Entry>();
+            costs.put(goal, 0);
+            queue.add(new Entry(goal, 0));
+            propagate(queue);
+        }
+        trimAdjacency();
+    }
+
+    /**
+     * Moves the goal. If the new goal was already reachable, only the costs that decrease are updated: every block's
+     * cost through the old goal is still a valid upper bound, so no block needs to be searched again unless it is
+     * closer to the new goal.
+     */
+    public void setGoal(Location location) {
+        Vector vector = new VectorGoal(location, 0).goal;
+        long key = BlockKeyedNode.pack(vector.getBlockX(), vector.getBlockY(), vector.getBlockZ());
+        if (key == goal)
+            return;
+        update();
+        float offset = getCost(key);
+        goal = key;
+        if (Float.isNaN(offset)) {
+            rebuild();
+            return;
+        }
+        version++;
+        costs.addToAll(offset, maxCost);
+        costs.put(goal, 0);
+        PriorityQueue<Entry> queue = new PriorityQueue<Entry>();
+        queue.add(new Entry(goal, 0));
+        propagate(queue);
+        trimAdjacency();
+    }
+
+    /**
+     * @return The number of blocks with a cost
+     */
+    public int size() {
+        return costs.size();
+    }
+
+    /**
+     * Forgets the neighbours of blocks that no longer have a cost, so that the cache does not grow as the goal moves.
+     */
+    private void trimAdjacency() {
+        adjacency.keySet().removeIf(key -> Float.isNaN(costs.get(key)));
+    }
+
+    private void update() {
+        if (dirty) {
+            rebuild();
+        }
+    }
+
+    private static class Entry implements Comparable<Entry> {
+        private final float cost;
+        private final long key;
+
+        private Entry(long key, float cost) {
+            this.key = key;
+            this.cost = cost;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            return Float.compare(cost, other.cost);
+        }
+    }
+
+    private static final long NONE = Long.MIN_VALUE;
+}
@@ -2,21 +2,15 @@ package net.citizensnpcs.api.astar.pathfinder;
 
 import java.util.List;
 
-import org.bukkit.Material;
-import org.bukkit.block.Block;
 import org.bukkit.util.Vector;
 
 import com.google.common.collect.Lists;
 
-import net.citizensnpcs.api.util.SpigotUtil;
-
 public class FlyingBlockExaminer implements NeighbourGeneratorBlockExaminer {
     @Override
     public float getCost(BlockSource source, PathPoint point) {
-        Vector pos = point.getVector();
-        Material above = source.getMaterialAt(pos.clone().add(UP));
-        Material in = source.getMaterialAt(pos);
-        if (above == WEB || in == WEB) {
+        int x = point.getBlockX(), y = point.getBlockY(), z = point.getBlockZ();
+        if (((source.getBlockFlags(x, y + 1, z) | source.getBlockFlags(x, y, z)) & BlockFlags.WEB) != 0) {
             return 0.5F;
         }
         return 0F;
@@ -30,11 +24,12 @@ public class FlyingBlockExaminer implements NeighbourGeneratorBlockExaminer {
                 for (int z = -1; z <= 1; z++) {
                     if (x == 0 && y == 0 && z == 0)
                         continue;
-                    Vector mod = point.getVector().clone().add(new Vector(x, y, z));
-                    if (mod.getY() < 0 || mod.getY() > 255 || mod.equals(point.getVector())) {
+                    int modY = point.getBlockY() + y;
+                    if (modY < 0 || modY > 255) {
                         continue;
                     }
-                    neighbours.add(point.createAtOffset(mod));
+                    neighbours.add(
+                            point.createAtOffset(new Vector(point.getBlockX() + x, modY, point.getBlockZ() + z)));
                 }
             }
         }
@@ -43,15 +38,12 @@ public class FlyingBlockExaminer implements NeighbourGeneratorBlockExaminer {
 
     @Override
     public PassableState isPassable(BlockSource source, PathPoint point) {
-        Vector pos = point.getVector();
-        Block above = source.getBlockAt(pos.clone().add(UP));
-        Block in = source.getBlockAt(pos);
-        if (MinecraftBlockExaminer.isLiquid(above.getType(), in.getType())) {
+        int x = point.getBlockX(), y = point.getBlockY(), z = point.getBlockZ();
+        int above = source.getBlockFlags(x, y + 1, z);
+        int in = source.getBlockFlags(x, y, z);
+        if (((above | in) & BlockFlags.LIQUID) != 0) {
             return PassableState.UNPASSABLE;
         }
-        return PassableState.fromBoolean(MinecraftBlockExaminer.canStandIn(above, in));
+        return PassableState.fromBoolean(BlockFlags.canStandIn(above) && BlockFlags.canStandIn(in));
     }
-
-    private static final Vector UP = new Vector(0, 1, 0);
-    private static Material WEB = SpigotUtil.isUsing1_13API() ? Material.COBWEB : Material.valueOf("WEB");
 }
\ No newline at end of file
@@ -0,0 +1,88 @@
+package net.citizensnpcs.api.astar.pathfinder;
+
+import org.bukkit.Location;
+
+import net.citizensnpcs.api.astar.IncrementalAStarPlanner;
+
+/**
+ * Keeps the search tree of a {@link VectorNode} path so that block changes and destination changes repair the path
+ * instead of searching again from scratch. Only the nodes next to a changed block are expanded again.
+ *
+ * Examiners must only read the blocks from one below to one above a node, as {@link MinecraftBlockExaminer} does, so
+ * that a changed block only affects the nodes next to it. Examiners that read further, or that generate neighbours
+ * depending on the direction of travel such as {@link JumpPointExaminer}, are not supported. Create a new pathfinder
+ * once the NPC leaves the path, as the search is rooted at the start location.
+ */
+public class IncrementalPathfinder {
+    private final IncrementalAStarPlanner<VectorNode, Path> planner;
+    private final float range;
+    private final BlockFlagCache source;
+
+    /**
+     * @param start
+     *            The start location
+     * @param dest
+     *            The destination
+     * @param range
+     *            The distance squared from the destination at which the path is finished
+     * @param source
+     *            The block source
+     * @param examiners
+     *            The examiners to use
+     */
+    public IncrementalPathfinder(Location start, Location dest, float range, BlockSource source,
+            BlockExaminer... examiners) {
+        this.range = range;
+        this.source = source instanceof BlockFlagCache ? (BlockFlagCache) source
+                : new BlockFlagCache(source, start.toVector());
+        VectorGoal goal = new VectorGoal(dest, range);
+        this.planner = new IncrementalAStarPlanner<VectorNode, Path>(goal,
+                new VectorNode(goal, start, this.source, examiners));
+    }
+
+    /**
+     * Notifies the pathfinder that the block at the given position has changed. The path is repaired on the next call
+     * to {@link #getPath(int)}.
+     */
+    public void blockChanged(int x, int y, int z) {
+        source.invalidate(x, y, z);
+        // examiners read the block below and above a node, and nodes generate neighbours one block away. The cached
+        // block cost feeds the heuristic of nodes that are kept in the tree
+        planner.invalidate(
+                node -> Math.abs(node.x - x) <= 1 && Math.abs(node.z - z) <= 1 && Math.abs(node.y - y) <= 2,
+                VectorNode::resetBlockCost);
+    }
+
+    /**
+     * Searches or repairs the path for up to the given number of node expansions.
+     *
+     * @param maxIterations
+     *            The maximum number of expansions, or -1 for no limit
+     * @return The path, or <code>null</code> if there is no path or the iteration limit was reached first
+     * @see #isConsistent()
+     */
+    public Path getPath(int maxIterations) {
+        return planner.run(maxIterations);
+    }
+
+    /**
+     * @return The number of nodes in the search tree
+     */
+    public int getNodeCount() {
+        return planner.getNodeCount();
+    }
+
+    /**
+     * Returns whether the last call to {@link #getPath(int)} finished, in which case its result is the current path.
+     */
+    public boolean isConsistent() {
+        return planner.isConsistent();
+    }
+
+    /**
+     * Moves the destination while keeping the search tree, for example when following a moving target.
+     */
+    public void setDestination(Location dest) {
+        planner.setGoal(new VectorGoal(dest, range));
+    }
+}
@@ -0,0 +1,194 @@
+package net.citizensnpcs.api.astar.pathfinder;
+
+import java.util.List;
+
+import org.bukkit.util.Vector;
+
+import com.google.common.collect.Lists;
+
+import net.citizensnpcs.api.util.SpigotUtil;
+
+/**
+ * A {@link NeighbourGeneratorBlockExaminer} implementing Jump Point Search over flat terrain. Where a node and its
+ * eight horizontal neighbours are plain walkable blocks at the same height, symmetric neighbours are pruned and the
+ * search jumps along straight and diagonal runs until it finds a block where the terrain changes. The skipped blocks
+ * are recorded with {@link PathPoint#setPathVectors(List)} so the resulting {@link Path} is unchanged.
+ *
+ * Near height changes, doors, liquids, ladders or costly blocks it returns <code>null</code> so that {@link VectorNode}
+ * falls back to full expansion. Should be used together with {@link MinecraftBlockExaminer}.
+ */
+public class JumpPointExaminer implements NeighbourGeneratorBlockExaminer {
+    private int maxJumpDistance = 32;
+
+    @Override
+    public float getCost(BlockSource source, PathPoint point) {
+        return 0;
+    }
+
+    public int getMaxJumpDistance() {
+        return maxJumpDistance;
+    }
+
+    @Override
+    public List<PathPoint> getNeighbours(BlockSource source, PathPoint point) {
+        PathPoint parent = point.getParentPoint();
+        int y = point.getBlockY();
+        if (!SpigotUtil.checkYSafe(y - 1, source.getWorld()) || !SpigotUtil.checkYSafe(y + 1, source.getWorld()))
+            return null;
+        int x = point.getBlockX(), z = point.getBlockZ();
+        if (!isFlat(source, x, y, z) || isNearTerrainChange(source, x, y, z))
+            return null;
+        Vector goal = point.getGoal();
+        int goalX = goal == null ? Integer.MIN_VALUE : goal.getBlockX();
+        int goalZ = goal == null ? Integer.MIN_VALUE : goal.getBlockZ();
+        List<PathPoint> neighbours = Lists.newArrayList();
+        if (parent == null || parent.getBlockY() != y) {
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dz = -1; dz <= 1; dz++) {
+                    if (dx != 0 || dz != 0) {
+                        jump(source, point, x, y, z, dx, dz, goalX, goalZ, neighbours);
+                    }
+                }
+            }
+            return neighbours;
+        }
+        int dx = Integer.signum(x - parent.getBlockX());
+        int dz = Integer.signum(z - parent.getBlockZ());
+        if (dx != 0 && dz != 0) {
+            boolean walkX = isFlat(source, x + dx, y, z), walkZ = isFlat(source, x, y, z + dz);
+            if (walkZ) {
+                jump(source, point, x, y, z, 0, dz, goalX, goalZ, neighbours);
+            }
+            if (walkX) {
+                jump(source, point, x, y, z, dx, 0, goalX, goalZ, neighbours);
+            }
+            if (walkX && walkZ) {
+                jump(source, point, x, y, z, dx, dz, goalX, goalZ, neighbours);
+            }
+        } else if (dx != 0 || dz != 0) {
+            // straight moves may turn at the sides, where an obstacle behind could have hidden a shorter route
+            int sideX = dz, sideZ = dx;
+            boolean next = isFlat(source, x + dx, y, z + dz);
+            boolean left = isFlat(source, x + sideX, y, z + sideZ), right = isFlat(source, x - sideX, y, z - sideZ);
+            if (next) {
+                jump(source, point, x, y, z, dx, dz, goalX, goalZ, neighbours);
+                if (left) {
+                    jump(source, point, x, y, z, dx + sideX, dz + sideZ, goalX, goalZ, neighbours);
+                }
+                if (right) {
+                    jump(source, point, x, y, z, dx - sideX, dz - sideZ, goalX, goalZ, neighbours);
+                }
+            }
+            if (left) {
+                jump(source, point, x, y, z, sideX, sideZ, goalX, goalZ, neighbours);
+            }
+            if (right) {
+                jump(source, point, x, y, z, -sideX, -sideZ, goalX, goalZ, neighbours);
+            }
+        } else {
+            return null;
+        }
+        return neighbours;
+    }
+
+    @Override
+    public PassableState isPassable(BlockSource source, PathPoint point) {
+        return PassableState.IGNORE;
+    }
+
+    private void jump(BlockSource source, PathPoint point, int x, int y, int z, int dx, int dz, int goalX, int goalZ,
+            List<PathPoint> neighbours) {
+        int distance = dx != 0 && dz != 0 ? jumpDiagonal(source, x, y, z, dx, dz, goalX, goalZ)
+                : jumpStraight(source, x, y, z, dx, dz, goalX, goalZ);
+        if (distance <= 0)
+            return;
+        List<Vector> vectors = Lists.newArrayListWithCapacity(distance);
+        for (int i = 1; i <= distance; i++) {
+            vectors.add(new Vector(x + dx * i, y, z + dz * i));
+        }
+        PathPoint jumpPoint = point.createAtOffset(vectors.get(distance - 1));
+        if (distance > 1) {
+            jumpPoint.setPathVectors(vectors);
+        }
+        neighbours.add(jumpPoint);
+    }
+
+    /**
+     * Returns the number of diagonal steps to the next jump point, or 0 if there is none.
+     */
+    private int jumpDiagonal(BlockSource source, int x, int y, int z, int dx, int dz, int goalX, int goalZ) {
+        for (int distance = 1;; distance++) {
+            if (!isFlat(source, x + dx, y, z) || !isFlat(source, x, y, z + dz))
+                return 0;
+            x += dx;
+            z += dz;
+            if (!isFlat(source, x, y, z))
+                return 0;
+            if (x == goalX || z == goalZ || distance >= maxJumpDistance || isNearTerrainChange(source, x, y, z))
+                return distance;
+            if (jumpStraight(source, x, y, z, dx, 0, goalX, goalZ) > 0
+                    || jumpStraight(source, x, y, z, 0, dz, goalX, goalZ) > 0)
+                return distance;
+        }
+    }
+
+    /**
+     * Returns the number of straight steps to the next jump point, or 0 if there is none.
+     */
+    private int jumpStraight(BlockSource source, int x, int y, int z, int dx, int dz, int goalX, int goalZ) {
+        int sideX = dz, sideZ = dx;
+        for (int distance = 1;; distance++) {
+            x += dx;
+            z += dz;
+            if (!isFlat(source, x, y, z))
+                return 0;
+            if (x == goalX || z == goalZ || distance >= maxJumpDistance || isNearTerrainChange(source, x, y, z))
+                return distance;
+            // forced neighbours: a side opens up that was blocked one step back
+            if ((isFlat(source, x + sideX, y, z + sideZ) && !isFlat(source, x + sideX - dx, y, z + sideZ - dz))
+                    || (isFlat(source, x - sideX, y, z - sideZ) && !isFlat(source, x - sideX - dx, y, z - sideZ - dz)))
+                return distance;
+        }
+    }
+
+    /**
+     * Sets the maximum number of blocks to jump before adding an intermediate node, bounding the work done per
+     * expansion.
+     */
+    public void setMaxJumpDistance(int maxJumpDistance) {
+        this.maxJumpDistance = Math.max(1, maxJumpDistance);
+    }
+
+    private static byte classify(BlockSource source, int x, int y, int z) {
+        int in = source.getBlockFlags(x, y, z);
+        int above = source.getBlockFlags(x, y + 1, z);
+        if (isBlocking(in) && isBlocking(above))
+            return BLOCKED;
+        if ((in & above & BlockFlags.AIR) == 0)
+            return OTHER;
+        return BlockFlags.isPlainFloor(source.getBlockFlags(x, y - 1, z)) ? FLAT : OTHER;
+    }
+
+    private static boolean isBlocking(int flags) {
+        return (flags & BlockFlags.SOLID) != 0
+                && (flags & (BlockFlags.DOOR | BlockFlags.GATE | BlockFlags.TRAPDOOR)) == 0;
+    }
+
+    private static boolean isFlat(BlockSource source, int x, int y, int z) {
+        return classify(source, x, y, z) == FLAT;
+    }
+
+    private static boolean isNearTerrainChange(BlockSource source, int x, int y, int z) {
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dz = -1; dz <= 1; dz++) {
+                if ((dx != 0 || dz != 0) && classify(source, x + dx, y, z + dz) == OTHER)
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private static final byte BLOCKED = 1;
+    private static final byte FLAT = 2;
+    private static final byte OTHER = 3;
+}
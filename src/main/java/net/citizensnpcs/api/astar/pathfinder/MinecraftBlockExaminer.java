@@ -13,7 +13,6 @@ import org.bukkit.block.data.BlockData;
 import org.bukkit.block.data.Waterlogged;
 import org.bukkit.block.data.type.Slab;
 import org.bukkit.block.data.type.TrapDoor;
-import org.bukkit.util.Vector;
 
 import com.google.common.base.Function;
 import com.google.common.collect.Lists;
@@ -27,16 +26,16 @@ import net.citizensnpcs.api.util.SpigotUtil;
 public class MinecraftBlockExaminer implements BlockExaminer {
     @Override
     public float getCost(BlockSource source, PathPoint point) {
-        Vector pos = point.getVector();
-        Material above = source.getMaterialAt(pos.getBlockX(), pos.getBlockY() + 1, pos.getBlockZ());
-        Material below = source.getMaterialAt(pos.getBlockX(), pos.getBlockY() - 1, pos.getBlockZ());
-        Material in = source.getMaterialAt(pos);
-        if (above == WEB || in == WEB)
+        int x = point.getBlockX(), y = point.getBlockY(), z = point.getBlockZ();
+        int above = source.getBlockFlags(x, y + 1, z);
+        int below = source.getBlockFlags(x, y - 1, z);
+        int in = source.getBlockFlags(x, y, z);
+        if (((above | in) & BlockFlags.WEB) != 0)
             return 1F;
-        if (below == Material.SOUL_SAND || below == Material.ICE)
+        if ((below & BlockFlags.SLOW) != 0)
             return 1F;
-        if (isLiquidOrInLiquid(source.getWorld().getBlockAt(pos.getBlockX(), pos.getBlockY(), pos.getBlockZ()))) {
-            if (in == Material.LAVA) {
+        if (BlockFlags.isLiquidOrInLiquid(in)) {
+            if ((in & BlockFlags.LAVA) != 0) {
                 return 2F;
             }
             return 1F;
@@ -45,34 +44,43 @@ public class MinecraftBlockExaminer implements BlockExaminer {
     }
 
     private boolean isClimbable(Material mat) {
-        return CLIMBABLE.contains(mat);
+        return (MATERIAL_FLAGS[mat.ordinal()] & BlockFlags.CLIMBABLE) != 0;
+    }
+
+    @Override
+    public boolean isDirectional(BlockSource source, PathPoint point) {
+        int x = point.getBlockX(), y = point.getBlockY(), z = point.getBlockZ();
+        int below = source.getBlockFlags(x, y - 1, z);
+        int in = source.getBlockFlags(x, y, z);
+        // fences can be dropped from but not jumped onto, ladders need climbing callbacks that depend on the direction
+        return (below & (BlockFlags.NOT_JUMPABLE | BlockFlags.CLIMBABLE)) != 0 || (in & BlockFlags.CLIMBABLE) != 0;
     }
 
     @Override
     public PassableState isPassable(BlockSource source, PathPoint point) {
-        Vector pos = point.getVector();
-        if (!SpigotUtil.checkYSafe(pos.getBlockY(), source.getWorld())) {
+        int x = point.getBlockX(), y = point.getBlockY(), z = point.getBlockZ();
+        if (!SpigotUtil.checkYSafe(y, source.getWorld())) {
             return PassableState.UNPASSABLE;
         }
-        Block above = source.getBlockAt(pos.getBlockX(), pos.getBlockY() + 1, pos.getBlockZ());
-        Material below = source.getMaterialAt(pos.getBlockX(), pos.getBlockY() - 1, pos.getBlockZ());
-        Block in = source.getBlockAt(pos);
-        boolean canStand = canStandOn(below) || isLiquid(in.getType(), below) || isClimbable(below);
+        int above = source.getBlockFlags(x, y + 1, z);
+        int below = source.getBlockFlags(x, y - 1, z);
+        int in = source.getBlockFlags(x, y, z);
+        boolean canStand = BlockFlags.canStandOn(below) || ((in | below) & BlockFlags.LIQUID) != 0
+                || (below & BlockFlags.CLIMBABLE) != 0;
         if (!canStand) {
             return PassableState.UNPASSABLE;
         }
-        if (isClimbable(in.getType()) && (isClimbable(above.getType()) || isClimbable(below))) {
+        if ((in & BlockFlags.CLIMBABLE) != 0 && ((above | below) & BlockFlags.CLIMBABLE) != 0) {
             point.addCallback(new LadderClimber());
-        } else if (!canStandIn(above) || !canStandIn(in)) {
+        } else if (!BlockFlags.canStandIn(above) || !BlockFlags.canStandIn(in)) {
             return PassableState.UNPASSABLE;
         }
-        if (!canJumpOn(below)) {
-            if (point.getParentPoint() == null) {
+        if ((below & BlockFlags.NOT_JUMPABLE) != 0) {
+            PathPoint parent = point.getParentPoint();
+            if (parent == null) {
                 return PassableState.UNPASSABLE;
             }
-            Vector parentPos = point.getParentPoint().getVector();
-            if ((parentPos.getX() != pos.getX() || parentPos.getZ() != pos.getZ())
-                    && pos.clone().subtract(point.getParentPoint().getVector()).getY() == 1) {
+            if ((parent.getBlockX() != x || parent.getBlockZ() != z) && y - parent.getBlockY() == 1) {
                 return PassableState.UNPASSABLE;
             }
         }
@@ -135,49 +143,113 @@ public class MinecraftBlockExaminer implements BlockExaminer {
         }
     }
 
-    private static boolean canJumpOn(Material mat) {
-        return !NOT_JUMPABLE.contains(mat);
-    }
-
     public static boolean canStandIn(Block... blocks) {
-        boolean passable = true;
         for (Block block : blocks) {
-            passable &= !block.getType().isSolid();
-            if (SpigotUtil.isUsing1_13API()) {
-                if (block.getBlockData() instanceof Slab) {
-                    Slab slab = (Slab) block.getBlockData();
-                    if (slab.getType() != Slab.Type.BOTTOM) {
-                        passable = false;
-                    }
-                } else if (block.getBlockData() instanceof TrapDoor) {
-                    TrapDoor trapdoor = (TrapDoor) block.getBlockData();
-                    passable &= trapdoor.isOpen();
-                }
-            }
+            if (!BlockFlags.canStandIn(getBlockFlags(block)))
+                return false;
         }
-        return passable;
+        return true;
+    }
+
+    /**
+     * Returns whether the block at the given position can be stood in, reading only from the {@link BlockSource}.
+     *
+     * @see #canStandIn(Block...)
+     */
+    public static boolean canStandIn(BlockSource source, int x, int y, int z) {
+        return BlockFlags.canStandIn(source.getBlockFlags(x, y, z));
     }
 
     public static boolean canStandIn(Material... mat) {
-        boolean passable = true;
         for (Material m : mat) {
-            passable &= !m.isSolid();
+            if ((MATERIAL_FLAGS[m.ordinal()] & BlockFlags.SOLID) != 0)
+                return false;
         }
-        return passable;
+        return true;
     }
 
     public static boolean canStandOn(Block block) {
         Block up = block.getRelative(BlockFace.UP);
-        boolean standable = canStandOn(block.getType());
-        if (SpigotUtil.isUsing1_13API() && block.getBlockData() instanceof TrapDoor) {
-            TrapDoor trapdoor = (TrapDoor) block.getBlockData();
-            standable = !trapdoor.isOpen();
-        }
+        int flags = getBlockFlags(block);
+        boolean standable = (flags & BlockFlags.TRAPDOOR) != 0 ? (flags & BlockFlags.CLOSED_TRAPDOOR) != 0
+                : BlockFlags.canStandOn(flags);
         return standable && canStandIn(up, up.getRelative(BlockFace.UP));
     }
 
     public static boolean canStandOn(Material mat) {
-        return !UNWALKABLE.contains(mat) && mat.isSolid();
+        return (MATERIAL_FLAGS[mat.ordinal()] & BlockFlags.STANDABLE) != 0;
+    }
+
+    private static int classify(Material material) {
+        int flags = 0;
+        if (AIR.contains(material)) {
+            flags |= BlockFlags.AIR;
+        }
+        if (material.isSolid()) {
+            flags |= BlockFlags.SOLID;
+            if (!UNWALKABLE.contains(material)) {
+                flags |= BlockFlags.STANDABLE;
+            }
+        }
+        if (LIQUIDS.contains(material)) {
+            flags |= BlockFlags.LIQUID;
+            if (material.name().contains("LAVA")) {
+                flags |= BlockFlags.LAVA;
+            }
+        }
+        if (CLIMBABLE.contains(material)) {
+            flags |= BlockFlags.CLIMBABLE;
+        }
+        if (NOT_JUMPABLE.contains(material)) {
+            flags |= BlockFlags.NOT_JUMPABLE;
+        }
+        if (material == WEB) {
+            flags |= BlockFlags.WEB;
+        }
+        if (material == Material.SOUL_SAND || material == Material.ICE) {
+            flags |= BlockFlags.SLOW;
+        }
+        String name = material.name();
+        if (name.contains("DOOR") && !name.contains("TRAPDOOR")) {
+            flags |= BlockFlags.DOOR;
+        }
+        if (name.contains("GATE") && !name.contains("GATEWAY")) {
+            flags |= BlockFlags.GATE;
+        }
+        return flags;
+    }
+
+    private static byte classifyData(Material material) {
+        if (!material.isBlock() || material.name().startsWith("LEGACY_"))
+            return 0;
+        byte decoders = 0;
+        try {
+            BlockData data = material.createBlockData();
+            if (data instanceof Slab) {
+                decoders |= SLAB_DATA;
+            } else if (data instanceof TrapDoor) {
+                decoders |= TRAPDOOR_DATA;
+            }
+            if (data instanceof Waterlogged) {
+                decoders |= WATERLOGGED_DATA;
+            }
+        } catch (Throwable t) {
+            // no server to create block data or no waterlogging in this version
+        }
+        return decoders;
+    }
+
+    private static int decodeBlockData(int flags, byte decoders, BlockData data) {
+        if ((decoders & SLAB_DATA) != 0 && ((Slab) data).getType() != Slab.Type.BOTTOM) {
+            flags |= BlockFlags.TOP_SLAB;
+        }
+        if ((decoders & TRAPDOOR_DATA) != 0 && !((TrapDoor) data).isOpen()) {
+            flags |= BlockFlags.CLOSED_TRAPDOOR;
+        }
+        if ((decoders & WATERLOGGED_DATA) != 0 && ((Waterlogged) data).isWaterlogged()) {
+            flags |= BlockFlags.WATERLOGGED;
+        }
+        return flags;
     }
 
     public static Location findRandomValidLocation(Location base, int xrange, int yrange) {
@@ -262,43 +334,82 @@ public class MinecraftBlockExaminer implements BlockExaminer {
         return location;
     }
 
+    /**
+     * Classifies a block into {@link BlockFlags}, only reading its block data if the material needs it.
+     */
+    public static int getBlockFlags(Block block) {
+        int ordinal = block.getType().ordinal();
+        byte decoders = DATA_DECODERS[ordinal];
+        return decoders == 0 ? MATERIAL_FLAGS[ordinal]
+                : decodeBlockData(MATERIAL_FLAGS[ordinal], decoders, block.getBlockData());
+    }
+
+    /**
+     * Classifies a block into {@link BlockFlags}.
+     *
+     * @param material
+     *            The block material
+     * @param data
+     *            The block data, or null if not available
+     * @return The block flags
+     */
+    public static int getBlockFlags(Material material, BlockData data) {
+        int ordinal = material.ordinal();
+        byte decoders = DATA_DECODERS[ordinal];
+        if (decoders == 0 || data == null)
+            return MATERIAL_FLAGS[ordinal];
+        return decodeBlockData(MATERIAL_FLAGS[ordinal], decoders, data);
+    }
+
+    /**
+     * Returns whether {@link #getBlockFlags(Material, BlockData)} reads the block data of the material.
+     */
+    static boolean hasDataFlags(Material material) {
+        return DATA_DECODERS[material.ordinal()] != 0;
+    }
+
     public static boolean isDoor(Material in) {
-        return in.name().contains("DOOR") && !in.name().contains("TRAPDOOR");
+        return (MATERIAL_FLAGS[in.ordinal()] & BlockFlags.DOOR) != 0;
     }
 
     public static boolean isGate(Material in) {
-        return in.name().contains("GATE") && !in.name().contains("GATEWAY");
+        return (MATERIAL_FLAGS[in.ordinal()] & BlockFlags.GATE) != 0;
     }
 
     public static boolean isLiquid(Material... materials) {
         for (Material mat : materials) {
-            if (LIQUIDS.contains(mat)) {
+            if ((MATERIAL_FLAGS[mat.ordinal()] & BlockFlags.LIQUID) != 0) {
                 return true;
             }
         }
         return false;
     }
 
+    /**
+     * Returns whether the block at the given position is a liquid or waterlogged, reading only from the
+     * {@link BlockSource}.
+     *
+     * @see #isLiquidOrInLiquid(Block)
+     */
+    public static boolean isLiquidOrInLiquid(BlockSource source, int x, int y, int z) {
+        return BlockFlags.isLiquidOrInLiquid(source.getBlockFlags(x, y, z));
+    }
+
     public static boolean isLiquidOrInLiquid(Block block) {
-        if (isLiquid(block.getType()))
-            return true;
-        if (!SUPPORT_WATERLOGGED)
-            return false;
-        try {
-            BlockData data = block.getBlockData();
-            return data instanceof Waterlogged && ((Waterlogged) data).isWaterlogged();
-        } catch (Throwable t) {
-            SUPPORT_WATERLOGGED = false;
-            return false;
-        }
+        return BlockFlags.isLiquidOrInLiquid(getBlockFlags(block));
     }
 
+    private static final Set<Material> AIR = EnumSet.of(Material.AIR);
     private static final Set<Material> CLIMBABLE = EnumSet.of(Material.LADDER, Material.VINE);
+    private static final byte[] DATA_DECODERS = new byte[Material.values().length];
     private static final Set<Material> LIQUIDS = EnumSet.of(Material.WATER, Material.LAVA);
+    private static final int[] MATERIAL_FLAGS = new int[Material.values().length];
     private static final Set<Material> NOT_JUMPABLE = EnumSet.of(Material.SPRUCE_FENCE, Material.BIRCH_FENCE,
             Material.JUNGLE_FENCE, Material.ACACIA_FENCE, Material.DARK_OAK_FENCE);
-    private static boolean SUPPORT_WATERLOGGED = true;
+    private static final byte SLAB_DATA = 1;
+    private static final byte TRAPDOOR_DATA = 2;
     private static final Set<Material> UNWALKABLE = EnumSet.of(Material.AIR, Material.CACTUS);
+    private static final byte WATERLOGGED_DATA = 4;
     private static Material WEB = SpigotUtil.isUsing1_13API() ? Material.COBWEB : Material.valueOf("WEB");
 
     static {
@@ -309,6 +420,8 @@ public class MinecraftBlockExaminer implements BlockExaminer {
             NOT_JUMPABLE.addAll(Lists.newArrayList(Material.valueOf("FENCE"), Material.valueOf("IRON_FENCE"),
                     Material.valueOf("NETHER_FENCE"), Material.valueOf("COBBLE_WALL")));
         } else {
+            AIR.add(Material.CAVE_AIR);
+            AIR.add(Material.VOID_AIR);
             try {
                 UNWALKABLE.add(Material.valueOf("CAMPFIRE"));
             } catch (IllegalArgumentException e) {
@@ -325,5 +438,17 @@ public class MinecraftBlockExaminer implements BlockExaminer {
             } catch (IllegalArgumentException e) {
             }
         }
+        boolean readData = SpigotUtil.isUsing1_13API();
+        for (Material material : Material.values()) {
+            int flags = classify(material);
+            if (readData) {
+                byte decoders = classifyData(material);
+                if ((decoders & TRAPDOOR_DATA) != 0) {
+                    flags |= BlockFlags.TRAPDOOR;
+                }
+                DATA_DECODERS[material.ordinal()] = decoders;
+            }
+            MATERIAL_FLAGS[material.ordinal()] = flags;
+        }
     }
 }
@@ -39,14 +39,63 @@ public class Path implements Plan {
         this.path = cull(unfiltered);
     }
 
+    private boolean canSkip(VectorNode examiner, PathEntry from, PathEntry entry, PathEntry to) {
+        if (from.hasCallbacks() || entry.hasCallbacks())
+            return false;
+        int y = from.vector.getBlockY();
+        if (entry.vector.getBlockY() != y || to.vector.getBlockY() != y)
+            return false;
+        int x = from.vector.getBlockX(), z = from.vector.getBlockZ();
+        if (Math.abs(to.vector.getBlockX() - x) > MAX_SMOOTHING_DISTANCE
+                || Math.abs(to.vector.getBlockZ() - z) > MAX_SMOOTHING_DISTANCE)
+            return false;
+        return isLineClear(examiner, x, y, z, to.vector.getBlockX(), to.vector.getBlockZ());
+    }
+
+    /**
+     * Returns whether every block crossed by the line between the centres of two blocks at the same height is clear,
+     * not counting the block the line starts from.
+     */
+    static boolean isLineClear(VectorNode examiner, int x, int y, int z, int toX, int toZ) {
+        int dx = toX - x, dz = toZ - z;
+        int nx = Math.abs(dx), nz = Math.abs(dz), sx = Integer.signum(dx), sz = Integer.signum(dz);
+        // walk every block crossed by the line between the block centres, including both blocks at a corner
+        for (int ix = 0, iz = 0; ix < nx || iz < nz;) {
+            long decision = (1 + 2L * ix) * nz - (1 + 2L * iz) * nx;
+            if (decision == 0) {
+                if (!examiner.isClear(x + sx, y, z) || !examiner.isClear(x, y, z + sz))
+                    return false;
+                x += sx;
+                z += sz;
+                ix++;
+                iz++;
+            } else if (decision < 0) {
+                x += sx;
+                ix++;
+            } else {
+                z += sz;
+                iz++;
+            }
+            if (!examiner.isClear(x, y, z))
+                return false;
+        }
+        return true;
+    }
+
     private PathEntry[] cull(Iterable<VectorNode> unfiltered) {
-        // possibly expose cullability in an API
         List<PathEntry> path = Lists.newArrayList();
+        VectorNode examiner = null;
         for (VectorNode node : unfiltered) {
+            if (examiner == null) {
+                examiner = node;
+            }
             for (Vector vector : node.getPathVectors()) {
-                path.add(new PathEntry(vector, node.callbacks));
+                path.add(new PathEntry(vector.clone(), node.callbacks));
             }
         }
+        if (examiner != null) {
+            path = smooth(examiner, path);
+        }
         return path.toArray(new PathEntry[path.size()]);
     }
 
@@ -97,6 +146,28 @@ public class Path implements Plan {
         path[index].run(npc);
     }
 
+    /**
+     * Removes waypoints that can be skipped by walking in a straight line from the previous waypoint to the next one,
+     * so that the path turns only where it has to. Waypoints with callbacks, such as doors and ladders, and changes in
+     * height are always kept.
+     */
+    private List<PathEntry> smooth(VectorNode examiner, List<PathEntry> entries) {
+        if (entries.size() <= 2)
+            return entries;
+        List<PathEntry> smoothed = Lists.newArrayListWithCapacity(entries.size());
+        PathEntry anchor = entries.get(0);
+        smoothed.add(anchor);
+        for (int i = 1; i < entries.size() - 1; i++) {
+            PathEntry entry = entries.get(i);
+            if (!canSkip(examiner, anchor, entry, entries.get(i + 1))) {
+                smoothed.add(entry);
+                anchor = entry;
+            }
+        }
+        smoothed.add(entries.get(entries.size() - 1));
+        return smoothed;
+    }
+
     @Override
     public String toString() {
         return Arrays.toString(path);
@@ -120,6 +191,10 @@ public class Path implements Plan {
             this.callbacks = callbacks;
         }
 
+        private boolean hasCallbacks() {
+            return callbacks != null && !callbacks.isEmpty();
+        }
+
         public void onComplete(NPC npc) {
             if (callbacks == null)
                 return;
@@ -155,6 +230,7 @@ public class Path implements Plan {
         }
     }
 
+    private static final int MAX_SMOOTHING_DISTANCE = 16;
     private static Material YELLOW_FLOWER = SpigotUtil.isUsing1_13API() ? Material.SUNFLOWER
             : Material.valueOf("YELLOW_FLOWER");
 }
\ No newline at end of file
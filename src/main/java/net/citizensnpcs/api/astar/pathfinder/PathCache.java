@@ -0,0 +1,368 @@
+package net.citizensnpcs.api.astar.pathfinder;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockBurnEvent;
+import org.bukkit.event.block.BlockExplodeEvent;
+import org.bukkit.event.block.BlockFadeEvent;
+import org.bukkit.event.block.BlockFormEvent;
+import org.bukkit.event.block.BlockFromToEvent;
+import org.bukkit.event.block.BlockPistonExtendEvent;
+import org.bukkit.event.block.BlockPistonRetractEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.entity.EntityChangeBlockEvent;
+import org.bukkit.event.entity.EntityExplodeEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+import org.bukkit.util.Vector;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import net.citizensnpcs.api.ai.NavigatorParameters;
+import net.citizensnpcs.api.astar.AStarMachine;
+import net.citizensnpcs.api.astar.BlockKeyedNode;
+
+/**
+ * Caches {@link Path}s by world, start block, destination block, range and the identity of the
+ * {@link BlockExaminer}s used to find them, so that repeated requests for the same route skip the search. Entries are
+ * evicted least recently used first once the cache is full, and are invalidated when a block changes in any chunk the
+ * route passes through, including the chunks crossed between the waypoints of a smoothed {@link Path}. Register the
+ * cache using {@link net.citizensnpcs.api.CitizensAPI#registerEvents(Listener)} to receive block changes.
+ *
+ * Cached routes are retraced through the examiners on every hit so that each {@link Path} gets fresh callbacks. A
+ * route that is no longer passable is evicted and searched for again. Not thread-safe: use from the main thread.
+ */
+public class PathCache implements Listener {
+    private final Map<UUID, Map<Long, Set<Key>>> chunkIndex = Maps.newHashMap();
+    private final LinkedHashMap<Key, CachedRoute> entries = new LinkedHashMap<Key, CachedRoute>(16, 0.75F, true);
+    private long hits;
+    private int maxSize;
+    private long misses;
+
+    /**
+     * @param maxSize
+     *            The maximum number of routes to keep
+     */
+    public PathCache(int maxSize) {
+        setMaxSize(maxSize);
+    }
+
+    private void add(Key key, CachedRoute route) {
+        entries.put(key, route);
+        Map<Long, Set<Key>> chunks = chunkIndex.get(key.world);
+        if (chunks == null) {
+            chunkIndex.put(key.world, chunks = Maps.newHashMap());
+        }
+        for (long chunk : route.chunks) {
+            Set<Key> keys = chunks.get(chunk);
+            if (keys == null) {
+                chunks.put(chunk, keys = Sets.newHashSet());
+            }
+            keys.add(key);
+        }
+        trim();
+    }
+
+    public void clear() {
+        entries.clear();
+        chunkIndex.clear();
+    }
+
+    /**
+     * Finds a path using the {@link NavigatorParameters#pathDistanceMargin()} and
+     * {@link NavigatorParameters#examiners()} of the given parameters.
+     *
+     * @see #findPath(AStarMachine, Location, Location, float, int, BlockSource, BlockExaminer...)
+     */
+    public Path findPath(AStarMachine<VectorNode, Path> machine, Location start, Location dest, int maxIterations,
+            BlockSource source, NavigatorParameters params) {
+        return findPath(machine, start, dest, (float) params.pathDistanceMargin(), maxIterations, source,
+                params.examiners());
+    }
+
+    /**
+     * Returns a cached path from the start to the destination if one exists and is still passable, otherwise runs a
+     * search and caches the result.
+     *
+     * @param machine
+     *            The machine to search with on a miss
+     * @param start
+     *            The start location
+     * @param dest
+     *            The destination
+     * @param range
+     *            The distance squared from the destination at which the search is finished
+     * @param maxIterations
+     *            The maximum number of iterations, or -1 for no limit
+     * @param source
+     *            The block source
+     * @param examiners
+     *            The examiners to use. Only instances that are the same as those of a cached route will match it
+     * @return The path, or <code>null</code> if none was found
+     */
+    public Path findPath(AStarMachine<VectorNode, Path> machine, Location start, Location dest, float range,
+            int maxIterations, BlockSource source, BlockExaminer... examiners) {
+        Preconditions.checkArgument(start.getWorld() == dest.getWorld(), "start and destination in different worlds");
+        Key key = new Key(start, dest, range, examiners);
+        VectorGoal goal = new VectorGoal(dest, range);
+        VectorNode root = new VectorNode(goal, start, source, examiners);
+        CachedRoute route = entries.get(key);
+        if (route != null) {
+            Path path = root.retrace(route.vectors);
+            if (path != null) {
+                hits++;
+                return path;
+            }
+            remove(key);
+        }
+        misses++;
+        Path path = machine.runFully(goal, root, maxIterations);
+        if (path != null) {
+            add(key, new CachedRoute(path));
+        }
+        return path;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Removes all routes passing through the given block's chunk.
+     */
+    public void invalidate(Block block) {
+        invalidate(block.getWorld(), block.getX() >> 4, block.getZ() >> 4);
+    }
+
+    private void invalidate(List<Block> blocks) {
+        for (Block block : blocks) {
+            invalidate(block);
+        }
+    }
+
+    /**
+     * Removes all routes passing through the given chunk.
+     */
+    public void invalidate(World world, int chunkX, int chunkZ) {
+        Map<Long, Set<Key>> chunks = chunkIndex.get(world.getUID());
+        if (chunks == null)
+            return;
+        Set<Key> keys = chunks.get(chunkKey(chunkX, chunkZ));
+        if (keys == null)
+            return;
+        for (Key key : Lists.newArrayList(keys)) {
+            remove(key);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBreak(BlockBreakEvent event) {
+        invalidate(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBurn(BlockBurnEvent event) {
+        invalidate(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockExplode(BlockExplodeEvent event) {
+        invalidate(event.blockList());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockFade(BlockFadeEvent event) {
+        invalidate(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockForm(BlockFormEvent event) {
+        invalidate(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockFromTo(BlockFromToEvent event) {
+        invalidate(event.getToBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockPistonExtend(BlockPistonExtendEvent event) {
+        for (Block block : event.getBlocks()) {
+            invalidate(block);
+            invalidate(block.getRelative(event.getDirection()));
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockPistonRetract(BlockPistonRetractEvent event) {
+        for (Block block : event.getBlocks()) {
+            invalidate(block);
+            invalidate(block.getRelative(event.getDirection()));
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockPlace(BlockPlaceEvent event) {
+        invalidate(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityChangeBlock(EntityChangeBlockEvent event) {
+        invalidate(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityExplode(EntityExplodeEvent event) {
+        invalidate(event.blockList());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        UUID world = event.getWorld().getUID();
+        chunkIndex.remove(world);
+        for (Iterator<Key> itr = entries.keySet().iterator(); itr.hasNext();) {
+            if (itr.next().world.equals(world)) {
+                itr.remove();
+            }
+        }
+    }
+
+    private void remove(Key key) {
+        CachedRoute route = entries.remove(key);
+        if (route == null)
+            return;
+        Map<Long, Set<Key>> chunks = chunkIndex.get(key.world);
+        if (chunks == null)
+            return;
+        for (long chunk : route.chunks) {
+            Set<Key> keys = chunks.get(chunk);
+            if (keys != null && keys.remove(key) && keys.isEmpty()) {
+                chunks.remove(chunk);
+            }
+        }
+    }
+
+    public void setMaxSize(int maxSize) {
+        Preconditions.checkArgument(maxSize > 0, "size must be positive");
+        this.maxSize = maxSize;
+        trim();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private void trim() {
+        while (entries.size() > maxSize) {
+            remove(entries.keySet().iterator().next());
+        }
+    }
+
+    private static class CachedRoute {
+        private final long[] chunks;
+        private final List<Vector> vectors;
+
+        private CachedRoute(Path path) {
+            this.vectors = Lists.newArrayList();
+            Set<Long> chunks = Sets.newLinkedHashSet();
+            Vector previous = null;
+            for (Vector vector : path.getPath()) {
+                vectors.add(vector.clone());
+                if (previous == null) {
+                    previous = vector;
+                }
+                // smoothed waypoints may be several blocks apart, so cover every chunk under the segment
+                int minX = Math.min(previous.getBlockX(), vector.getBlockX()) >> 4;
+                int maxX = Math.max(previous.getBlockX(), vector.getBlockX()) >> 4;
+                int minZ = Math.min(previous.getBlockZ(), vector.getBlockZ()) >> 4;
+                int maxZ = Math.max(previous.getBlockZ(), vector.getBlockZ()) >> 4;
+                for (int x = minX; x <= maxX; x++) {
+                    for (int z = minZ; z <= maxZ; z++) {
+                        chunks.add(chunkKey(x, z));
+                    }
+                }
+                previous = vector;
+            }
+            this.chunks = new long[chunks.size()];
+            int i = 0;
+            for (long chunk : chunks) {
+                this.chunks[i++] = chunk;
+            }
+        }
+    }
+
+    private static class Key {
+        private final BlockExaminer[] examiners;
+        private final long from;
+        private final float range;
+        private final long to;
+        private final UUID world;
+
+        private Key(Location start, Location dest, float range, BlockExaminer[] examiners) {
+            this.world = start.getWorld().getUID();
+            this.from = BlockKeyedNode.pack(start.getBlockX(), start.getBlockY(), start.getBlockZ());
+            this.to = BlockKeyedNode.pack(dest.getBlockX(), dest.getBlockY(), dest.getBlockZ());
+            this.range = range;
+            this.examiners = examiners == null ? new BlockExaminer[0] : examiners.clone();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            Key other = (Key) obj;
+            if (from != other.from || to != other.to || range != other.range || !world.equals(other.world)
+                    || examiners.length != other.examiners.length) {
+                return false;
+            }
+            for (int i = 0; i < examiners.length; i++) {
+                if (examiners[i] != other.examiners[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = 31 + world.hashCode();
+            result = 31 * result + Long.hashCode(from);
+            result = 31 * result + Long.hashCode(to);
+            result = 31 * result + Float.floatToIntBits(range);
+            for (BlockExaminer examiner : examiners) {
+                result = 31 * result + System.identityHashCode(examiner);
+            }
+            return result;
+        }
+    }
+
+    private static long chunkKey(int chunkX, int chunkZ) {
+        return (long) chunkX << 32 | (chunkZ & 0xFFFFFFFFL);
+    }
+}
@@ -18,6 +18,27 @@ public interface PathPoint {
      */
     PathPoint createAtOffset(Vector vector);
 
+    /**
+     * Gets the block x coordinate of this point without allocating a Vector
+     */
+    default int getBlockX() {
+        return getVector().getBlockX();
+    }
+
+    /**
+     * Gets the block y coordinate of this point without allocating a Vector
+     */
+    default int getBlockY() {
+        return getVector().getBlockY();
+    }
+
+    /**
+     * Gets the block z coordinate of this point without allocating a Vector
+     */
+    default int getBlockZ() {
+        return getVector().getBlockZ();
+    }
+
     /**
      * Gets the destination Vector
      */
@@ -1,11 +1,8 @@
 package net.citizensnpcs.api.astar.pathfinder;
 
-import org.bukkit.Material;
-import org.bukkit.block.Block;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.Squid;
 import org.bukkit.entity.WaterMob;
-import org.bukkit.util.Vector;
 
 import net.citizensnpcs.api.npc.NPC;
 import net.citizensnpcs.api.util.SpigotUtil;
@@ -26,9 +23,8 @@ public class SwimmingExaminer implements BlockExaminer {
     public float getCost(BlockSource source, PathPoint point) {
         // penalise non water blocks for fish
         if (isWaterMob(npc.getEntity())) {
-            Vector vector = point.getVector();
-            if (!MinecraftBlockExaminer.isLiquidOrInLiquid(
-                    source.getWorld().getBlockAt(vector.getBlockX(), vector.getBlockY(), vector.getBlockZ()))) {
+            if (!MinecraftBlockExaminer.isLiquidOrInLiquid(source, point.getBlockX(), point.getBlockY(),
+                    point.getBlockZ())) {
                 return 1F;
             }
         }
@@ -37,25 +33,22 @@ public class SwimmingExaminer implements BlockExaminer {
 
     @Override
     public PassableState isPassable(BlockSource source, PathPoint point) {
-        Vector vector = point.getVector();
-        if (!MinecraftBlockExaminer.isLiquidOrInLiquid(
-                source.getWorld().getBlockAt(vector.getBlockX(), vector.getBlockY(), vector.getBlockZ()))) {
+        int x = point.getBlockX(), y = point.getBlockY(), z = point.getBlockZ();
+        if (!MinecraftBlockExaminer.isLiquidOrInLiquid(source, x, y, z)) {
             return PassableState.IGNORE;
         }
         if (isWaterMob(npc.getEntity())) {
             return PassableState.PASSABLE;
         }
-        Block block = source.getBlockAt(vector.clone().add(UP));
-        return isSwimmableLiquid(block.getType()) || MinecraftBlockExaminer.canStandIn(block) ? PassableState.PASSABLE
+        int above = source.getBlockFlags(x, y + 1, z);
+        return isSwimmableLiquid(above) || BlockFlags.canStandIn(above) ? PassableState.PASSABLE
                 : PassableState.UNPASSABLE;
     }
 
-    private boolean isSwimmableLiquid(Material material) {
-        if (material == Material.LAVA
-                || (!SpigotUtil.isUsing1_13API() && material == Material.valueOf("STATIONARY_LAVA")))
+    private boolean isSwimmableLiquid(int flags) {
+        if ((flags & BlockFlags.LAVA) != 0)
             return canSwimInLava();
-        return material == Material.WATER
-                || (!SpigotUtil.isUsing1_13API() && material == Material.valueOf("STATIONARY_WATER"));
+        return (flags & BlockFlags.LIQUID) != 0;
     }
 
     public boolean isSwimmingUp() {
@@ -75,6 +68,4 @@ public class SwimmingExaminer implements BlockExaminer {
         return entity instanceof WaterMob || entity.getType().name().equals("TURTLE")
                 || entity.getType().name().equals("FROG") || entity.getType().name().equals("AXOLOTL");
     }
-
-    private static final Vector UP = new Vector(0, 1, 0);
 }
@@ -3,9 +3,9 @@ package net.citizensnpcs.api.astar.pathfinder;
 import org.bukkit.Location;
 import org.bukkit.util.Vector;
 
-import net.citizensnpcs.api.astar.AStarGoal;
+import net.citizensnpcs.api.astar.BidirectionalAStarGoal;
 
-public class VectorGoal implements AStarGoal<VectorNode> {
+public class VectorGoal implements BidirectionalAStarGoal<VectorNode> {
     final Vector goal;
     private final float leeway;
 
@@ -18,6 +18,11 @@ public class VectorGoal implements AStarGoal<VectorNode> {
         goal.setX(goal.getBlockX()).setY(goal.getBlockY()).setZ(goal.getBlockZ());
     }
 
+    @Override
+    public VectorNode createReverseStart(VectorNode start) {
+        return start.createReverseStart(goal);
+    }
+
     @Override
     public float g(VectorNode from, VectorNode to) {
         return from.distance(to);
@@ -25,7 +30,7 @@ public class VectorGoal implements AStarGoal<VectorNode> {
 
     @Override
     public float getInitialCost(VectorNode node) {
-        return (float) node.getVector().distance(goal);
+        return (float) Math.sqrt(node.distanceSquared(goal));
     }
 
     @Override
@@ -33,9 +38,19 @@ public class VectorGoal implements AStarGoal<VectorNode> {
         return from.heuristicDistance(goal);
     }
 
+    @Override
+    public float h(VectorNode from, VectorNode to) {
+        return from.heuristicDistance(to.x, to.y, to.z);
+    }
+
     @Override
     public boolean isFinished(VectorNode node) {
-        double distanceSquared = node.location.distanceSquared(goal);
-        return goal.equals(node.location) || distanceSquared <= leeway;
+        double distanceSquared = node.distanceSquared(goal);
+        return distanceSquared == 0 || distanceSquared <= leeway;
+    }
+
+    @Override
+    public boolean isReversible(VectorNode from, VectorNode to) {
+        return !from.isDirectional() && !to.isDirectional();
     }
 }
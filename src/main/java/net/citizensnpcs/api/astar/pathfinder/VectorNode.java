@@ -1,5 +1,6 @@
 package net.citizensnpcs.api.astar.pathfinder;
 
+import java.util.Arrays;
 import java.util.List;
 
 import org.bukkit.Location;
@@ -9,31 +10,40 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 
 import net.citizensnpcs.api.astar.AStarNode;
+import net.citizensnpcs.api.astar.AStarSearchContext;
+import net.citizensnpcs.api.astar.BlockKeyedNode;
 import net.citizensnpcs.api.astar.Plan;
 import net.citizensnpcs.api.astar.pathfinder.BlockExaminer.PassableState;
 import net.citizensnpcs.api.util.SpigotUtil;
 
-public class VectorNode extends AStarNode implements PathPoint {
+public class VectorNode extends AStarNode implements PathPoint, BlockKeyedNode {
     private float blockCost = -1;
     List<PathCallback> callbacks;
-    private final PathInfo info;
-    Vector location;
-    Vector locationCache;
+    private PathInfo info;
     List<Vector> pathVectors;
+    int x, y, z;
 
     public VectorNode(VectorGoal goal, Location location, BlockSource source, BlockExaminer... examiners) {
         this(null, goal, location.toVector(), source, examiners);
     }
 
-    public VectorNode(VectorNode parent, Vector location, PathInfo info) {
+    private VectorNode(VectorNode parent, int x, int y, int z, PathInfo info) {
         super(parent);
-        this.location = new Vector(location.getBlockX(), location.getBlockY(), location.getBlockZ());
+        this.x = x;
+        this.y = y;
+        this.z = z;
         this.info = info;
     }
 
+    public VectorNode(VectorNode parent, Vector location, PathInfo info) {
+        this(parent, location.getBlockX(), location.getBlockY(), location.getBlockZ(), info);
+    }
+
     public VectorNode(VectorNode parent, VectorGoal goal, Vector location, BlockSource source,
             BlockExaminer... examiners) {
-        this(parent, location, new PathInfo(source, examiners == null ? EMPTY_BLOCK_EXAMINER : examiners, goal));
+        this(parent, location,
+                new PathInfo(source instanceof BlockFlagCache ? source : new BlockFlagCache(source, location),
+                        examiners == null ? EMPTY_BLOCK_EXAMINER : examiners, goal));
     }
 
     @Override
@@ -49,13 +59,82 @@ public class VectorNode extends AStarNode implements PathPoint {
         return new Path(getParents());
     }
 
+    /**
+     * Adds the passable neighbours of this node, reading the examiners once per candidate and reusing the same nodes
+     * for the corner checks of diagonal moves.
+     */
+    private void addNeighbours(List<AStarNode> nodes) {
+        byte[] cardinals = info.cardinals;
+        Arrays.fill(cardinals, UNKNOWN);
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                int modY = y + dy;
+                if (!SpigotUtil.checkYSafe(modY, info.blockSource.getWorld()))
+                    continue;
+                for (int dz = -1; dz <= 1; dz++) {
+                    if (dx == 0 && dy == 0 && dz == 0)
+                        continue;
+                    boolean cardinal = (dx == 0) != (dz == 0);
+                    if (dx != 0 && dz != 0) {
+                        // diagonal moves must not cut corners
+                        if (!isCardinalPassable(dx, dy, 0) || !isCardinalPassable(0, dy, dz))
+                            continue;
+                    } else if (cardinal && cardinals[getCardinalIndex(dx, dy, dz)] == BLOCKED)
+                        continue;
+                    VectorNode node = createAt(x + dx, modY, z + dz);
+                    boolean passable = isPassable(node);
+                    if (cardinal) {
+                        cardinals[getCardinalIndex(dx, dy, dz)] = passable ? OPEN : BLOCKED;
+                    }
+                    if (passable) {
+                        nodes.add(node);
+                    } else {
+                        recycle(node);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a child node at the given block, reusing a node from the search context if possible.
+     */
+    VectorNode createAt(int x, int y, int z) {
+        AStarSearchContext context = getContext();
+        if (context == null)
+            return new VectorNode(this, x, y, z, info);
+        VectorNode node = context.reuseNode(VectorNode.class);
+        if (node != null) {
+            node.reinitialise(this, x, y, z, info);
+            return node;
+        }
+        node = new VectorNode(this, x, y, z, info);
+        context.trackNode(node);
+        return node;
+    }
+
     @Override
     public VectorNode createAtOffset(Vector mod) {
-        return new VectorNode(this, mod, info);
+        return createAt(mod.getBlockX(), mod.getBlockY(), mod.getBlockZ());
+    }
+
+    /**
+     * Creates a node at the given location sharing this node's block source and examiners, which can be used to search
+     * backwards from the goal. Returns null if the location cannot be stood in.
+     */
+    VectorNode createReverseStart(Vector goal) {
+        VectorNode node = new VectorNode(null, goal, info);
+        return isPassable(node) ? node : null;
     }
 
     public float distance(VectorNode to) {
-        return (float) location.distance(to.location);
+        int dx = x - to.x, dy = y - to.y, dz = z - to.z;
+        return (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    double distanceSquared(Vector to) {
+        double dx = x - to.getX(), dy = y - to.getY(), dz = z - to.getZ();
+        return dx * dx + dy * dy + dz * dz;
     }
 
     @Override
@@ -67,14 +146,12 @@ public class VectorNode extends AStarNode implements PathPoint {
             return false;
         }
         VectorNode other = (VectorNode) obj;
-        if (location == null) {
-            if (other.location != null) {
-                return false;
-            }
-        } else if (!location.equals(other.location)) {
-            return false;
-        }
-        return true;
+        return x == other.x && y == other.y && z == other.z;
+    }
+
+    @Override
+    public long getBlockKey() {
+        return BlockKeyedNode.pack(x, y, z);
     }
 
     private float getBlockCost() {
@@ -87,6 +164,25 @@ public class VectorNode extends AStarNode implements PathPoint {
         return blockCost;
     }
 
+    @Override
+    public int getBlockX() {
+        return x;
+    }
+
+    @Override
+    public int getBlockY() {
+        return y;
+    }
+
+    @Override
+    public int getBlockZ() {
+        return z;
+    }
+
+    private int getCardinalIndex(int dx, int dy, int dz) {
+        return (dy + 1) * 4 + (dx != 0 ? (dx + 1) >> 1 : 2 + ((dz + 1) >> 1));
+    }
+
     @Override
     public Vector getGoal() {
         return info.goal.goal;
@@ -94,47 +190,50 @@ public class VectorNode extends AStarNode implements PathPoint {
 
     @Override
     public Iterable<AStarNode> getNeighbours() {
-        List<PathPoint> neighbours = null;
+        AStarSearchContext context = getContext();
+        List<AStarNode> nodes = context == null ? Lists.newArrayList() : context.getScratchList(NODES_BUFFER);
         for (BlockExaminer examiner : info.examiners) {
             if (examiner instanceof NeighbourGeneratorBlockExaminer) {
-                neighbours = ((NeighbourGeneratorBlockExaminer) examiner).getNeighbours(info.blockSource, this);
-                break;
+                List<PathPoint> neighbours = ((NeighbourGeneratorBlockExaminer) examiner)
+                        .getNeighbours(info.blockSource, this);
+                if (neighbours == null)
+                    break;
+                for (PathPoint sub : neighbours) {
+                    if (!isPassable(sub))
+                        continue;
+                    nodes.add((AStarNode) sub);
+                }
+                return nodes;
             }
         }
-        if (neighbours == null) {
-            neighbours = getNeighbours(info.blockSource, this);
-        }
-        List<AStarNode> nodes = Lists.newArrayList();
-        for (PathPoint sub : neighbours) {
-            if (!isPassable(sub))
-                continue;
-            nodes.add((AStarNode) sub);
-        }
+        addNeighbours(nodes);
         return nodes;
     }
 
+    /**
+     * Returns the unfiltered neighbours of the given point, skipping diagonals that cut a corner.
+     */
     public List<PathPoint> getNeighbours(BlockSource source, PathPoint point) {
-        List<PathPoint> neighbours = Lists.newArrayList();
-        for (int x = -1; x <= 1; x++) {
-            for (int y = -1; y <= 1; y++) {
-                for (int z = -1; z <= 1; z++) {
-                    if (x == 0 && y == 0 && z == 0)
+        AStarSearchContext context = getContext();
+        List<PathPoint> neighbours = context == null ? Lists.newArrayList()
+                : context.getScratchList(NEIGHBOURS_BUFFER);
+        int px = point.getBlockX(), py = point.getBlockY(), pz = point.getBlockZ();
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dz = -1; dz <= 1; dz++) {
+                    if (dx == 0 && dy == 0 && dz == 0)
                         continue;
-                    int modY = location.getBlockY() + y;
+                    int modY = py + dy;
                     if (!SpigotUtil.checkYSafe(modY, source.getWorld())) {
                         continue;
                     }
-                    Vector mod = new Vector(location.getX() + x, modY, location.getZ() + z);
-                    if (mod.equals(location))
-                        continue;
-                    if (x != 0 && z != 0) {
-                        if (!isPassable(point.createAtOffset(new Vector(location.getX() + x, modY, location.getZ())))
-                                || !isPassable(
-                                        point.createAtOffset(new Vector(location.getX(), modY, location.getZ() + z)))) {
+                    if (dx != 0 && dz != 0) {
+                        if (!isPassable(point.createAtOffset(new Vector(px + dx, modY, pz)))
+                                || !isPassable(point.createAtOffset(new Vector(px, modY, pz + dz)))) {
                             continue;
                         }
                     }
-                    neighbours.add(point.createAtOffset(mod));
+                    neighbours.add(point.createAtOffset(new Vector(px + dx, modY, pz + dz)));
                 }
             }
         }
@@ -148,25 +247,70 @@ public class VectorNode extends AStarNode implements PathPoint {
 
     @Override
     public List<Vector> getPathVectors() {
-        return pathVectors != null ? pathVectors : ImmutableList.of(location);
+        return pathVectors != null ? pathVectors : ImmutableList.of(getVector());
     }
 
+    /**
+     * Returns a new Vector at this node's block, which callers are free to modify.
+     */
     @Override
     public Vector getVector() {
-        if (locationCache == null) {
-            locationCache = location.clone();
-        }
-        return locationCache.setX(location.getBlockX()).setY(location.getBlockY()).setZ(location.getBlockZ());
+        return new Vector(x, y, z);
     }
 
     @Override
     public int hashCode() {
         final int prime = 31;
-        return prime + ((location == null) ? 0 : location.hashCode());
+        return prime * (prime * (prime + x) + y) + z;
+    }
+
+    float heuristicDistance(double goalX, double goalY, double goalZ) {
+        double dx = x - goalX, dy = y - goalY, dz = z - goalZ;
+        return (float) (Math.sqrt(dx * dx + dy * dy + dz * dz) + getBlockCost()) * TIEBREAKER;
     }
 
     public float heuristicDistance(Vector goal) {
-        return (float) (location.distance(goal) + getBlockCost()) * TIEBREAKER;
+        return heuristicDistance(goal.getX(), goal.getY(), goal.getZ());
+    }
+
+    private void reinitialise(VectorNode parent, int x, int y, int z, PathInfo info) {
+        reinitialise(parent);
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.info = info;
+        blockCost = -1;
+        callbacks = null;
+        pathVectors = null;
+    }
+
+    boolean isDirectional() {
+        for (BlockExaminer examiner : info.examiners) {
+            if (examiner.isDirectional(info.blockSource, this))
+                return true;
+        }
+        return false;
+    }
+
+    private boolean isCardinalPassable(int dx, int dy, int dz) {
+        int index = getCardinalIndex(dx, dy, dz);
+        if (info.cardinals[index] == UNKNOWN) {
+            VectorNode probe = createAt(x + dx, y + dy, z + dz);
+            info.cardinals[index] = isPassable(probe) ? OPEN : BLOCKED;
+            recycle(probe);
+        }
+        return info.cardinals[index] == OPEN;
+    }
+
+    /**
+     * Returns whether the given block at the same height can be walked through without callbacks or extra cost, as
+     * checked by this node's examiners.
+     */
+    boolean isClear(int x, int y, int z) {
+        VectorNode probe = createAt(x, y, z);
+        boolean clear = isPassable(probe) && probe.callbacks == null && probe.getBlockCost() == 0;
+        recycle(probe);
+        return clear;
     }
 
     private boolean isPassable(PathPoint mod) {
@@ -180,6 +324,44 @@ public class VectorNode extends AStarNode implements PathPoint {
         return passable;
     }
 
+    private void recycle(VectorNode node) {
+        AStarSearchContext context = getContext();
+        if (context != null) {
+            context.recycleNode(node);
+        }
+    }
+
+    /**
+     * Forgets the cached cost of this node's block, which is part of its heuristic, after the blocks around it change.
+     */
+    void resetBlockCost() {
+        blockCost = -1;
+    }
+
+    /**
+     * Rebuilds a path from this node along the given vectors, rerunning the examiners so that each step gets new
+     * callbacks. Straight segments left by smoothing are walked again block by block. Returns null if any step is no
+     * longer passable.
+     */
+    Path retrace(List<Vector> vectors) {
+        List<VectorNode> nodes = Lists.newArrayListWithCapacity(vectors.size());
+        nodes.add(this);
+        VectorNode node = this;
+        for (Vector vector : vectors) {
+            if (nodes.size() == 1 && vector.getBlockX() == x && vector.getBlockY() == y && vector.getBlockZ() == z)
+                continue;
+            VectorNode previous = node;
+            node = new VectorNode(node, vector, info);
+            if (!isPassable(node))
+                return null;
+            if (node.y == previous.y && (Math.abs(node.x - previous.x) > 1 || Math.abs(node.z - previous.z) > 1)
+                    && !Path.isLineClear(this, previous.x, previous.y, previous.z, node.x, node.z))
+                return null;
+            nodes.add(node);
+        }
+        return new Path(nodes);
+    }
+
     @Override
     public void setPathVectors(List<Vector> vectors) {
         this.pathVectors = vectors;
@@ -187,11 +369,15 @@ public class VectorNode extends AStarNode implements PathPoint {
 
     @Override
     public void setVector(Vector vector) {
-        this.location = vector;
+        this.x = vector.getBlockX();
+        this.y = vector.getBlockY();
+        this.z = vector.getBlockZ();
     }
 
     private static class PathInfo {
         private final BlockSource blockSource;
+        // passability of the four cardinal neighbours at each height, reused by every expansion of the search
+        private final byte[] cardinals = new byte[12];
         private final BlockExaminer[] examiners;
         private final VectorGoal goal;
 
@@ -202,6 +388,11 @@ public class VectorNode extends AStarNode implements PathPoint {
         }
     }
 
+    private static final byte BLOCKED = 2;
     private static final BlockExaminer[] EMPTY_BLOCK_EXAMINER = new BlockExaminer[] {};
+    private static final int NEIGHBOURS_BUFFER = 0;
+    private static final int NODES_BUFFER = 1;
+    private static final byte OPEN = 1;
     private static final float TIEBREAKER = 1.001f;
+    private static final byte UNKNOWN = 0;
 }
\ No newline at end of file
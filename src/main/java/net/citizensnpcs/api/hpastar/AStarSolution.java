@@ -10,20 +10,19 @@ import com.google.common.collect.Lists;
 
 public class AStarSolution {
     final float cost;
-    private final List<ReversableAStarNode> path;
+    final List<HPAGraphNode> path;
 
-    public AStarSolution(List<ReversableAStarNode> path, float cost) {
+    public AStarSolution(List<HPAGraphNode> path, float cost) {
         this.path = path;
         this.cost = cost;
     }
 
     public Collection<Vector> convertToVectors() {
-        return Lists.transform(path, new Function<ReversableAStarNode, Vector>() {
+        return Lists.transform(path, new Function<HPAGraphNode, Vector>() {
             @Override
-            public Vector apply(ReversableAStarNode input) {
-                HPAGraphNode node = ((HPAGraphAStarNode) input).node;
+            public Vector apply(HPAGraphNode node) {
                 return new Vector(node.x, node.y, node.z);
             }
         });
     }
-}
\ No newline at end of file
+}
@@ -2,20 +2,24 @@ package net.citizensnpcs.api.hpastar;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.PriorityQueue;
 import java.util.Queue;
+import java.util.Set;
 import java.util.function.Consumer;
 
+import com.google.common.collect.Lists;
+
 public class HPACluster {
     private final int clusterSize;
     final int clusterX;
     final int clusterY;
     final int clusterZ;
     private final HPAGraph graph;
-    private final int level;
-    private final List<HPAGraphNode> nodes = new ArrayList<HPAGraphNode>();
+    final int level;
+    final List<HPAGraphNode> nodes = new ArrayList<HPAGraphNode>();
 
     public HPACluster(HPAGraph graph, int level, int clusterSize, int clusterX, int clusterY, int clusterZ) {
         this.graph = graph;
@@ -42,28 +46,59 @@ public class HPACluster {
         return new HPAGraphNode[] { getOrAddNode(x, z) };
     }
 
-    public void buildFrom(List<HPACluster> clusters) {
+    /**
+     * Adds the border nodes of the given lower level clusters to this cluster, copying their edges that leave it.
+     */
+    void addBorderNodes(List<HPACluster> clusters) {
         for (HPACluster other : clusters) {
             for (HPAGraphNode node : other.nodes) {
                 if (node.x == clusterX || node.z == clusterZ || node.x == clusterX + clusterSize - 1
                         || node.z == clusterZ + clusterSize - 1) { // border node
                     nodes.add(node);
                     for (HPAGraphEdge edge : node.getEdges(level - 1)) {
-                        if (edge.type == HPAGraphEdge.EdgeType.INTER) {
-                            edge.from.connect(level, edge.to, edge.type, edge.weight);
+                        if (edge.type == HPAGraphEdge.EdgeType.INTER && !contains(edge.to)
+                                && node.getEdge(level, edge.to) == null) {
+                            node.connect(level, edge.to, edge.type, edge.weight);
                         }
                     }
                 }
             }
         }
-        for (int i = 0; i < nodes.size(); i++) {
-            HPAGraphNode node = nodes.get(i);
-            for (int j = i + 1; j < nodes.size(); j++) {
-                HPAGraphNode n2 = nodes.get(j);
-                float weight = graph.pathfind(node, n2, level - 1).cost;
-                if (!Float.isFinite(weight))
-                    continue;
-                node.connect(level, n2, HPAGraphEdge.EdgeType.INTRA, weight);
+    }
+
+    public void buildFrom(List<HPACluster> clusters) {
+        addBorderNodes(clusters);
+        connectIntra();
+    }
+
+    /**
+     * Removes every node of this cluster along with its edges at this level. At level 0, entrance nodes of neighbouring
+     * clusters that no longer have an entrance are removed as well, so that entrances can be recomputed using
+     * {@link #connect(HPACluster, Direction)}.
+     */
+    void clear() {
+        Set<HPAGraphNode> neighbours = new HashSet<HPAGraphNode>();
+        for (HPAGraphNode node : nodes) {
+            if (level == 0) {
+                for (HPAGraphEdge edge : node.getEdges(level)) {
+                    if (edge.type == HPAGraphEdge.EdgeType.INTER) {
+                        neighbours.add(edge.to);
+                    }
+                }
+            }
+            node.disconnect(level);
+        }
+        nodes.clear();
+        for (HPAGraphNode node : neighbours) {
+            boolean entrance = false;
+            for (HPAGraphEdge edge : node.getEdges(level)) {
+                entrance |= edge.type == HPAGraphEdge.EdgeType.INTER;
+            }
+            if (entrance)
+                continue;
+            node.disconnect(level);
+            if (node.cluster != null) {
+                node.cluster.nodes.remove(node);
             }
         }
     }
@@ -155,15 +190,46 @@ public class HPACluster {
         }
     }
 
+    /**
+     * Recomputes the edges between all nodes of this cluster, replacing any existing ones.
+     */
     public void connectIntra() {
+        connectIntra(computeIntraCosts());
+    }
+
+    /**
+     * Replaces the edges between all nodes of this cluster using costs from {@link #computeIntraCosts()}.
+     */
+    void connectIntra(float[] costs) {
+        for (HPAGraphNode node : nodes) {
+            node.disconnect(level, HPAGraphEdge.EdgeType.INTRA);
+        }
+        int k = 0;
+        for (int i = 0; i < nodes.size(); i++) {
+            HPAGraphNode n = nodes.get(i);
+            for (int j = i + 1; j < nodes.size(); j++) {
+                float cost = costs[k++];
+                if (Float.isFinite(cost)) {
+                    n.connect(level, nodes.get(j), HPAGraphEdge.EdgeType.INTRA, cost);
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the cost between every pair of nodes of this cluster, in the order used by
+     * {@link #connectIntra(float[])}. Only reads the graph, so clusters of the same level can be computed in parallel.
+     */
+    float[] computeIntraCosts() {
+        float[] costs = new float[nodes.size() * (nodes.size() - 1) / 2];
+        int k = 0;
         for (int i = 0; i < nodes.size(); i++) {
             HPAGraphNode n = nodes.get(i);
             for (int j = i + 1; j < nodes.size(); j++) {
-                HPAGraphNode n2 = nodes.get(j);
-                float cost = pathfind(n, n2, false).cost;
-                n.connect(level, n2, HPAGraphEdge.EdgeType.INTRA, cost);
+                costs[k++] = getCost(n, nodes.get(j));
             }
         }
+        return costs;
     }
 
     public boolean contains(HPACluster other) {
@@ -171,6 +237,23 @@ public class HPACluster {
                 && clusterZ + clusterSize > other.clusterZ && other.clusterZ >= clusterZ && other.clusterX >= clusterX;
     }
 
+    public boolean contains(HPAGraphNode node) {
+        return contains(node.x, node.y, node.z);
+    }
+
+    public boolean contains(int x, int y, int z) {
+        return y == clusterY && x >= clusterX && z >= clusterZ && x < clusterX + clusterSize
+                && z < clusterZ + clusterSize;
+    }
+
+    public int getClusterSize() {
+        return clusterSize;
+    }
+
+    private float getCost(HPAGraphNode from, HPAGraphNode to) {
+        return level == 0 ? pathfind(from, to).cost : graph.pathfind(from, to, level - 1).cost;
+    }
+
     private HPAGraphNode getOrAddNode(int x, int z) {
         for (HPAGraphNode node : nodes) {
             if (node.x == this.clusterX + x && node.z == this.clusterZ + z) {
@@ -178,6 +261,7 @@ public class HPACluster {
             }
         }
         HPAGraphNode node = new HPAGraphNode(this.clusterX + x, clusterY, this.clusterZ + z);
+        node.cluster = this;
         nodes.add(node);
         return node;
     }
@@ -193,12 +277,19 @@ public class HPACluster {
         return false;
     }
 
+    /**
+     * Adds a node inside this cluster and connects it to the other nodes of the cluster. Level 0 clusters connect
+     * nodes by searching the blocks of the cluster, higher levels search the graph of the level below.
+     */
     public void insert(HPAGraphNode node) {
+        if (level == 0) {
+            node.cluster = this;
+        }
         nodes.add(node);
         for (HPAGraphNode other : nodes) {
             if (other == node)
                 continue;
-            float cost = pathfind(node, other, false).cost;
+            float cost = getCost(node, other);
             if (Float.isFinite(cost)) {
                 node.connect(level, other, HPAGraphEdge.EdgeType.INTRA, cost);
             }
@@ -209,47 +300,53 @@ public class HPACluster {
         return graph.walkable(clusterX + x, clusterY, clusterZ + z);
     }
 
-    private AStarSolution pathfind(HPAGraphNode start, HPAGraphNode dest, boolean getPath) {
-        ReversableAStarNode startNode = new ClusterNode(start.x, start.z);
-        if (start.x == dest.x && start.y == dest.y && start.z == dest.y) {
-            return new AStarSolution(getPath ? null : startNode.reconstructSolution(), 0);
-        }
-        Map<ReversableAStarNode, Float> open = new HashMap<ReversableAStarNode, Float>();
-        Map<ReversableAStarNode, Float> closed = new HashMap<ReversableAStarNode, Float>();
+    /**
+     * Searches the walkable blocks of this cluster between two nodes inside it.
+     *
+     * @return The solution, with a path of block positions
+     */
+    AStarSolution pathfind(HPAGraphNode start, HPAGraphNode dest) {
+        if (start.x == dest.x && start.y == dest.y && start.z == dest.z)
+            return new AStarSolution(Lists.newArrayList(start), 0);
+        int destX = dest.x - clusterX, destZ = dest.z - clusterZ;
+        Map<ClusterNode, Float> open = new HashMap<ClusterNode, Float>();
+        Set<ClusterNode> closed = new HashSet<ClusterNode>();
         Queue<ReversableAStarNode> frontier = new PriorityQueue<ReversableAStarNode>();
+        ClusterNode startNode = new ClusterNode(start.x - clusterX, start.z - clusterZ);
         frontier.add(startNode);
         open.put(startNode, startNode.g);
         while (!frontier.isEmpty()) {
             ClusterNode node = (ClusterNode) frontier.poll();
-            if (node.x == dest.x && node.z == dest.z) {
-                return new AStarSolution(getPath ? null : node.reconstructSolution(), node.g);
+            if (!closed.add(node))
+                continue;
+            if (node.x == destX && node.z == destZ) {
+                List<HPAGraphNode> path = Lists.newArrayList();
+                for (ReversableAStarNode step : node.reconstructSolution()) {
+                    ClusterNode block = (ClusterNode) step;
+                    path.add(new HPAGraphNode(clusterX + block.x, clusterY, clusterZ + block.z));
+                }
+                return new AStarSolution(path, node.g);
             }
-            closed.put(node, node.g);
-            open.remove(node);
             for (int dx = -1; dx <= 1; dx++) {
                 for (int dz = -1; dz <= 1; dz++) {
                     if (dx == 0 && dz == 0)
                         continue;
-                    if (node.x + dx < 0 || node.z + dz < 0 || node.x + dx >= 16 || node.z + dz >= 16) {
+                    int x = node.x + dx, z = node.z + dz;
+                    if (x < 0 || z < 0 || x >= clusterSize || z >= clusterSize || !offsetWalkable(x, z))
                         continue;
-                    }
-                    if (!offsetWalkable(dx, dz))
+                    if (dx != 0 && dz != 0 && (!offsetWalkable(node.x + dx, node.z) || !offsetWalkable(node.x, z)))
                         continue;
-                    ClusterNode neighbour = new ClusterNode(node.x + dx, node.z + dz);
-                    if (closed.containsKey(neighbour))
+                    ClusterNode neighbour = new ClusterNode(x, z);
+                    if (closed.contains(neighbour))
+                        continue;
+                    float g = node.g + (dx != 0 && dz != 0 ? DIAGONAL_COST : 1F);
+                    Float existing = open.get(neighbour);
+                    if (existing != null && existing <= g)
                         continue;
                     neighbour.parent = node;
-                    // TODO: chebyshev?
-                    neighbour.g = (float) (node.g
-                            + Math.sqrt(Math.pow(node.x - neighbour.x, 2) + Math.pow(node.z - neighbour.z, 2)));
-                    neighbour.h = (float) Math
-                            .sqrt(Math.pow(neighbour.x - dest.x, 2) + Math.pow(neighbour.z - dest.z, 2));
-                    if (open.containsKey(neighbour)) {
-                        if (neighbour.g > open.get(neighbour))
-                            continue;
-                        // TODO: do we have to do this? frontier.remove(neighbour);
-                    }
-                    open.put(neighbour, neighbour.g);
+                    neighbour.g = g;
+                    neighbour.h = (float) Math.sqrt((x - destX) * (x - destX) + (z - destZ) * (z - destZ));
+                    open.put(neighbour, g);
                     frontier.add(neighbour);
                 }
             }
@@ -259,14 +356,9 @@ public class HPACluster {
 
     public void remove(HPAGraphNode... nodes) {
         for (HPAGraphNode node : nodes) {
-            List<List<HPAGraphEdge>> edges2 = node.edges;
-            for (int i = 0; i < edges2.size(); i++) {
-                List<HPAGraphEdge> edges = edges2.get(i);
-                for (HPAGraphEdge edge : edges) {
-                    edge.to.edges.get(i).remove(edge);
-                }
-            }
-            this.nodes.remove(node);
+            node.disconnectAll();
+            // nodes inserted for a search may be equal to an entrance node at the same block
+            this.nodes.removeIf(other -> other == node);
         }
     }
 
@@ -275,4 +367,6 @@ public class HPACluster {
         return "C[" + level + "] (" + clusterX + "," + clusterY + "," + clusterZ + ")->(" + (clusterX + clusterSize - 1)
                 + "," + clusterY + "," + (clusterZ + clusterSize - 1) + ")";
     }
+
+    private static final float DIAGONAL_COST = (float) Math.sqrt(2);
 }
\ No newline at end of file
@@ -1,33 +1,88 @@
 package net.citizensnpcs.api.hpastar;
 
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.PriorityQueue;
 import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
 
 import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockBurnEvent;
+import org.bukkit.event.block.BlockExplodeEvent;
+import org.bukkit.event.block.BlockFadeEvent;
+import org.bukkit.event.block.BlockFormEvent;
+import org.bukkit.event.block.BlockFromToEvent;
+import org.bukkit.event.block.BlockPistonExtendEvent;
+import org.bukkit.event.block.BlockPistonRetractEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.entity.EntityChangeBlockEvent;
+import org.bukkit.event.entity.EntityExplodeEvent;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.util.Vector;
 
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
+import com.google.common.collect.Sets;
 
 import ch.ethz.globis.phtree.PhTreeSolid;
 import ch.ethz.globis.phtree.PhTreeSolid.PhQueryS;
-import net.citizensnpcs.api.astar.Plan;
+import net.citizensnpcs.api.astar.BlockKeyedNode;
+import net.citizensnpcs.api.astar.pathfinder.BlockFlags;
 import net.citizensnpcs.api.astar.pathfinder.BlockSource;
-import net.citizensnpcs.api.astar.pathfinder.MinecraftBlockExaminer;
 import net.citizensnpcs.api.astar.pathfinder.Path;
-import net.citizensnpcs.api.util.Messaging;
+import net.citizensnpcs.api.util.SpigotUtil;
 
-public class HPAGraph {
+/**
+ * A hierarchical pathfinding graph (HPA*) over a world. The world is split into regions of {@value #REGION_SIZE}
+ * blocks square, each of which is split into layers of clusters per y level, doubling in size at each level. Regions
+ * are queued when a path is requested through them or, if registered as a {@link Listener}, when their chunks load.
+ * Queued regions are built over time by calling {@link #buildPendingRegions(int)}.
+ *
+ * Paths are searched on the highest level and refined level by level down to blocks, so long routes avoid searching
+ * every block in between. Only regions that have already been built are searched.
+ *
+ * Block changes mark the level 0 clusters around them as dirty. Dirty clusters are updated before the next path is
+ * found, or when {@link #updateDirtyClusters()} is called: only their entrances and edges are recomputed, along with
+ * the higher level clusters containing them. The block source must therefore reflect the current state of the world.
+ *
+ * Building a region reads walkability once into a snapshot, after which the searches between nodes of each cluster
+ * only read the snapshot and the graph. Set a {@link ForkJoinPool} using {@link #setForkJoinPool(ForkJoinPool)} to
+ * run those searches in parallel. Edges are still added in a fixed order, so the graph is the same either way.
+ *
+ * The graph can be saved and loaded using {@link HPAGraphStorage}. Each chunk of a built region keeps a hash of its
+ * walkability: chunks whose hash no longer matches when they load are marked dirty and updated as if their blocks had
+ * changed.
+ */
+public class HPAGraph implements Listener {
     private final BlockSource blockSource;
-    public List<List<HPACluster>> clusters = Lists.newArrayList();
-    // TODO: y-clusters?
-    // TODO: make nodes updateable properly
-    private final int cx, cy, cz;
+    final Set<Long> builtRegions = Sets.newHashSet();
+    private final Map<Long, Long> chunkHashes = Maps.newHashMap();
+    final List<List<HPACluster>> clusters = Lists.newArrayList();
+    final int cx, cy, cz;
+    private final Set<Long> dirtyClusters = Sets.newLinkedHashSet();
+    private final Set<Long> pendingRegions = Sets.newLinkedHashSet();
     private final List<PhTreeSolid<HPACluster>> phtrees = Lists.newArrayList();
+    private ForkJoinPool pool;
+    private final Map<Long, List<List<HPACluster>>> regions = Maps.newHashMap();
+    private WalkableSnapshot snapshot;
+    private final Map<Long, Long> unverifiedChunks = Maps.newHashMap();
 
     public HPAGraph(BlockSource blockSource, int cx, int cy, int cz) {
         this.blockSource = blockSource;
@@ -43,34 +98,39 @@ public class HPAGraph {
         }
     }
 
+    /**
+     * Builds the region containing the given block if it has not been built yet.
+     */
     public void addClusters(int x, int z) {
-        int baseX = MAX_CLUSTER_SIZE * ((x - cx) / MAX_CLUSTER_SIZE) + cx;
-        int baseZ = MAX_CLUSTER_SIZE * ((z - cz) / MAX_CLUSTER_SIZE) + cz;
-        Messaging.log(baseX, baseZ);
+        int regionX = Math.floorDiv(x - cx, REGION_SIZE), regionZ = Math.floorDiv(z - cz, REGION_SIZE);
+        long key = packXZ(regionX, regionZ);
+        if (!builtRegions.add(key))
+            return;
+        pendingRegions.remove(key);
+        int baseX = regionX * REGION_SIZE + cx;
+        int baseZ = regionZ * REGION_SIZE + cz;
+        int minY = SpigotUtil.getMinHeight(blockSource.getWorld()) + 1;
+        int maxY = blockSource.getWorld().getMaxHeight() - 2;
+        List<List<HPACluster>> regionClusters = Lists.newArrayList();
+        regions.put(key, regionClusters);
+
         List<HPACluster> newClusters = new ArrayList<>();
-        if (phtrees.size() == 0) {
-            phtrees.add(PhTreeSolid.create(3));
-        }
         PhTreeSolid<HPACluster> baseLevel = phtrees.get(0);
-
-        // build clusters
         int clusterSize = BASE_CLUSTER_SIZE;
-        for (int y = 0; y < 128; y++) {
-            for (int ci = 0; ci < MAX_CLUSTER_SIZE; ci += clusterSize) {
-                for (int cj = 0; cj < MAX_CLUSTER_SIZE; cj += clusterSize) {
+        snapshot = new WalkableSnapshot(baseX, minY, baseZ, maxY - minY + 1);
+        for (int y = minY; y <= maxY; y++) {
+            for (int ci = 0; ci < REGION_SIZE; ci += clusterSize) {
+                for (int cj = 0; cj < REGION_SIZE; cj += clusterSize) {
                     HPACluster cluster = new HPACluster(this, 0, clusterSize, baseX + ci, y, baseZ + cj);
                     if (!cluster.hasWalkableNodes())
                         continue;
                     newClusters.add(cluster);
-                    baseLevel.put(
-                            new long[] { cluster.clusterX, cluster.clusterY, cluster.clusterZ }, new long[] {
-                                    cluster.clusterX + clusterSize, cluster.clusterY, cluster.clusterZ + clusterSize },
-                            cluster);
-                    Messaging.log(cluster);
+                    baseLevel.put(getLower(cluster), getUpper(cluster), cluster);
                 }
             }
         }
 
+        Set<HPACluster> touched = Sets.newHashSet();
         Multimap<HPACluster, HPACluster> neighbours = HashMultimap.create();
         for (HPACluster cluster : newClusters) {
             PhQueryS<HPACluster> q = baseLevel.queryIntersect(
@@ -81,12 +141,10 @@ public class HPAGraph {
                 HPACluster neighbour = q.nextValue();
                 if (neighbour == cluster || neighbours.get(cluster).contains(neighbour))
                     continue;
-
-                // TODO: diagonal connections using length=sqrt(2)
-                if (neighbour.clusterX - cluster.clusterX != 0 && neighbour.clusterZ - cluster.clusterZ != 0)
-                    continue;
                 int dx = neighbour.clusterX - cluster.clusterX;
                 int dz = neighbour.clusterZ - cluster.clusterZ;
+                if (dx != 0 && dz != 0)
+                    continue;
                 Direction direction = null;
                 if (dx > 0)
                     direction = Direction.EAST;
@@ -101,121 +159,676 @@ public class HPAGraph {
                 cluster.connect(neighbour, direction);
                 neighbours.get(cluster).add(neighbour);
                 neighbours.get(neighbour).add(cluster);
-                Messaging.log("CONNECTED", cluster, neighbour);
+                if (!snapshot.contains(neighbour.clusterX, neighbour.clusterY, neighbour.clusterZ)) {
+                    touched.add(neighbour);
+                }
             }
         }
-        for (HPACluster cluster : newClusters) {
+        try {
+            connectIntra(newClusters);
+            for (int chunkX = baseX >> 4; chunkX <= (baseX + REGION_SIZE - 1) >> 4; chunkX++) {
+                for (int chunkZ = baseZ >> 4; chunkZ <= (baseZ + REGION_SIZE - 1) >> 4; chunkZ++) {
+                    chunkHashes.put(packXZ(chunkX, chunkZ), hashChunk(chunkX, chunkZ));
+                }
+            }
+        } finally {
+            snapshot = null;
+        }
+        // clusters of neighbouring regions gained entrances on the shared border
+        Set<Long> touchedRegions = Sets.newHashSet();
+        for (HPACluster cluster : touched) {
             cluster.connectIntra();
+            touchedRegions.add(packXZ(Math.floorDiv(cluster.clusterX - cx, REGION_SIZE),
+                    Math.floorDiv(cluster.clusterZ - cz, REGION_SIZE)));
         }
+        regionClusters.add(newClusters);
         addClustersAtDepth(0, newClusters);
-        for (int depth = 1; depth <= MAX_DEPTH; depth++) {
-            newClusters = new ArrayList<HPACluster>();
-            clusterSize = (int) (BASE_CLUSTER_SIZE * Math.pow(2, depth));
+        buildLevels(key);
+        for (long touchedRegion : touchedRegions) {
+            clearLevels(touchedRegion);
+            buildLevels(touchedRegion);
+        }
+    }
+
+    public void addClustersAtDepth(int depth, List<HPACluster> other) {
+        clusters.get(depth).addAll(other);
+    }
+
+    private void blockChanged(Block block) {
+        if (block.getWorld() == blockSource.getWorld()) {
+            blockChanged(block.getX(), block.getY(), block.getZ());
+        }
+    }
+
+    /**
+     * Marks the clusters whose walkability depends on the given block as dirty.
+     */
+    public void blockChanged(int x, int y, int z) {
+        if (!isRegionBuilt(x, z))
+            return;
+        chunkHashes.remove(packXZ(x >> 4, z >> 4));
+        int clusterX = Math.floorDiv(x - cx, BASE_CLUSTER_SIZE) * BASE_CLUSTER_SIZE + cx;
+        int clusterZ = Math.floorDiv(z - cz, BASE_CLUSTER_SIZE) * BASE_CLUSTER_SIZE + cz;
+        int minY = SpigotUtil.getMinHeight(blockSource.getWorld()) + 1;
+        int maxY = blockSource.getWorld().getMaxHeight() - 2;
+        // a position is walkable depending on the blocks below and above it
+        for (int clusterY = Math.max(minY, y - 1); clusterY <= Math.min(maxY, y + 1); clusterY++) {
+            dirtyClusters.add(BlockKeyedNode.pack(clusterX, clusterY, clusterZ));
+        }
+    }
+
+    private void blockChanged(List<Block> blocks) {
+        for (Block block : blocks) {
+            blockChanged(block);
+        }
+    }
+
+    /**
+     * Builds up to the given number of regions whose chunks have finished loading.
+     *
+     * @return Whether any regions are still pending
+     */
+    public boolean buildPendingRegions(int max) {
+        Iterator<Long> itr = pendingRegions.iterator();
+        for (int built = 0; itr.hasNext() && built < max;) {
+            long key = itr.next();
+            itr.remove();
+            int x = (int) (key >> 32) * REGION_SIZE + cx, z = (int) key * REGION_SIZE + cz;
+            if (isRegionLoaded(x, z)) {
+                addClusters(x, z);
+                built++;
+            }
+        }
+        return !pendingRegions.isEmpty();
+    }
 
-            for (int y = 0; y < 128; y++) {
-                for (int ci = 0; ci < MAX_CLUSTER_SIZE; ci += clusterSize) {
-                    for (int cj = 0; cj < MAX_CLUSTER_SIZE; cj += clusterSize) {
+    /**
+     * Abstracts the higher levels of a region from the level 0 clusters.
+     */
+    private void buildLevels(long key) {
+        List<List<HPACluster>> regionClusters = regions.get(key);
+        int baseX = (int) (key >> 32) * REGION_SIZE + cx, baseZ = (int) key * REGION_SIZE + cz;
+        int minY = SpigotUtil.getMinHeight(blockSource.getWorld()) + 1;
+        int maxY = blockSource.getWorld().getMaxHeight() - 2;
+        for (int depth = 1; depth <= MAX_DEPTH; depth++) {
+            List<HPACluster> newClusters = new ArrayList<HPACluster>();
+            int clusterSize = BASE_CLUSTER_SIZE << depth;
+            for (int y = minY; y <= maxY; y++) {
+                for (int ci = 0; ci < REGION_SIZE; ci += clusterSize) {
+                    for (int cj = 0; cj < REGION_SIZE; cj += clusterSize) {
                         HPACluster cluster = new HPACluster(this, depth, clusterSize, baseX + ci, y, baseZ + cj);
-                        List<HPACluster> parentClusters = Lists.newArrayList(phtrees.get(depth - 1).queryInclude(
-                                new long[] { cluster.clusterX, cluster.clusterY, cluster.clusterZ },
-                                new long[] { cluster.clusterX + clusterSize, cluster.clusterY,
-                                        cluster.clusterZ + clusterSize }));
+                        List<HPACluster> parentClusters = Lists.newArrayList(
+                                phtrees.get(depth - 1).queryInclude(getLower(cluster), getUpper(cluster)));
                         if (parentClusters.size() == 0)
                             continue;
-                        cluster.buildFrom(parentClusters);
-                        phtrees.get(depth).put(new long[] { cluster.clusterX, cluster.clusterY, cluster.clusterZ },
-                                new long[] { cluster.clusterX + clusterSize, cluster.clusterY,
-                                        cluster.clusterZ + clusterSize },
-                                cluster);
-                        Messaging.log(cluster);
+                        cluster.addBorderNodes(parentClusters);
+                        phtrees.get(depth).put(getLower(cluster), getUpper(cluster), cluster);
                         newClusters.add(cluster);
                     }
                 }
             }
-
+            connectIntra(newClusters);
+            while (regionClusters.size() <= depth) {
+                regionClusters.add(new ArrayList<HPACluster>());
+            }
+            regionClusters.get(depth).addAll(newClusters);
             addClustersAtDepth(depth, newClusters);
         }
     }
 
-    public void addClustersAtDepth(int depth, List<HPACluster> other) {
-        clusters.get(depth).addAll(other);
+    /**
+     * Marks every level 0 cluster overlapping the given chunk as dirty.
+     */
+    private void chunkChanged(int chunkX, int chunkZ) {
+        chunkHashes.remove(packXZ(chunkX, chunkZ));
+        int minY = SpigotUtil.getMinHeight(blockSource.getWorld()) + 1;
+        int maxY = blockSource.getWorld().getMaxHeight() - 2;
+        int minX = chunkX << 4, minZ = chunkZ << 4;
+        for (int clusterX = Math.floorDiv(minX - cx, BASE_CLUSTER_SIZE) * BASE_CLUSTER_SIZE
+                + cx; clusterX < minX + 16; clusterX += BASE_CLUSTER_SIZE) {
+            for (int clusterZ = Math.floorDiv(minZ - cz, BASE_CLUSTER_SIZE) * BASE_CLUSTER_SIZE
+                    + cz; clusterZ < minZ + 16; clusterZ += BASE_CLUSTER_SIZE) {
+                for (int y = minY; y <= maxY; y++) {
+                    dirtyClusters.add(BlockKeyedNode.pack(clusterX, y, clusterZ));
+                }
+            }
+        }
     }
 
-    public Plan findPath(Location start, Location goal) {
-        // insert into each layer
-        List<HPACluster> clustersToClean = new ArrayList<HPACluster>();
+    /**
+     * Removes the higher level clusters of a region along with their edges, keeping level 0.
+     */
+    private void clearLevels(long key) {
+        List<List<HPACluster>> regionClusters = regions.get(key);
+        for (int depth = regionClusters.size() - 1; depth >= 1; depth--) {
+            for (HPACluster cluster : regionClusters.get(depth)) {
+                for (HPAGraphNode node : cluster.nodes) {
+                    node.disconnect(depth);
+                }
+                phtrees.get(depth).remove(getLower(cluster), getUpper(cluster));
+            }
+            // removeAll would scan the region's clusters for every cluster of the level
+            Set<HPACluster> removed = Sets.newIdentityHashSet();
+            removed.addAll(regionClusters.get(depth));
+            clusters.get(depth).removeIf(removed::contains);
+            regionClusters.get(depth).clear();
+        }
+    }
+
+    /**
+     * Recomputes the edges inside each cluster, searching clusters in parallel if a pool is set.
+     */
+    private void connectIntra(List<HPACluster> clusters) {
+        float[][] costs = new float[clusters.size()][];
+        forEach(clusters.size(), i -> costs[i] = clusters.get(i).computeIntraCosts());
+        for (int i = 0; i < clusters.size(); i++) {
+            clusters.get(i).connectIntra(costs[i]);
+        }
+    }
+
+    /**
+     * Finds a path between two locations through the regions that have been built. Regions between them that have not
+     * been built yet are queued for {@link #buildPendingRegions(int)} instead of being built on the calling thread.
+     *
+     * @return The path, or <code>null</code> if either location is not walkable or in a region that has not been built,
+     *         or no path exists. Callers should fall back to another pathfinder
+     */
+    public Path findPath(Location start, Location goal) {
+        if (start.getWorld() != blockSource.getWorld() || goal.getWorld() != blockSource.getWorld())
+            return null;
+        int minRegionX = Math.floorDiv(Math.min(start.getBlockX(), goal.getBlockX()) - cx, REGION_SIZE);
+        int maxRegionX = Math.floorDiv(Math.max(start.getBlockX(), goal.getBlockX()) - cx, REGION_SIZE);
+        int minRegionZ = Math.floorDiv(Math.min(start.getBlockZ(), goal.getBlockZ()) - cz, REGION_SIZE);
+        int maxRegionZ = Math.floorDiv(Math.max(start.getBlockZ(), goal.getBlockZ()) - cz, REGION_SIZE);
+        for (int rx = minRegionX - 1; rx <= maxRegionX + 1; rx++) {
+            for (int rz = minRegionZ - 1; rz <= maxRegionZ + 1; rz++) {
+                long key = packXZ(rx, rz);
+                if (!builtRegions.contains(key)) {
+                    pendingRegions.add(key);
+                }
+            }
+        }
+        if (!isRegionBuilt(start.getBlockX(), start.getBlockZ()) || !isRegionBuilt(goal.getBlockX(), goal.getBlockZ()))
+            return null;
+        updateDirtyClusters();
         HPAGraphNode startNode = new HPAGraphNode(start.getBlockX(), start.getBlockY(), start.getBlockZ()),
                 goalNode = new HPAGraphNode(goal.getBlockX(), goal.getBlockY(), goal.getBlockZ());
-        int i = 0;
-        // TODO: verify that below insertion code works properly
-        for (PhTreeSolid<HPACluster> phtree : phtrees) {
-            PhQueryS<HPACluster> q = phtree.queryIntersect(
-                    new long[] { start.getBlockX(), start.getBlockY(), start.getBlockZ() },
-                    new long[] { start.getBlockX(), start.getBlockY(), start.getBlockZ() });
-            HPACluster startCluster = q.hasNext() ? q.next() : null;
-            q = phtree.queryIntersect(new long[] { goal.getBlockX(), goal.getBlockY(), goal.getBlockZ() },
-                    new long[] { goal.getBlockX(), goal.getBlockY(), goal.getBlockZ() });
-            HPACluster goalCluster = q.hasNext() ? q.next() : null;
-            Messaging.log(i, startCluster, goalCluster);
-            startCluster.insert(startNode); // TODO: don't need to pathfind for higher levels
-            goalCluster.insert(goalNode);
-            clustersToClean.add(startCluster);
-            clustersToClean.add(goalCluster);
-        }
-        AStarSolution sln = pathfind(startNode, goalNode, 0);
-        System.out.println(":" + start + "->" + goal + "@" + sln.cost);
-        for (HPACluster cluster : clustersToClean) {
-            cluster.remove(startNode, goalNode);
-        }
-        return new Path(sln.convertToVectors());
+        List<HPACluster> clustersToClean = new ArrayList<HPACluster>();
+        int level = -1;
+        try {
+            for (int depth = 0; depth < phtrees.size(); depth++) {
+                HPACluster startCluster = getCluster(depth, startNode);
+                HPACluster goalCluster = getCluster(depth, goalNode);
+                if (startCluster == null || goalCluster == null)
+                    break;
+                startCluster.insert(startNode);
+                clustersToClean.add(startCluster);
+                goalCluster.insert(goalNode);
+                clustersToClean.add(goalCluster);
+                level = depth;
+            }
+            if (level == -1)
+                return null;
+            AStarSolution sln = pathfind(startNode, goalNode, level);
+            if (sln.path == null)
+                return null;
+            List<Vector> vectors = Lists.newArrayList();
+            vectors.add(new Vector(startNode.x, startNode.y, startNode.z));
+            refine(sln.path, level, vectors);
+            return new Path(vectors);
+        } finally {
+            for (HPACluster cluster : clustersToClean) {
+                cluster.remove(startNode, goalNode);
+            }
+        }
+    }
+
+    private void forEach(int size, IntConsumer action) {
+        if (pool == null || size < 2) {
+            for (int i = 0; i < size; i++) {
+                action.accept(i);
+            }
+            return;
+        }
+        pool.invoke(new RangeAction(action, 0, size));
+    }
+
+    /**
+     * Returns the walkability hashes of the chunks of built regions, hashing loaded chunks whose hash is not known.
+     */
+    Map<Long, Long> getChunkHashes() {
+        Map<Long, Long> hashes = Maps.newHashMap(chunkHashes);
+        for (Map.Entry<Long, Long> entry : unverifiedChunks.entrySet()) {
+            if (entry.getValue() != null) {
+                hashes.put(entry.getKey(), entry.getValue());
+            }
+        }
+        for (long key : builtRegions) {
+            int baseX = (int) (key >> 32) * REGION_SIZE + cx, baseZ = (int) key * REGION_SIZE + cz;
+            for (int chunkX = baseX >> 4; chunkX <= (baseX + REGION_SIZE - 1) >> 4; chunkX++) {
+                for (int chunkZ = baseZ >> 4; chunkZ <= (baseZ + REGION_SIZE - 1) >> 4; chunkZ++) {
+                    long chunk = packXZ(chunkX, chunkZ);
+                    if (!hashes.containsKey(chunk) && blockSource.getWorld().isChunkLoaded(chunkX, chunkZ)) {
+                        long hash = hashChunk(chunkX, chunkZ);
+                        chunkHashes.put(chunk, hash);
+                        hashes.put(chunk, hash);
+                    }
+                }
+            }
+        }
+        return hashes;
+    }
+
+    private HPACluster getCluster(int depth, HPAGraphNode node) {
+        return getCluster(depth, node.x, node.y, node.z);
+    }
+
+    private HPACluster getCluster(int depth, int x, int y, int z) {
+        long[] point = new long[] { x, y, z };
+        PhQueryS<HPACluster> q = phtrees.get(depth).queryIntersect(point, point);
+        return q.hasNext() ? q.nextValue() : null;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBreak(BlockBreakEvent event) {
+        blockChanged(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBurn(BlockBurnEvent event) {
+        blockChanged(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockExplode(BlockExplodeEvent event) {
+        blockChanged(event.blockList());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockFade(BlockFadeEvent event) {
+        blockChanged(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockForm(BlockFormEvent event) {
+        blockChanged(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockFromTo(BlockFromToEvent event) {
+        blockChanged(event.getToBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockPistonExtend(BlockPistonExtendEvent event) {
+        for (Block block : event.getBlocks()) {
+            blockChanged(block);
+            blockChanged(block.getRelative(event.getDirection()));
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockPistonRetract(BlockPistonRetractEvent event) {
+        for (Block block : event.getBlocks()) {
+            blockChanged(block);
+            blockChanged(block.getRelative(event.getDirection()));
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockPlace(BlockPlaceEvent event) {
+        blockChanged(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkLoad(ChunkLoadEvent event) {
+        if (event.getWorld() != blockSource.getWorld())
+            return;
+        int x = event.getChunk().getX() << 4, z = event.getChunk().getZ() << 4;
+        long key = packXZ(Math.floorDiv(x - cx, REGION_SIZE), Math.floorDiv(z - cz, REGION_SIZE));
+        if (!builtRegions.contains(key)) {
+            pendingRegions.add(key);
+        }
+        verifyChunk(event.getChunk().getX(), event.getChunk().getZ());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityChangeBlock(EntityChangeBlockEvent event) {
+        blockChanged(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityExplode(EntityExplodeEvent event) {
+        blockChanged(event.blockList());
+    }
+
+    World getWorld() {
+        return blockSource.getWorld();
+    }
+
+    /**
+     * Hashes the walkability of every position in a chunk.
+     */
+    private long hashChunk(int chunkX, int chunkZ) {
+        int minY = SpigotUtil.getMinHeight(blockSource.getWorld()) + 1;
+        int maxY = blockSource.getWorld().getMaxHeight() - 2;
+        long hash = FNV_OFFSET_BASIS;
+        for (int y = minY; y <= maxY; y++) {
+            for (int x = chunkX << 4; x < (chunkX + 1) << 4; x++) {
+                for (int z = chunkZ << 4; z < (chunkZ + 1) << 4; z++) {
+                    hash = (hash ^ (walkable(x, y, z) ? 1 : 0)) * FNV_PRIME;
+                }
+            }
+        }
+        return hash;
+    }
+
+    private boolean isRegionBuilt(int x, int z) {
+        return builtRegions.contains(packXZ(Math.floorDiv(x - cx, REGION_SIZE), Math.floorDiv(z - cz, REGION_SIZE)));
+    }
+
+    private boolean isRegionLoaded(int x, int z) {
+        World world = blockSource.getWorld();
+        int baseX = Math.floorDiv(x - cx, REGION_SIZE) * REGION_SIZE + cx;
+        int baseZ = Math.floorDiv(z - cz, REGION_SIZE) * REGION_SIZE + cz;
+        for (int chunkX = baseX >> 4; chunkX <= (baseX + REGION_SIZE - 1) >> 4; chunkX++) {
+            for (int chunkZ = baseZ >> 4; chunkZ <= (baseZ + REGION_SIZE - 1) >> 4; chunkZ++) {
+                if (!world.isChunkLoaded(chunkX, chunkZ))
+                    return false;
+            }
+        }
+        return true;
     }
 
     AStarSolution pathfind(HPAGraphNode start, HPAGraphNode dest, int level) {
-        Map<ReversableAStarNode, Float> open = new HashMap<ReversableAStarNode, Float>();
-        Map<ReversableAStarNode, Float> closed = new HashMap<ReversableAStarNode, Float>();
+        Map<HPAGraphNode, Float> open = new HashMap<HPAGraphNode, Float>();
+        Set<HPAGraphNode> closed = new HashSet<HPAGraphNode>();
         Queue<ReversableAStarNode> frontier = new PriorityQueue<ReversableAStarNode>();
-        ReversableAStarNode startNode = new HPAGraphAStarNode(start, null);
+        HPAGraphAStarNode startNode = new HPAGraphAStarNode(start, null);
+        startNode.h = (float) start.distance(dest);
         frontier.add(startNode);
-        open.put(startNode, startNode.g);
+        open.put(start, 0F);
         while (!frontier.isEmpty()) {
             HPAGraphAStarNode node = (HPAGraphAStarNode) frontier.poll();
-            List<HPAGraphEdge> edges = node.node.getEdges(level);
-            for (HPAGraphEdge edge : edges) {
-                if (edge.to.equals(dest)) {
-                    return new AStarSolution(node.reconstructSolution(), node.g);
+            if (!closed.add(node.node))
+                continue;
+            if (node.node.equals(dest)) {
+                List<HPAGraphNode> path = Lists.newArrayList();
+                for (ReversableAStarNode step : node.reconstructSolution()) {
+                    path.add(((HPAGraphAStarNode) step).node);
                 }
+                return new AStarSolution(path, node.g);
             }
-            if (start != node.node) {
-                closed.put(node, node.g);
-            }
-            open.remove(node);
-            for (HPAGraphEdge edge : edges) {
-                HPAGraphAStarNode neighbour = new HPAGraphAStarNode(edge.to, edge);
-                if (closed.containsKey(neighbour))
+            for (HPAGraphEdge edge : node.node.getEdges(level)) {
+                if (closed.contains(edge.to))
                     continue;
+                float g = node.g + edge.weight;
+                Float existing = open.get(edge.to);
+                if (existing != null && existing <= g)
+                    continue;
+                HPAGraphAStarNode neighbour = new HPAGraphAStarNode(edge.to, edge);
                 neighbour.parent = node;
-                neighbour.g = node.g + edge.weight;
-                neighbour.h = (float) Math.sqrt(Math.pow(edge.to.x - dest.x, 2) + Math.pow(edge.to.z - dest.z, 2));
-                if (open.containsKey(neighbour)) {
-                    if (neighbour.g > open.get(neighbour))
-                        continue;
-                    frontier.remove(neighbour);
-                }
-                open.put(neighbour, neighbour.g);
+                neighbour.g = g;
+                neighbour.h = (float) edge.to.distance(dest);
+                open.put(edge.to, g);
                 frontier.add(neighbour);
             }
         }
         return new AStarSolution(null, Float.POSITIVE_INFINITY);
     }
 
+    /**
+     * Expands a path of nodes at the given level into blocks, appending every block after the first node.
+     */
+    private void refine(List<HPAGraphNode> path, int level, List<Vector> vectors) {
+        for (int i = 1; i < path.size(); i++) {
+            HPAGraphNode from = path.get(i - 1), to = path.get(i);
+            HPAGraphEdge edge = from.getEdge(level, to);
+            if (edge == null || edge.type == HPAGraphEdge.EdgeType.INTER) {
+                vectors.add(new Vector(to.x, to.y, to.z));
+                continue;
+            }
+            List<HPAGraphNode> sub = level == 0 ? from.cluster.pathfind(from, to).path
+                    : pathfind(from, to, level - 1).path;
+            if (sub == null) {
+                vectors.add(new Vector(to.x, to.y, to.z));
+                continue;
+            }
+            if (level == 0) {
+                for (int j = 1; j < sub.size(); j++) {
+                    HPAGraphNode step = sub.get(j);
+                    vectors.add(new Vector(step.x, step.y, step.z));
+                }
+            } else {
+                refine(sub, level - 1, vectors);
+            }
+        }
+    }
+
+    private void register(int depth, HPACluster cluster) {
+        phtrees.get(depth).put(getLower(cluster), getUpper(cluster), cluster);
+        clusters.get(depth).add(cluster);
+        List<List<HPACluster>> regionClusters = regions.get(packXZ(
+                Math.floorDiv(cluster.clusterX - cx, REGION_SIZE), Math.floorDiv(cluster.clusterZ - cz, REGION_SIZE)));
+        while (regionClusters.size() <= depth) {
+            regionClusters.add(new ArrayList<HPACluster>());
+        }
+        regionClusters.get(depth).add(cluster);
+    }
+
+    /**
+     * Adds regions loaded by {@link HPAGraphStorage}. Their chunks are checked against the saved hashes as they load,
+     * and marked dirty if they changed or have no saved hash.
+     */
+    void restore(Collection<Long> regionKeys, List<HPACluster> restored, Map<Long, Long> hashes) {
+        for (long key : regionKeys) {
+            builtRegions.add(key);
+            pendingRegions.remove(key);
+            regions.put(key, Lists.<List<HPACluster>> newArrayList());
+            int baseX = (int) (key >> 32) * REGION_SIZE + cx, baseZ = (int) key * REGION_SIZE + cz;
+            for (int chunkX = baseX >> 4; chunkX <= (baseX + REGION_SIZE - 1) >> 4; chunkX++) {
+                for (int chunkZ = baseZ >> 4; chunkZ <= (baseZ + REGION_SIZE - 1) >> 4; chunkZ++) {
+                    long chunk = packXZ(chunkX, chunkZ);
+                    unverifiedChunks.put(chunk, hashes.get(chunk));
+                }
+            }
+        }
+        for (HPACluster cluster : restored) {
+            register(cluster.level, cluster);
+        }
+        for (long chunk : Lists.newArrayList(unverifiedChunks.keySet())) {
+            int chunkX = (int) (chunk >> 32), chunkZ = (int) chunk;
+            if (blockSource.getWorld().isChunkLoaded(chunkX, chunkZ)) {
+                verifyChunk(chunkX, chunkZ);
+            }
+        }
+    }
+
+    /**
+     * Sets the pool used to build clusters in parallel, or <code>null</code> to build them on the calling thread.
+     */
+    public void setForkJoinPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Recomputes the entrances and edges of dirty clusters and their neighbours, then re-abstracts the higher level
+     * clusters containing them. Clusters that were not walkable before are created if they now are.
+     */
+    public void updateDirtyClusters() {
+        if (dirtyClusters.isEmpty())
+            return;
+        Set<HPACluster> changed = Sets.newLinkedHashSet();
+        for (long key : dirtyClusters) {
+            int x = BlockKeyedNode.unpackX(key), y = BlockKeyedNode.unpackY(key), z = BlockKeyedNode.unpackZ(key);
+            if (!isRegionBuilt(x, z))
+                continue;
+            HPACluster cluster = getCluster(0, x, y, z);
+            if (cluster == null) {
+                cluster = new HPACluster(this, 0, BASE_CLUSTER_SIZE, x, y, z);
+                if (!cluster.hasWalkableNodes())
+                    continue;
+                register(0, cluster);
+            }
+            changed.add(cluster);
+        }
+        dirtyClusters.clear();
+        for (HPACluster cluster : changed) {
+            cluster.clear();
+        }
+        Set<HPACluster> touched = Sets.newLinkedHashSet(changed);
+        Set<HPACluster> connected = Sets.newHashSet();
+        for (HPACluster cluster : changed) {
+            for (Direction direction : Direction.values()) {
+                int dx = direction == Direction.EAST ? 1 : direction == Direction.WEST ? -1 : 0;
+                int dz = direction == Direction.NORTH ? 1 : direction == Direction.SOUTH ? -1 : 0;
+                // entrances may step up or down a block, as when the region was built
+                for (int dy = -1; dy <= 1; dy++) {
+                    HPACluster neighbour = getCluster(0, cluster.clusterX + dx * BASE_CLUSTER_SIZE,
+                            cluster.clusterY + dy, cluster.clusterZ + dz * BASE_CLUSTER_SIZE);
+                    // entrances between two changed clusters are only added from one side
+                    if (neighbour == null || connected.contains(neighbour))
+                        continue;
+                    cluster.connect(neighbour, direction);
+                    touched.add(neighbour);
+                }
+            }
+            connected.add(cluster);
+        }
+        for (HPACluster cluster : touched) {
+            cluster.connectIntra();
+        }
+        for (int depth = 1; depth <= MAX_DEPTH; depth++) {
+            int clusterSize = BASE_CLUSTER_SIZE << depth;
+            Set<HPACluster> parents = Sets.newLinkedHashSet();
+            for (HPACluster child : touched) {
+                HPACluster parent = getCluster(depth, child.clusterX, child.clusterY, child.clusterZ);
+                if (parent == null) {
+                    parent = new HPACluster(this, depth, clusterSize,
+                            Math.floorDiv(child.clusterX - cx, clusterSize) * clusterSize + cx, child.clusterY,
+                            Math.floorDiv(child.clusterZ - cz, clusterSize) * clusterSize + cz);
+                    register(depth, parent);
+                }
+                parents.add(parent);
+            }
+            for (HPACluster parent : parents) {
+                parent.clear();
+            }
+            for (HPACluster parent : parents) {
+                parent.buildFrom(Lists.newArrayList(
+                        phtrees.get(depth - 1).queryInclude(getLower(parent), getUpper(parent))));
+            }
+            touched = parents;
+        }
+    }
+
+    private void verifyChunk(int chunkX, int chunkZ) {
+        long key = packXZ(chunkX, chunkZ);
+        if (!unverifiedChunks.containsKey(key))
+            return;
+        Long expected = unverifiedChunks.remove(key);
+        long hash = hashChunk(chunkX, chunkZ);
+        if (expected != null && expected == hash) {
+            chunkHashes.put(key, hash);
+        } else {
+            chunkChanged(chunkX, chunkZ);
+        }
+    }
+
     public boolean walkable(int x, int y, int z) {
-        if (y == 0) {
+        WalkableSnapshot snapshot = this.snapshot;
+        if (snapshot != null && snapshot.contains(x, y, z))
+            return snapshot.isWalkable(x, y, z);
+        if (!SpigotUtil.checkYSafe(y - 1, blockSource.getWorld())
+                || !SpigotUtil.checkYSafe(y + 1, blockSource.getWorld()))
             return false;
+        return BlockFlags.canStandOn(blockSource.getBlockFlags(x, y - 1, z))
+                && BlockFlags.canStandIn(blockSource.getBlockFlags(x, y, z))
+                && BlockFlags.canStandIn(blockSource.getBlockFlags(x, y + 1, z));
+    }
+
+    private static class RangeAction extends RecursiveAction {
+        private final IntConsumer action;
+        private final int from, to;
+
+        private RangeAction(IntConsumer action, int from, int to) {
+            this.action = action;
+            this.from = from;
+            this.to = to;
         }
-        return MinecraftBlockExaminer.canStandOn(blockSource.getWorld().getBlockAt(x, y - 1, z));
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                action.accept(from);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new RangeAction(action, from, mid), new RangeAction(action, mid, to));
+        }
+    }
+
+    /**
+     * The walkability of every position in a region, read once so that it can be queried from other threads.
+     */
+    private class WalkableSnapshot {
+        private final int height;
+        private final int minY;
+        private final BitSet walkable;
+        private final int x, z;
+
+        private WalkableSnapshot(int x, int minY, int z, int height) {
+            this.x = x;
+            this.minY = minY;
+            this.z = z;
+            this.height = height;
+            this.walkable = new BitSet(REGION_SIZE * REGION_SIZE * height);
+            int[] column = new int[height + 2];
+            for (int dx = 0; dx < REGION_SIZE; dx++) {
+                for (int dz = 0; dz < REGION_SIZE; dz++) {
+                    for (int dy = 0; dy < column.length; dy++) {
+                        column[dy] = blockSource.getBlockFlags(x + dx, minY + dy - 1, z + dz);
+                    }
+                    for (int dy = 0; dy < height; dy++) {
+                        if (BlockFlags.canStandOn(column[dy]) && BlockFlags.canStandIn(column[dy + 1])
+                                && BlockFlags.canStandIn(column[dy + 2])) {
+                            walkable.set(index(dx, dy, dz));
+                        }
+                    }
+                }
+            }
+        }
+
+        private boolean contains(int bx, int by, int bz) {
+            return bx >= x && bz >= z && by >= minY && bx < x + REGION_SIZE && bz < z + REGION_SIZE
+                    && by < minY + height;
+        }
+
+        private int index(int dx, int dy, int dz) {
+            return (dy * REGION_SIZE + dz) * REGION_SIZE + dx;
+        }
+
+        private boolean isWalkable(int bx, int by, int bz) {
+            return walkable.get(index(bx - x, by - minY, bz - z));
+        }
+    }
+
+    private static long[] getLower(HPACluster cluster) {
+        return new long[] { cluster.clusterX, cluster.clusterY, cluster.clusterZ };
+    }
+
+    private static long[] getUpper(HPACluster cluster) {
+        return new long[] { cluster.clusterX + cluster.getClusterSize() - 1, cluster.clusterY,
+                cluster.clusterZ + cluster.getClusterSize() - 1 };
+    }
+
+    static long packXZ(int x, int z) {
+        return (long) x << 32 | (z & 0xFFFFFFFFL);
     }
 
-    private static int BASE_CLUSTER_SIZE = (int) (2 * Math.pow(2, 3));
-    private static int MAX_CLUSTER_SIZE = (int) (2 * Math.pow(2, 5));
-    private static int MAX_DEPTH = 3;
-}
\ No newline at end of file
+    static final int BASE_CLUSTER_SIZE = 16;
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    static final int MAX_DEPTH = 2;
+    static final int REGION_SIZE = BASE_CLUSTER_SIZE << MAX_DEPTH;
+}
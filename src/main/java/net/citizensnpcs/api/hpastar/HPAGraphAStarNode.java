@@ -18,12 +18,12 @@ public class HPAGraphAStarNode extends ReversableAStarNode {
             return false;
         }
         HPAGraphAStarNode other = (HPAGraphAStarNode) obj;
-        return node.x == other.node.x && node.z == other.node.z;
+        return node.equals(other.node);
     }
 
     @Override
     public int hashCode() {
-        return 31 * (31 + node.x) + node.z;
+        return node.hashCode();
     }
 
     @Override
@@ -2,9 +2,11 @@ package net.citizensnpcs.api.hpastar;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 
 public class HPAGraphNode {
+    HPACluster cluster;
     final List<List<HPAGraphEdge>> edges = new ArrayList<List<HPAGraphEdge>>();
     final int x;
     final int y;
@@ -27,6 +29,44 @@ public class HPAGraphNode {
         to.edges.get(level).add(new HPAGraphEdge(to, this, type, weight));
     }
 
+    /**
+     * Removes all edges to and from this node at the given level.
+     */
+    public void disconnect(int level) {
+        disconnect(level, null);
+    }
+
+    /**
+     * Removes the edges of the given type to and from this node at the given level, or all edges if the type is null.
+     */
+    public void disconnect(int level, HPAGraphEdge.EdgeType type) {
+        if (level >= edges.size())
+            return;
+        for (Iterator<HPAGraphEdge> itr = edges.get(level).iterator(); itr.hasNext();) {
+            HPAGraphEdge edge = itr.next();
+            if (type != null && edge.type != type)
+                continue;
+            itr.remove();
+            if (level >= edge.to.edges.size())
+                continue;
+            for (Iterator<HPAGraphEdge> reverse = edge.to.edges.get(level).iterator(); reverse.hasNext();) {
+                HPAGraphEdge other = reverse.next();
+                if (other.to == this && other.type == edge.type) {
+                    reverse.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all edges to and from this node at every level.
+     */
+    public void disconnectAll() {
+        for (int level = 0; level < edges.size(); level++) {
+            disconnect(level);
+        }
+    }
+
     public double distance(HPAGraphNode dest) {
         return Math.sqrt(Math.pow(x - dest.x, 2) + Math.pow(y - dest.y, 2) + Math.pow(z - dest.z, 2));
     }
@@ -46,6 +86,18 @@ public class HPAGraphNode {
         return true;
     }
 
+    /**
+     * Returns the edge from this node to the given node at the given level, or null if there is none.
+     */
+    public HPAGraphEdge getEdge(int level, HPAGraphNode to) {
+        for (HPAGraphEdge edge : getEdges(level)) {
+            if (edge.to == to) {
+                return edge;
+            }
+        }
+        return null;
+    }
+
     public List<HPAGraphEdge> getEdges(int level) {
         if (level >= edges.size()) {
             return Collections.emptyList();
@@ -62,4 +114,4 @@ public class HPAGraphNode {
     public String toString() {
         return x + "," + y + "," + z;
     }
-}
\ No newline at end of file
+}
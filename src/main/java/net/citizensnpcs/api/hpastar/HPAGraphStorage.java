@@ -0,0 +1,296 @@
+package net.citizensnpcs.api.hpastar;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+
+/**
+ * Saves and loads the clusters, nodes and edges of a {@link HPAGraph} as flat arrays in a binary file. Files are loaded
+ * through a memory mapped buffer.
+ *
+ * The walkability hash of every chunk is saved as well. Chunks that changed while the graph was not loaded are found
+ * as they load and updated using {@link HPAGraph#updateDirtyClusters()}, instead of rebuilding the whole graph.
+ */
+public class HPAGraphStorage {
+    private final File file;
+
+    public HPAGraphStorage(File file) {
+        this.file = file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Loads the saved graph into an empty graph with the same world and origin.
+     *
+     * @return Whether the load was successful
+     */
+    public boolean load(HPAGraph graph) {
+        Preconditions.checkState(graph.builtRegions.isEmpty(), "graph already built");
+        if (!file.exists())
+            return false;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+                return false;
+            UUID world = new UUID(buffer.getLong(), buffer.getLong());
+            if (!world.equals(graph.getWorld().getUID()) || buffer.getInt() != graph.cx || buffer.getInt() != graph.cy
+                    || buffer.getInt() != graph.cz || buffer.getInt() != HPAGraph.BASE_CLUSTER_SIZE
+                    || buffer.getInt() != HPAGraph.MAX_DEPTH)
+                return false;
+
+            long[] regions = readLongs(buffer, buffer.getInt());
+            int chunkCount = buffer.getInt();
+            long[] chunks = readLongs(buffer, chunkCount);
+            long[] hashes = readLongs(buffer, chunkCount);
+            Map<Long, Long> chunkHashes = Maps.newHashMap();
+            for (int i = 0; i < chunkCount; i++) {
+                chunkHashes.put(chunks[i], hashes[i]);
+            }
+
+            int nodeCount = buffer.getInt();
+            int[] nodeX = readInts(buffer, nodeCount);
+            int[] nodeY = readInts(buffer, nodeCount);
+            int[] nodeZ = readInts(buffer, nodeCount);
+            int[] owners = readInts(buffer, nodeCount);
+            HPAGraphNode[] nodes = new HPAGraphNode[nodeCount];
+            for (int i = 0; i < nodeCount; i++) {
+                nodes[i] = new HPAGraphNode(nodeX[i], nodeY[i], nodeZ[i]);
+            }
+
+            int clusterCount = buffer.getInt();
+            byte[] levels = readBytes(buffer, clusterCount);
+            int[] clusterX = readInts(buffer, clusterCount);
+            int[] clusterY = readInts(buffer, clusterCount);
+            int[] clusterZ = readInts(buffer, clusterCount);
+            int[] offsets = readInts(buffer, clusterCount + 1);
+            int[] clusterNodes = readInts(buffer, offsets[clusterCount]);
+            List<HPACluster> clusters = Lists.newArrayListWithCapacity(clusterCount);
+            for (int i = 0; i < clusterCount; i++) {
+                if (levels[i] < 0 || levels[i] > HPAGraph.MAX_DEPTH)
+                    return false;
+                HPACluster cluster = new HPACluster(graph, levels[i], HPAGraph.BASE_CLUSTER_SIZE << levels[i],
+                        clusterX[i], clusterY[i], clusterZ[i]);
+                for (int j = offsets[i]; j < offsets[i + 1]; j++) {
+                    cluster.nodes.add(nodes[clusterNodes[j]]);
+                }
+                clusters.add(cluster);
+            }
+            for (int i = 0; i < nodeCount; i++) {
+                if (owners[i] != -1) {
+                    nodes[i].cluster = clusters.get(owners[i]);
+                }
+            }
+
+            for (int level = 0; level <= HPAGraph.MAX_DEPTH; level++) {
+                int edgeCount = buffer.getInt();
+                int[] from = readInts(buffer, edgeCount);
+                int[] to = readInts(buffer, edgeCount);
+                float[] weights = readFloats(buffer, edgeCount);
+                byte[] types = readBytes(buffer, edgeCount);
+                for (int i = 0; i < edgeCount; i++) {
+                    nodes[from[i]].connect(level, nodes[to[i]], HPAGraphEdge.EdgeType.values()[types[i]], weights[i]);
+                }
+            }
+
+            List<Long> regionKeys = Lists.newArrayListWithCapacity(regions.length);
+            for (long region : regions) {
+                regionKeys.add(region);
+            }
+            graph.restore(regionKeys, clusters, chunkHashes);
+        } catch (IOException | BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException ex) {
+            ex.printStackTrace();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Saves the built regions of the graph, hashing any loaded chunks whose hash is not known. The graph is written to
+     * a temporary file which then replaces the saved file, so a failed save keeps the previous graph.
+     *
+     * @return Whether the save was successful
+     */
+    public boolean save(HPAGraph graph) {
+        List<HPACluster> clusters = Lists.newArrayList();
+        for (List<HPACluster> level : graph.clusters) {
+            clusters.addAll(level);
+        }
+        Map<HPACluster, Integer> clusterIndex = new IdentityHashMap<HPACluster, Integer>();
+        Map<HPAGraphNode, Integer> nodeIndex = new IdentityHashMap<HPAGraphNode, Integer>();
+        List<HPAGraphNode> nodes = Lists.newArrayList();
+        for (HPACluster cluster : clusters) {
+            clusterIndex.put(cluster, clusterIndex.size());
+            for (HPAGraphNode node : cluster.nodes) {
+                if (!nodeIndex.containsKey(node)) {
+                    nodeIndex.put(node, nodes.size());
+                    nodes.add(node);
+                }
+            }
+        }
+        Map<Long, Long> hashes = graph.getChunkHashes();
+        try {
+            Files.createParentDirs(file);
+            File temporaryFile = File.createTempFile(file.getName(), null, file.getParentFile());
+            temporaryFile.deleteOnExit();
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temporaryFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                UUID world = graph.getWorld().getUID();
+                out.writeLong(world.getMostSignificantBits());
+                out.writeLong(world.getLeastSignificantBits());
+                out.writeInt(graph.cx);
+                out.writeInt(graph.cy);
+                out.writeInt(graph.cz);
+                out.writeInt(HPAGraph.BASE_CLUSTER_SIZE);
+                out.writeInt(HPAGraph.MAX_DEPTH);
+
+                out.writeInt(graph.builtRegions.size());
+                for (long region : graph.builtRegions) {
+                    out.writeLong(region);
+                }
+                out.writeInt(hashes.size());
+                for (long chunk : hashes.keySet()) {
+                    out.writeLong(chunk);
+                }
+                for (long hash : hashes.values()) {
+                    out.writeLong(hash);
+                }
+
+                out.writeInt(nodes.size());
+                for (HPAGraphNode node : nodes) {
+                    out.writeInt(node.x);
+                }
+                for (HPAGraphNode node : nodes) {
+                    out.writeInt(node.y);
+                }
+                for (HPAGraphNode node : nodes) {
+                    out.writeInt(node.z);
+                }
+                for (HPAGraphNode node : nodes) {
+                    Integer owner = node.cluster == null ? null : clusterIndex.get(node.cluster);
+                    out.writeInt(owner == null ? -1 : owner);
+                }
+
+                out.writeInt(clusters.size());
+                for (HPACluster cluster : clusters) {
+                    out.writeByte(cluster.level);
+                }
+                for (HPACluster cluster : clusters) {
+                    out.writeInt(cluster.clusterX);
+                }
+                for (HPACluster cluster : clusters) {
+                    out.writeInt(cluster.clusterY);
+                }
+                for (HPACluster cluster : clusters) {
+                    out.writeInt(cluster.clusterZ);
+                }
+                int offset = 0;
+                out.writeInt(offset);
+                for (HPACluster cluster : clusters) {
+                    offset += cluster.nodes.size();
+                    out.writeInt(offset);
+                }
+                for (HPACluster cluster : clusters) {
+                    for (HPAGraphNode node : cluster.nodes) {
+                        out.writeInt(nodeIndex.get(node));
+                    }
+                }
+
+                for (int level = 0; level <= HPAGraph.MAX_DEPTH; level++) {
+                    // edges are stored once and connected in both directions when loaded
+                    List<HPAGraphEdge> edges = Lists.newArrayList();
+                    for (int i = 0; i < nodes.size(); i++) {
+                        for (HPAGraphEdge edge : nodes.get(i).getEdges(level)) {
+                            Integer to = nodeIndex.get(edge.to);
+                            if (to != null && i < to) {
+                                edges.add(edge);
+                            }
+                        }
+                    }
+                    out.writeInt(edges.size());
+                    for (HPAGraphEdge edge : edges) {
+                        out.writeInt(nodeIndex.get(edge.from));
+                    }
+                    for (HPAGraphEdge edge : edges) {
+                        out.writeInt(nodeIndex.get(edge.to));
+                    }
+                    for (HPAGraphEdge edge : edges) {
+                        out.writeFloat(edge.weight);
+                    }
+                    for (HPAGraphEdge edge : edges) {
+                        out.writeByte(edge.type.ordinal());
+                    }
+                }
+            }
+            try {
+                java.nio.file.Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                java.nio.file.Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                temporaryFile.delete();
+            }
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "HPAGraphStorage {file=" + file + "}";
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer, int length) {
+        byte[] array = new byte[length];
+        buffer.get(array);
+        return array;
+    }
+
+    private static float[] readFloats(ByteBuffer buffer, int length) {
+        float[] array = new float[length];
+        buffer.asFloatBuffer().get(array);
+        buffer.position(buffer.position() + length * 4);
+        return array;
+    }
+
+    private static int[] readInts(ByteBuffer buffer, int length) {
+        int[] array = new int[length];
+        buffer.asIntBuffer().get(array);
+        buffer.position(buffer.position() + length * 4);
+        return array;
+    }
+
+    private static long[] readLongs(ByteBuffer buffer, int length) {
+        long[] array = new long[length];
+        buffer.asLongBuffer().get(array);
+        buffer.position(buffer.position() + length * 8);
+        return array;
+    }
+
+    private static final int MAGIC = 0x48504147;
+    private static final int VERSION = 1;
+}
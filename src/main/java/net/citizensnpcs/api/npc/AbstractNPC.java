@@ -77,6 +77,7 @@ public abstract class AbstractNPC implements NPC {
     private final NPCRegistry registry;
     private final List<String> removedTraits = Lists.newArrayList();
     private final List<Runnable> runnables = Lists.newArrayList();
+    private final NPCTickScheduler scheduler = new NPCTickScheduler(this);
     private final SpeechController speechController = new SimpleSpeechController(this);
     protected final Map<Class<? extends Trait>, Trait> traits = Maps.newHashMap();
     private final UUID uuid;
@@ -124,6 +125,7 @@ public abstract class AbstractNPC implements NPC {
         if (trait.isRunImplemented()) {
             if (replaced != null) {
                 runnables.remove(replaced);
+                scheduler.remove(replaced);
             }
             runnables.add(trait);
         }
@@ -255,6 +257,13 @@ public abstract class AbstractNPC implements NPC {
         return registry;
     }
 
+    /**
+     * @return The scheduler deciding which traits and goals run each tick, which also records their tick costs
+     */
+    public NPCTickScheduler getTickScheduler() {
+        return scheduler;
+    }
+
     @Override
     @Deprecated
     public <T extends Trait> T getTrait(Class<T> clazz) {
@@ -355,6 +364,7 @@ public abstract class AbstractNPC implements NPC {
             removedTraits.add(trait.getName());
             if (trait.isRunImplemented()) {
                 runnables.remove(trait);
+                scheduler.remove(trait);
             }
             HandlerList.unregisterAll(trait);
             trait.onRemove();
@@ -494,11 +504,17 @@ public abstract class AbstractNPC implements NPC {
     }
 
     public void update() {
+        scheduler.tick();
         for (int i = 0; i < runnables.size(); ++i) {
-            runnables.get(i).run();
+            Runnable runnable = runnables.get(i);
+            if (runnable instanceof Trait) {
+                scheduler.run(runnable, ((Trait) runnable).getTickPeriod(), true);
+            } else {
+                scheduler.run(runnable, 1, false);
+            }
         }
         if (isSpawned()) {
-            goalController.run();
+            scheduler.run(goalController, goalController.getTickPeriod(), true);
         }
     }
 
@@ -0,0 +1,214 @@
+package net.citizensnpcs.api.npc;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Predicate;
+
+import org.bukkit.Location;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import net.citizensnpcs.api.CitizensAPI;
+
+/**
+ * A uniform grid of the positions of spawned {@link NPC}s in each world, used to find nearby NPCs without scanning the
+ * entities of the world. Positions are read once per {@link #update()}, which the index returned by
+ * {@link CitizensAPI#getNPCSpatialIndex()} runs every tick, so query results can be up to one tick old.
+ *
+ * Queries must be made from the main thread.
+ */
+public class NPCSpatialIndex {
+    private final double cellSize;
+    private final List<Entry> entries = Lists.newArrayList();
+    private final Map<UUID, Map<Long, List<Entry>>> grids = Maps.newHashMap();
+    private final Iterable<NPCRegistry> registries;
+    private int size;
+
+    public NPCSpatialIndex(Iterable<NPCRegistry> registries) {
+        this(registries, 16);
+    }
+
+    /**
+     * @param registries
+     *            The registries to index the spawned NPCs of
+     * @param cellSize
+     *            The width of each grid cell, in blocks
+     */
+    public NPCSpatialIndex(Iterable<NPCRegistry> registries, double cellSize) {
+        Preconditions.checkArgument(cellSize > 0, "cell size must be positive");
+        this.registries = registries;
+        this.cellSize = cellSize;
+    }
+
+    private void collect(Location location, double radius, Predicate<NPC> filter, List<Entry> out) {
+        Map<Long, List<Entry>> grid = grids.get(location.getWorld().getUID());
+        if (grid == null)
+            return;
+        double x = location.getX(), y = location.getY(), z = location.getZ();
+        int minX = toCell(x - radius), maxX = toCell(x + radius);
+        int minZ = toCell(z - radius), maxZ = toCell(z + radius);
+        double radiusSquared = radius * radius;
+        if ((long) (maxX - minX + 1) * (maxZ - minZ + 1) > grid.size()) {
+            // the query covers more cells than are occupied
+            for (List<Entry> cell : grid.values()) {
+                collect(cell, x, y, z, radiusSquared, filter, out);
+            }
+            return;
+        }
+        for (int cx = minX; cx <= maxX; cx++) {
+            for (int cz = minZ; cz <= maxZ; cz++) {
+                List<Entry> cell = grid.get(pack(cx, cz));
+                if (cell != null) {
+                    collect(cell, x, y, z, radiusSquared, filter, out);
+                }
+            }
+        }
+    }
+
+    private void collect(List<Entry> cell, double x, double y, double z, double radiusSquared,
+            Predicate<NPC> filter, List<Entry> out) {
+        for (int i = 0; i < cell.size(); i++) {
+            Entry entry = cell.get(i);
+            double dx = entry.x - x, dy = entry.y - y, dz = entry.z - z;
+            double distanceSquared = dx * dx + dy * dy + dz * dz;
+            if (distanceSquared > radiusSquared || (filter != null && !filter.test(entry.npc)))
+                continue;
+            entry.distanceSquared = distanceSquared;
+            out.add(entry);
+        }
+    }
+
+    /**
+     * @see #getNearby(Location, double, Predicate)
+     */
+    public List<NPC> getNearby(Location location, double radius) {
+        return getNearby(location, radius, null);
+    }
+
+    /**
+     * Returns the spawned NPCs within the given radius of a location, in no particular order.
+     *
+     * @param location
+     *            The centre of the search
+     * @param radius
+     *            The radius in blocks
+     * @param filter
+     *            An optional filter that NPCs must match, or <code>null</code>
+     * @return The NPCs found
+     */
+    public List<NPC> getNearby(Location location, double radius, Predicate<NPC> filter) {
+        List<Entry> found = Lists.newArrayList();
+        collect(location, radius, filter, found);
+        List<NPC> npcs = Lists.newArrayListWithCapacity(found.size());
+        for (Entry entry : found) {
+            npcs.add(entry.npc);
+        }
+        return npcs;
+    }
+
+    /**
+     * Returns up to the given number of spawned NPCs within the given radius of a location, nearest first.
+     *
+     * @param location
+     *            The centre of the search
+     * @param count
+     *            The maximum number of NPCs to return
+     * @param radius
+     *            The radius in blocks
+     * @param filter
+     *            An optional filter that NPCs must match, or <code>null</code>
+     * @return The NPCs found
+     */
+    public List<NPC> getNearest(Location location, int count, double radius, Predicate<NPC> filter) {
+        List<Entry> found = Lists.newArrayList();
+        collect(location, radius, filter, found);
+        Collections.sort(found, NEAREST_FIRST);
+        List<NPC> npcs = Lists.newArrayListWithCapacity(Math.min(count, found.size()));
+        for (int i = 0; i < found.size() && i < count; i++) {
+            npcs.add(found.get(i).npc);
+        }
+        return npcs;
+    }
+
+    /**
+     * @return The number of NPCs indexed by the last update
+     */
+    public int size() {
+        return size;
+    }
+
+    private int toCell(double coordinate) {
+        return (int) Math.floor(coordinate / cellSize);
+    }
+
+    /**
+     * Reads the positions of all spawned NPCs again.
+     */
+    public void update() {
+        for (Map<Long, List<Entry>> grid : grids.values()) {
+            for (List<Entry> cell : grid.values()) {
+                cell.clear();
+            }
+        }
+        size = 0;
+        for (NPCRegistry registry : registries) {
+            for (NPC npc : registry) {
+                if (!npc.isSpawned())
+                    continue;
+                Location location = npc.getEntity().getLocation(LOCATION_CACHE);
+                Entry entry;
+                if (size < entries.size()) {
+                    entry = entries.get(size);
+                } else {
+                    entries.add(entry = new Entry());
+                }
+                size++;
+                entry.npc = npc;
+                entry.x = location.getX();
+                entry.y = location.getY();
+                entry.z = location.getZ();
+                UUID world = location.getWorld().getUID();
+                Map<Long, List<Entry>> grid = grids.get(world);
+                if (grid == null) {
+                    grids.put(world, grid = Maps.newHashMap());
+                }
+                long key = pack(toCell(entry.x), toCell(entry.z));
+                List<Entry> cell = grid.get(key);
+                if (cell == null) {
+                    grid.put(key, cell = Lists.newArrayList());
+                }
+                cell.add(entry);
+            }
+        }
+        if (entries.size() > size) {
+            entries.subList(size, entries.size()).clear();
+        }
+        for (Map<Long, List<Entry>> grid : grids.values()) {
+            grid.values().removeIf(List::isEmpty);
+        }
+        grids.values().removeIf(Map::isEmpty);
+    }
+
+    private static class Entry {
+        private double distanceSquared;
+        private NPC npc;
+        private double x, y, z;
+    }
+
+    private static long pack(int x, int z) {
+        return ((long) x << 32) | (z & 0xFFFFFFFFL);
+    }
+
+    private static final Location LOCATION_CACHE = new Location(null, 0, 0, 0);
+    private static final Comparator<Entry> NEAREST_FIRST = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry o1, Entry o2) {
+            return Double.compare(o1.distanceSquared, o2.distanceSquared);
+        }
+    };
+}
@@ -0,0 +1,204 @@
+package net.citizensnpcs.api.npc;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+
+import com.google.common.base.Preconditions;
+
+import net.citizensnpcs.api.CitizensAPI;
+import net.citizensnpcs.api.ai.GoalController;
+import net.citizensnpcs.api.trait.Trait;
+
+/**
+ * Decides which of an {@link NPC}'s {@link Trait}s and its {@link GoalController} run each tick. A {@link Trait} or
+ * goal controller with a tick period of N runs every N ticks of {@link CitizensAPI#getCurrentTick()}, offset by the
+ * NPC's id so that NPCs sharing a period are spread evenly over the ticks instead of all running on the same one.
+ *
+ * If a level of detail distance is set with {@link #setLodDistance(double)}, periods above 1 are multiplied the further
+ * an NPC is from the nearest player: by 2 beyond the distance, by 4 beyond twice the distance and by 8 beyond four
+ * times the distance or if there are no players in the world. Runnables with a period of 1 keep running every tick.
+ *
+ * The time spent in each runnable is recorded while {@link #setMetricsEnabled(boolean)} is on.
+ */
+public class NPCTickScheduler {
+    private final Map<Object, TickCost> costs = new IdentityHashMap<Object, TickCost>();
+    private final LongSupplier currentTick;
+    private int lodMultiplier = 1;
+    private final NPC npc;
+    private final TickCost total = new TickCost();
+
+    public NPCTickScheduler(NPC npc) {
+        this(npc, CitizensAPI::getCurrentTick);
+    }
+
+    NPCTickScheduler(NPC npc, LongSupplier currentTick) {
+        this.npc = npc;
+        this.currentTick = currentTick;
+    }
+
+    /**
+     * @return The factor periods are currently multiplied by, depending on the distance to the nearest player
+     */
+    public int getLodMultiplier() {
+        return lodMultiplier;
+    }
+
+    /**
+     * @return The time spent in the given trait, runnable or goal controller, or null if it has not run while metrics
+     *         were enabled
+     */
+    public TickCost getTickCost(Object runnable) {
+        return costs.get(runnable);
+    }
+
+    /**
+     * @return The total time spent in the runnables of the NPC
+     */
+    public TickCost getTotalTickCost() {
+        return total;
+    }
+
+    private boolean isDue(int period, long offset) {
+        return period <= 1 || (currentTick.getAsLong() + offset) % period == 0;
+    }
+
+    /**
+     * Forgets the recorded cost of a runnable that has been removed from the NPC.
+     */
+    public void remove(Object runnable) {
+        costs.remove(runnable);
+    }
+
+    /**
+     * Runs the given runnable if it is due this tick.
+     *
+     * @param runnable
+     *            The runnable
+     * @param period
+     *            The number of ticks between runs
+     * @param lod
+     *            Whether the period is multiplied by the level of detail if it is above 1
+     */
+    public void run(Runnable runnable, int period, boolean lod) {
+        if (!isDue(lod && period > 1 ? period * lodMultiplier : period, npc.getId()))
+            return;
+        if (!metricsEnabled) {
+            runnable.run();
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            runnable.run();
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            TickCost cost = costs.get(runnable);
+            if (cost == null) {
+                costs.put(runnable, cost = new TickCost());
+            }
+            cost.record(elapsed);
+            total.record(elapsed);
+        }
+    }
+
+    /**
+     * Updates the level of detail if needed. Called once per tick before running the NPC's runnables.
+     */
+    public void tick() {
+        if (lodDistance <= 0) {
+            lodMultiplier = 1;
+            return;
+        }
+        if (!isDue(LOD_UPDATE_TICKS, npc.getId()))
+            return;
+        if (!npc.isSpawned()) {
+            lodMultiplier = 1;
+            return;
+        }
+        Location location = npc.getEntity().getLocation(LOCATION_CACHE);
+        double nearest = Double.MAX_VALUE;
+        for (Player player : location.getWorld().getPlayers()) {
+            if (CitizensAPI.getNPCRegistry().isNPC(player))
+                continue;
+            nearest = Math.min(nearest, player.getLocation(PLAYER_LOCATION_CACHE).distanceSquared(location));
+        }
+        double distance = lodDistance * lodDistance;
+        lodMultiplier = nearest <= distance ? 1
+                : nearest <= 4 * distance ? 2 : nearest <= 16 * distance ? 4 : MAX_LOD_MULTIPLIER;
+    }
+
+    /**
+     * The time spent running a trait, runnable or goal controller.
+     */
+    public static class TickCost {
+        private long calls;
+        private long lastNanos;
+        private long totalNanos;
+
+        public double getAverageNanos() {
+            return calls == 0 ? 0 : (double) totalNanos / calls;
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        public long getLastNanos() {
+            return lastNanos;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        private void record(long nanos) {
+            calls++;
+            lastNanos = nanos;
+            totalNanos += nanos;
+        }
+
+        @Override
+        public String toString() {
+            return "TickCost {calls=" + calls + ", averageNanos=" + getAverageNanos() + "}";
+        }
+    }
+
+    /**
+     * @see #setLodDistance(double)
+     */
+    public static double getLodDistance() {
+        return lodDistance;
+    }
+
+    public static boolean isMetricsEnabled() {
+        return metricsEnabled;
+    }
+
+    /**
+     * Sets the distance to the nearest player beyond which NPCs run their traits and goals less often.
+     *
+     * @param distance
+     *            The distance in blocks, or 0 to disable
+     */
+    public static void setLodDistance(double distance) {
+        Preconditions.checkArgument(distance >= 0, "distance cannot be negative");
+        lodDistance = distance;
+    }
+
+    /**
+     * Sets whether the time spent in each runnable is recorded.
+     */
+    public static void setMetricsEnabled(boolean enabled) {
+        metricsEnabled = enabled;
+    }
+
+    private static final Location LOCATION_CACHE = new Location(null, 0, 0, 0);
+    private static final int LOD_UPDATE_TICKS = 20;
+    private static double lodDistance;
+    private static final int MAX_LOD_MULTIPLIER = 8;
+    private static volatile boolean metricsEnabled;
+    private static final Location PLAYER_LOCATION_CACHE = new Location(null, 0, 0, 0);
+}
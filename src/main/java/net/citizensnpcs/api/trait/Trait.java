@@ -37,6 +37,17 @@ public abstract class Trait implements Listener, Runnable {
         return npc;
     }
 
+    /**
+     * Returns how often {@link #run()} is called, in ticks. Traits that do not need to run every tick can return a
+     * higher period to spread their work over several ticks.
+     *
+     * @see net.citizensnpcs.api.npc.NPCTickScheduler
+     * @return The tick period
+     */
+    public int getTickPeriod() {
+        return 1;
+    }
+
     public boolean isRunImplemented() {
         run();
         return runImplemented;
@@ -22,6 +22,20 @@ public class SpigotUtil {
         return isUsing1_13API() ? 256 : 64;
     }
 
+    /**
+     * Returns the lowest block y coordinate of the world, which is below zero from 1.17 onwards.
+     */
+    public static int getMinHeight(World world) {
+        if (!SUPPORT_WORLD_HEIGHT || world == null)
+            return 0;
+        try {
+            return world.getMinHeight();
+        } catch (Throwable t) {
+            SUPPORT_WORLD_HEIGHT = false;
+            return 0;
+        }
+    }
+
     private static int[] getVersion() {
         if (BUKKIT_VERSION == null) {
             String version = Bukkit.getVersion();
@@ -32,6 +32,30 @@ public class SimpleGoalControllerTest {
         assertThat(two.counter, not(0));
     }
 
+    @Test
+    public void scheduledGoalWaitsForInterval() {
+        NeverExecute woken = new NeverExecute(5);
+        NeverExecute waiting = new NeverExecute(5);
+        controller.addGoal(woken, 1);
+        controller.addGoal(waiting, 1);
+        // both goals are checked on runs 1 and 6
+        for (int i = 0; i < 7; i++) {
+            controller.run();
+        }
+        assertThat(woken.checks, is(2));
+        assertThat(waiting.checks, is(2));
+        controller.wake(woken);
+        controller.run();
+        assertThat(woken.checks, is(3));
+        assertThat(waiting.checks, is(2));
+        // the woken goal waits a full interval from run 8, the other is due again on run 11
+        for (int i = 8; i < 11; i++) {
+            controller.run();
+        }
+        assertThat(woken.checks, is(3));
+        assertThat(waiting.checks, is(3));
+    }
+
     @Before
     public void setUp() {
         controller = new SimpleGoalController();
@@ -53,6 +77,34 @@ public class SimpleGoalControllerTest {
         }
     }
 
+    public static class NeverExecute implements ScheduledGoal {
+        int checks;
+        final int interval;
+
+        public NeverExecute(int interval) {
+            this.interval = interval;
+        }
+
+        @Override
+        public int getReevaluationInterval() {
+            return interval;
+        }
+
+        @Override
+        public void reset() {
+        }
+
+        @Override
+        public void run(GoalSelector selector) {
+        }
+
+        @Override
+        public boolean shouldExecute(GoalSelector selector) {
+            checks++;
+            return false;
+        }
+    }
+
     public static class ImmediateFinish implements Goal {
         int counter = 0, maxTimes = 1, times = 0;
 
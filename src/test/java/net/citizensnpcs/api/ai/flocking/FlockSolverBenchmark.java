@@ -0,0 +1,73 @@
+package net.citizensnpcs.api.ai.flocking;
+
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures one tick of {@link FlockSolver#solve()} for a 500 NPC flock where every member sees either the whole flock
+ * or a fixed number of neighbours. Run with {@link #main(String[])} from the test classpath.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FlockSolverBenchmark {
+    @Param({ "16", "500" })
+    public int neighbours;
+    private FlockSolver solver;
+
+    @Setup
+    public void setup() {
+        solver = new FlockSolver(Collections.emptyList(), npc -> Collections.emptyList(),
+                new SeparationBehavior(Flocker.LOW_INFLUENCE), new AlignmentBehavior(Flocker.LOW_INFLUENCE),
+                new CohesionBehavior(Flocker.LOW_INFLUENCE));
+        Random random = new Random(0);
+        solver.size = solver.memberCount = SIZE;
+        solver.positions = new double[SIZE * 3];
+        solver.velocities = new double[SIZE * 3];
+        solver.forces = new double[SIZE * 3];
+        for (int i = 0; i < SIZE * 3; i++) {
+            solver.positions[i] = random.nextDouble() * 32;
+            solver.velocities[i] = random.nextDouble() * 0.2 - 0.1;
+        }
+        solver.offsets = new int[SIZE + 1];
+        solver.neighbours = new int[SIZE * neighbours];
+        for (int i = 0; i < SIZE; i++) {
+            solver.offsets[i] = i * neighbours;
+            for (int k = 0; k < neighbours; k++) {
+                solver.neighbours[i * neighbours + k] = neighbours == SIZE ? k : random.nextInt(SIZE);
+            }
+        }
+        solver.offsets[SIZE] = SIZE * neighbours;
+    }
+
+    @Benchmark
+    public double[] solve() {
+        solver.solve();
+        return solver.forces;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(FlockSolverBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    private static final int SIZE = 500;
+}
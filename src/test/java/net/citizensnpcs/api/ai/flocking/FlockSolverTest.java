@@ -0,0 +1,72 @@
+package net.citizensnpcs.api.ai.flocking;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.bukkit.Location;
+import org.bukkit.entity.Entity;
+import org.bukkit.util.Vector;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import net.citizensnpcs.api.npc.NPC;
+
+public class FlockSolverTest {
+    private final Map<NPC, Entity> entities = Maps.newHashMap();
+
+    private NPC createNPC(double x, double y, double z, Vector velocity) {
+        NPC npc = Mockito.mock(NPC.class);
+        Entity entity = Mockito.mock(Entity.class);
+        Mockito.when(npc.isSpawned()).thenReturn(true);
+        Mockito.when(npc.getEntity()).thenReturn(entity);
+        Mockito.when(entity.getLocation()).thenAnswer(invocation -> new Location(null, x, y, z));
+        Mockito.when(entity.getLocation(Mockito.any(Location.class))).thenAnswer(invocation -> {
+            Location location = (Location) invocation.getArguments()[0];
+            location.setX(x);
+            location.setY(y);
+            location.setZ(z);
+            return location;
+        });
+        Mockito.when(entity.getVelocity()).thenAnswer(invocation -> velocity.clone());
+        entities.put(npc, entity);
+        return npc;
+    }
+
+    private Vector getSetVelocity(NPC npc) {
+        ArgumentCaptor<Vector> captor = ArgumentCaptor.forClass(Vector.class);
+        Mockito.verify(entities.get(npc), Mockito.atLeastOnce()).setVelocity(captor.capture());
+        return captor.getValue();
+    }
+
+    @Test
+    public void matchesFlocker() {
+        Random random = new Random(0);
+        List<NPC> npcs = Lists.newArrayList();
+        for (int i = 0; i < 20; i++) {
+            npcs.add(createNPC(random.nextDouble() * 2, 64, random.nextDouble() * 2,
+                    new Vector(random.nextDouble() - 0.5, 0, random.nextDouble() - 0.5)));
+        }
+        NPCFlock flock = npc -> npcs;
+        FlockBehavior[] behaviors = { new SeparationBehavior(Flocker.HIGH_INFLUENCE, 1),
+                new AlignmentBehavior(Flocker.HIGH_INFLUENCE), new CohesionBehavior(Flocker.LOW_INFLUENCE) };
+        List<Vector> expected = Lists.newArrayList();
+        for (NPC npc : npcs) {
+            new Flocker(npc, flock, behaviors).run();
+            expected.add(getSetVelocity(npc));
+        }
+        new FlockSolver(npcs, flock, behaviors).run();
+        for (int i = 0; i < npcs.size(); i++) {
+            Vector actual = getSetVelocity(npcs.get(i));
+            assertEquals(expected.get(i).getX(), actual.getX(), 1e-9);
+            assertEquals(expected.get(i).getY(), actual.getY(), 1e-9);
+            assertEquals(expected.get(i).getZ(), actual.getZ(), 1e-9);
+        }
+    }
+}
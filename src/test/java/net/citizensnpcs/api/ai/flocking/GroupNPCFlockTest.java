@@ -0,0 +1,84 @@
+package net.citizensnpcs.api.ai.flocking;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import net.citizensnpcs.api.npc.NPC;
+
+public class GroupNPCFlockTest {
+    private NPC createNPC(Location location, boolean spawned) {
+        NPC npc = Mockito.mock(NPC.class);
+        Mockito.when(npc.isSpawned()).thenReturn(spawned);
+        Mockito.when(npc.getStoredLocation()).thenReturn(location);
+        if (spawned) {
+            Entity entity = Mockito.mock(Entity.class);
+            Mockito.when(npc.getEntity()).thenReturn(entity);
+            Mockito.when(entity.getLocation(Mockito.any(Location.class))).thenAnswer(invocation -> {
+                Location out = (Location) invocation.getArguments()[0];
+                out.setWorld(location.getWorld());
+                out.setX(location.getX());
+                out.setY(location.getY());
+                out.setZ(location.getZ());
+                return out;
+            });
+        }
+        return npc;
+    }
+
+    @Test
+    public void createKeepsMembers() {
+        List<NPC> npcs = Lists.newArrayList();
+        for (int i = 0; i < 5; i++) {
+            npcs.add(createNPC(new Location(null, i, 0, 0), true));
+        }
+        GroupNPCFlock flock = GroupNPCFlock.create(npcs);
+        assertEquals(npcs, flock.getNPCs());
+        assertEquals(npcs, Lists.newArrayList(flock.getNearby(npcs.get(0))));
+        assertEquals(npcs, GroupNPCFlock.createWithRadius(npcs, 3).getNPCs());
+    }
+
+    @Test
+    public void getNearbyOnlyIncludesMembersWithinRadius() {
+        World[] worlds = { Mockito.mock(World.class), Mockito.mock(World.class) };
+        Random random = new Random(8);
+        List<NPC> npcs = Lists.newArrayList();
+        List<Location> locations = Lists.newArrayList();
+        for (int i = 0; i < 60; i++) {
+            Location location = i % 10 == 9 ? null
+                    : new Location(worlds[random.nextInt(2)], random.nextDouble() * 20, random.nextDouble() * 4,
+                            random.nextDouble() * 20);
+            locations.add(location);
+            npcs.add(createNPC(location, location != null && random.nextBoolean()));
+        }
+        double radius = 6;
+        GroupNPCFlock flock = GroupNPCFlock.createWithRadius(npcs, radius);
+        for (int i = 0; i < npcs.size(); i++) {
+            Collection<NPC> expected = Sets.newIdentityHashSet();
+            for (int j = 0; j < npcs.size(); j++) {
+                Location from = locations.get(i), to = locations.get(j);
+                if (from != null && to != null && from.getWorld() == to.getWorld()
+                        && from.distanceSquared(to) < radius * radius) {
+                    expected.add(npcs.get(j));
+                }
+            }
+            Collection<NPC> actual = flock.getNearby(npcs.get(i));
+            assertThat(actual.size(), is(expected.size()));
+            assertThat(expected.containsAll(actual), is(true));
+        }
+        assertThat(flock.getNearby(createNPC(locations.get(0), true)).isEmpty(), is(true));
+    }
+}
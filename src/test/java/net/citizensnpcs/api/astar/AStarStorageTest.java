@@ -0,0 +1,470 @@
+package net.citizensnpcs.api.astar;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.util.Vector;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.google.common.collect.Lists;
+
+import net.citizensnpcs.api.astar.pathfinder.BlockExaminer;
+import net.citizensnpcs.api.astar.pathfinder.BlockFlags;
+import net.citizensnpcs.api.astar.pathfinder.BlockSource;
+import net.citizensnpcs.api.astar.pathfinder.IncrementalPathfinder;
+import net.citizensnpcs.api.astar.pathfinder.JumpPointExaminer;
+import net.citizensnpcs.api.astar.pathfinder.MinecraftBlockExaminer;
+import net.citizensnpcs.api.astar.pathfinder.Path;
+import net.citizensnpcs.api.astar.pathfinder.PathCache;
+import net.citizensnpcs.api.astar.pathfinder.VectorGoal;
+import net.citizensnpcs.api.astar.pathfinder.VectorNode;
+import net.citizensnpcs.api.util.BoundingBox;
+
+public class AStarStorageTest {
+    private boolean[][] blocked;
+    private boolean[][] directional;
+
+    private float cost(AStarMachine<GridNode, GridPlan> machine) {
+        GridPlan plan = machine.runFully(new GridGoal(SIZE - 1, SIZE - 1), new GridNode(null, 0, 0));
+        assertThat(plan, notNullValue());
+        return plan.cost;
+    }
+
+    @Test
+    public void anytimeSearchRefinesToOptimalPlan() {
+        float expected = cost(AStarMachine.<GridNode, GridPlan> createWithDefaultStorage());
+        AStarMachine<GridNode, GridPlan> machine = AStarMachine.createWithDefaultStorage();
+        AStarMachine<GridNode, GridPlan>.AnytimeAStarState state = machine
+                .getAnytimeStateFor(new GridGoal(SIZE - 1, SIZE - 1), new GridNode(null, 0, 0), 3, 0.5F);
+        GridPlan first = null;
+        while (!state.isFinished()) {
+            GridPlan plan = machine.run(state, 50);
+            if (first == null && plan != null) {
+                first = plan;
+                assertThat(first.cost <= expected * 3 + 0.001, is(true));
+            }
+        }
+        assertThat(first, notNullValue());
+        assertThat(state.isOptimal(), is(true));
+        assertEquals(expected, state.getPlan().cost, 0.001);
+    }
+
+    @Test
+    public void bidirectionalSearchMatchesForwardSearch() {
+        float expected = cost(AStarMachine.<GridNode, GridPlan> createWithDefaultStorage());
+        AStarMachine<GridNode, GridPlan> machine = AStarMachine.createWithStorage(BlockKeyAStarStorage.FACTORY);
+        GridPlan plan = machine.runBidirectionally(new GridGoal(SIZE - 1, SIZE - 1), new GridNode(null, 0, 0), -1);
+        assertThat(plan, notNullValue());
+        assertEquals(expected, plan.cost, 0.001);
+    }
+
+    @Test
+    public void bidirectionalSearchFallsBackOnDirectionalMoves() {
+        float expected = cost(AStarMachine.<GridNode, GridPlan> createWithDefaultStorage());
+        for (int x = 0; x < SIZE; x++) {
+            directional[x][SIZE - 2] = true;
+        }
+        AStarMachine<GridNode, GridPlan> machine = AStarMachine.createWithDefaultStorage();
+        GridPlan plan = machine.runBidirectionally(new GridGoal(SIZE - 1, SIZE - 1), new GridNode(null, 0, 0), -1);
+        assertThat(plan, notNullValue());
+        assertEquals(expected, plan.cost, 0.001);
+    }
+
+    @Test
+    public void schedulerCompletesAllSearches() {
+        float expected = cost(AStarMachine.<GridNode, GridPlan> createWithDefaultStorage());
+        AStarMachine<GridNode, GridPlan> machine = AStarMachine.createWithDefaultStorage();
+        PathfindingScheduler scheduler = new PathfindingScheduler(1, TimeUnit.MILLISECONDS);
+        scheduler.setIterationBatch(4);
+        List<GridPlan> plans = Lists.newArrayList();
+        for (int i = 0; i < 5; i++) {
+            scheduler.submit(machine,
+                    machine.getStateFor(new GridGoal(SIZE - 1, SIZE - 1), new GridNode(null, 0, 0)), i + 1,
+                    plan -> plans.add(plan));
+        }
+        PathfindingScheduler.Ticket cancelled = scheduler.submit(machine,
+                machine.getStateFor(new GridGoal(SIZE - 1, SIZE - 1), new GridNode(null, 0, 0)),
+                plan -> plans.add(plan));
+        cancelled.cancel();
+        while (scheduler.getPendingCount() > 0) {
+            scheduler.tick();
+        }
+        assertThat(plans.size(), is(5));
+        for (GridPlan plan : plans) {
+            assertEquals(expected, plan.cost, 0.001);
+        }
+        assertThat(cancelled.isCancelled(), is(true));
+    }
+
+    @Test
+    public void schedulerCompletesOtherSearchesWhenOneFails() {
+        AStarMachine<GridNode, GridPlan> machine = AStarMachine.createWithDefaultStorage();
+        PathfindingScheduler scheduler = new PathfindingScheduler(1, TimeUnit.SECONDS);
+        List<GridPlan> plans = Lists.newArrayList();
+        GridGoal broken = new GridGoal(SIZE - 1, SIZE - 1) {
+            @Override
+            public boolean isFinished(GridNode node) {
+                if (node.x > 2)
+                    throw new IllegalStateException("broken goal");
+                return super.isFinished(node);
+            }
+        };
+        scheduler.submit(machine, machine.getStateFor(new GridGoal(SIZE - 1, SIZE - 1), new GridNode(null, 0, 0)),
+                plan -> plans.add(plan));
+        AStarMachine<GridNode, GridPlan>.AStarState state = machine.getStateFor(broken, new GridNode(null, 0, 0));
+        PathfindingScheduler.Ticket failing = scheduler.submit(machine, state, plan -> plans.add(plan));
+        scheduler.submit(machine, machine.getStateFor(new GridGoal(SIZE - 1, SIZE - 1), new GridNode(null, 0, 0)),
+                plan -> plans.add(plan));
+        scheduler.tick();
+        assertThat(failing.isDone(), is(true));
+        assertThat(failing.isFailed(), is(true));
+        assertThat(state.getBestNode(), nullValue());
+        assertThat(scheduler.getPendingCount(), is(0));
+        assertThat(plans.size(), is(3));
+        assertThat(plans.get(1), nullValue());
+        assertThat(plans.get(0), notNullValue());
+        assertThat(plans.get(2), notNullValue());
+    }
+
+    @Test
+    public void blockKeyStorageMatchesSimpleStorage() {
+        float expected = cost(AStarMachine.<GridNode, GridPlan> createWithDefaultStorage());
+        AStarMachine<GridNode, GridPlan> machine = AStarMachine.createWithStorage(BlockKeyAStarStorage.FACTORY);
+        assertEquals(expected, cost(machine), 0.001);
+        assertEquals(expected, cost(machine), 0.001);
+    }
+
+    @Test
+    public void incrementalPlannerRepairsAfterChanges() {
+        IncrementalAStarPlanner<GridNode, GridPlan> planner = new IncrementalAStarPlanner<GridNode, GridPlan>(
+                new GridGoal(SIZE - 1, SIZE - 1), new GridNode(null, 0, 0));
+        assertEquals(cost(AStarMachine.<GridNode, GridPlan> createWithDefaultStorage()), planner.run(-1).cost, 0.001);
+        Random random = new Random(3);
+        for (int i = 0; i < 20; i++) {
+            int x = 1 + random.nextInt(SIZE - 2), z = 1 + random.nextInt(SIZE - 2);
+            blocked[x][z] = !blocked[x][z];
+            planner.invalidate(node -> Math.abs(node.x - x) <= 1 && Math.abs(node.z - z) <= 1);
+            GridPlan plan = planner.run(-1);
+            GridPlan expected = AStarMachine.<GridNode, GridPlan> createWithDefaultStorage()
+                    .runFully(new GridGoal(SIZE - 1, SIZE - 1), new GridNode(null, 0, 0));
+            assertThat(plan == null, is(expected == null));
+            if (plan != null) {
+                assertEquals(expected.cost, plan.cost, 0.001);
+            }
+        }
+        planner.setGoal(new GridGoal(SIZE - 1, 0));
+        GridPlan expected = AStarMachine.<GridNode, GridPlan> createWithDefaultStorage()
+                .runFully(new GridGoal(SIZE - 1, 0), new GridNode(null, 0, 0));
+        GridPlan plan = planner.run(-1);
+        assertThat(plan == null, is(expected == null));
+        if (plan != null) {
+            assertEquals(expected.cost, plan.cost, 0.001);
+        }
+    }
+
+    @Test
+    public void incrementalPathfinderFollowsBlockChanges() {
+        World world = createWorld();
+        BlockSource source = new GridBlockSource(world);
+        MinecraftBlockExaminer walk = new MinecraftBlockExaminer();
+        Location start = new Location(world, 0, 1, 0), dest = new Location(world, SIZE - 1, 1, SIZE - 1);
+        IncrementalPathfinder pathfinder = new IncrementalPathfinder(start, dest, 0, source, walk);
+        Random random = new Random(5);
+        for (int i = 0; i < 10; i++) {
+            Path path = pathfinder.getPath(-1);
+            assertThat(path == null, is(Float.isNaN(vectorCost(start, dest, source, walk))));
+            if (path != null) {
+                for (Vector vector : path.getPath()) {
+                    assertThat(blocked[vector.getBlockX()][vector.getBlockZ()], is(false));
+                }
+            }
+            for (int j = 0; j < 20; j++) {
+                int x = random.nextInt(SIZE), z = random.nextInt(SIZE);
+                if ((x == 0 && z == 0) || (x == SIZE - 1 && z == SIZE - 1))
+                    continue;
+                blocked[x][z] = !blocked[x][z];
+                pathfinder.blockChanged(x, 1, z);
+                pathfinder.blockChanged(x, 2, z);
+            }
+        }
+    }
+
+    @Test
+    public void indexedHeapStorageMatchesSimpleStorage() {
+        float expected = cost(AStarMachine.<GridNode, GridPlan> createWithDefaultStorage());
+        AStarMachine<GridNode, GridPlan> machine = AStarMachine.createWithStorage(IndexedHeapAStarStorage.FACTORY);
+        assertEquals(expected, cost(machine), 0.001);
+        assertEquals(expected, cost(machine), 0.001);
+    }
+
+    @Test
+    public void indexedHeapStorageNeverPollsDuplicates() {
+        IndexedHeapAStarStorage storage = new IndexedHeapAStarStorage();
+        GridNode first = new GridNode(null, 1, 1);
+        first.g = 5;
+        GridNode better = new GridNode(null, 1, 1);
+        better.g = 2;
+        storage.open(first);
+        assertThat(storage.shouldExamine(better), is(true));
+        storage.open(better);
+        assertThat(storage.removeBestNode() == better, is(true));
+        assertThat(storage.removeBestNode() == null, is(true));
+        assertThat(storage.getDecreaseKeyCount(), is(1));
+    }
+
+    private World createWorld() {
+        World world = Mockito.mock(World.class);
+        Mockito.when(world.getMaxHeight()).thenReturn(16);
+        Mockito.when(world.getUID()).thenReturn(UUID.randomUUID());
+        Block air = Mockito.mock(Block.class);
+        Mockito.when(air.getType()).thenReturn(Material.AIR);
+        Mockito.when(world.getBlockAt(Mockito.any(Location.class))).thenReturn(air);
+        return world;
+    }
+
+    @Test
+    public void jumpPointSearchMatchesFullExpansionCost() {
+        World world = createWorld();
+        BlockSource source = new GridBlockSource(world);
+        MinecraftBlockExaminer walk = new MinecraftBlockExaminer();
+        JumpPointExaminer jump = new JumpPointExaminer();
+        Random random = new Random(11);
+        int found = 0;
+        for (int i = 0; i < 20; i++) {
+            int sx = random.nextInt(SIZE), sz = random.nextInt(SIZE), gx = random.nextInt(SIZE),
+                    gz = random.nextInt(SIZE);
+            if (blocked[sx][sz] || blocked[gx][gz])
+                continue;
+            Location start = new Location(world, sx, 1, sz), dest = new Location(world, gx, 1, gz);
+            float full = vectorCost(start, dest, source, walk);
+            float pruned = vectorCost(start, dest, source, jump, walk);
+            assertThat(Float.isNaN(pruned), is(Float.isNaN(full)));
+            if (!Float.isNaN(full)) {
+                assertEquals(full, pruned, 0.001);
+                found++;
+            }
+        }
+        assertThat(found > 0, is(true));
+    }
+
+    @Test
+    public void pathCacheRetracesSmoothedSegments() {
+        blocked = new boolean[SIZE][SIZE];
+        World world = createWorld();
+        BlockSource source = new GridBlockSource(world);
+        MinecraftBlockExaminer walk = new MinecraftBlockExaminer();
+        AStarMachine<VectorNode, Path> machine = AStarMachine.createWithDefaultStorage();
+        PathCache cache = new PathCache(8);
+        Location start = new Location(world, 2, 1, 5), dest = new Location(world, 30, 1, 5);
+        Path path = cache.findPath(machine, start, dest, 0, -1, source, walk);
+        assertThat(path, notNullValue());
+        assertThat(cache.findPath(machine, start, dest, 0, -1, source, walk), notNullValue());
+        assertThat(cache.getHits(), is(1L));
+        Vector from = null, to = null;
+        for (Vector vector : path.getPath()) {
+            if (from != null && Math.abs(vector.getBlockX() - from.getBlockX()) > 1) {
+                to = vector;
+                break;
+            }
+            from = vector;
+        }
+        assertThat(to, notNullValue());
+        // block the middle of a smoothed segment, where there is no waypoint to recheck
+        blocked[(from.getBlockX() + to.getBlockX()) / 2][5] = true;
+        assertThat(cache.findPath(machine, start, dest, 0, -1, source, walk), notNullValue());
+        assertThat(cache.getMisses(), is(2L));
+    }
+
+    @Before
+    public void setUp() {
+        Random random = new Random(7);
+        blocked = new boolean[SIZE][SIZE];
+        directional = new boolean[SIZE][SIZE];
+        for (int x = 0; x < SIZE; x++) {
+            for (int z = 0; z < SIZE; z++) {
+                blocked[x][z] = random.nextInt(4) == 0;
+            }
+        }
+        blocked[0][0] = blocked[SIZE - 1][SIZE - 1] = false;
+    }
+
+    private float vectorCost(Location start, Location dest, BlockSource source, BlockExaminer... examiners) {
+        float[] cost = { Float.NaN };
+        VectorGoal goal = new VectorGoal(dest, 0) {
+            @Override
+            public boolean isFinished(VectorNode node) {
+                if (!super.isFinished(node))
+                    return false;
+                cost[0] = ((AStarNode) node).g;
+                return true;
+            }
+        };
+        Path path = AStarMachine.<VectorNode, Path> createWithDefaultStorage().runFully(goal,
+                new VectorNode(goal, start, source, examiners));
+        return path == null ? Float.NaN : cost[0];
+    }
+
+    private class GridBlockSource extends BlockSource {
+        private final World world;
+
+        private GridBlockSource(World world) {
+            this.world = world;
+        }
+
+        @Override
+        public int getBlockFlags(int x, int y, int z) {
+            boolean outside = x < 0 || z < 0 || x >= SIZE || z >= SIZE;
+            if (y == 0 || ((y == 1 || y == 2) && (outside || blocked[x][z])))
+                return BlockFlags.SOLID | BlockFlags.STANDABLE;
+            return BlockFlags.AIR;
+        }
+
+        @Override
+        public BoundingBox getCollisionBox(int x, int y, int z) {
+            return null;
+        }
+
+        @Override
+        public Material getMaterialAt(int x, int y, int z) {
+            return BlockFlags.canStandIn(getBlockFlags(x, y, z)) ? Material.AIR : Material.STONE;
+        }
+
+        @Override
+        public World getWorld() {
+            return world;
+        }
+    }
+
+    private class GridGoal implements BidirectionalAStarGoal<GridNode> {
+        private final int x, z;
+
+        private GridGoal(int x, int z) {
+            this.x = x;
+            this.z = z;
+        }
+
+        @Override
+        public GridNode createReverseStart(GridNode start) {
+            return new GridNode(null, x, z);
+        }
+
+        @Override
+        public float g(GridNode from, GridNode to) {
+            return (float) Math.sqrt((from.x - to.x) * (from.x - to.x) + (from.z - to.z) * (from.z - to.z));
+        }
+
+        @Override
+        public float getInitialCost(GridNode node) {
+            return 0;
+        }
+
+        @Override
+        public float h(GridNode from) {
+            return (float) Math.sqrt((from.x - x) * (from.x - x) + (from.z - z) * (from.z - z));
+        }
+
+        @Override
+        public float h(GridNode from, GridNode to) {
+            return (float) Math.sqrt((from.x - to.x) * (from.x - to.x) + (from.z - to.z) * (from.z - to.z));
+        }
+
+        @Override
+        public boolean isFinished(GridNode node) {
+            return node.x == x && node.z == z;
+        }
+
+        @Override
+        public boolean isReversible(GridNode from, GridNode to) {
+            return !directional[from.x][from.z] && !directional[to.x][to.z];
+        }
+    }
+
+    private class GridNode extends AStarNode implements BlockKeyedNode {
+        private final int x, z;
+
+        private GridNode(GridNode parent, int x, int z) {
+            super(parent);
+            this.x = x;
+            this.z = z;
+        }
+
+        @Override
+        public Plan buildPlan() {
+            float cost = 0;
+            GridNode previous = null;
+            for (GridNode node : this.<GridNode> getParents()) {
+                if (previous != null) {
+                    cost += Math.sqrt((previous.x - node.x) * (previous.x - node.x)
+                            + (previous.z - node.z) * (previous.z - node.z));
+                }
+                previous = node;
+            }
+            return new GridPlan(cost);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof GridNode))
+                return false;
+            GridNode other = (GridNode) obj;
+            return x == other.x && z == other.z;
+        }
+
+        @Override
+        public long getBlockKey() {
+            return BlockKeyedNode.pack(x, 0, z);
+        }
+
+        @Override
+        public Iterable<AStarNode> getNeighbours() {
+            List<AStarNode> neighbours = Lists.newArrayList();
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dz = -1; dz <= 1; dz++) {
+                    int nx = x + dx, nz = z + dz;
+                    if ((dx == 0 && dz == 0) || nx < 0 || nz < 0 || nx >= SIZE || nz >= SIZE || blocked[nx][nz])
+                        continue;
+                    neighbours.add(new GridNode(this, nx, nz));
+                }
+            }
+            return neighbours;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * x + z;
+        }
+    }
+
+    private static class GridPlan implements Plan {
+        private final float cost;
+
+        private GridPlan(float cost) {
+            this.cost = cost;
+        }
+
+        @Override
+        public boolean isComplete() {
+            return true;
+        }
+
+        @Override
+        public void update(Agent agent) {
+        }
+    }
+
+    private static final int SIZE = 48;
+}
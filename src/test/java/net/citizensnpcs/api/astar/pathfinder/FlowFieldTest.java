@@ -0,0 +1,117 @@
+package net.citizensnpcs.api.astar.pathfinder;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import java.util.Random;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import net.citizensnpcs.api.util.BoundingBox;
+
+public class FlowFieldTest {
+    private boolean[][] blocked;
+    private MinecraftBlockExaminer examiner;
+    private BlockSource source;
+    private World world;
+
+    private void assertSameCosts(FlowField expected, FlowField actual) {
+        for (int x = 0; x < SIZE; x++) {
+            for (int z = 0; z < SIZE; z++) {
+                assertEquals(expected.getCost(x, 1, z), actual.getCost(x, 1, z), 0.001);
+            }
+        }
+        assertThat(actual.size(), is(expected.size()));
+    }
+
+    private Location findOpen(Random random) {
+        while (true) {
+            int x = random.nextInt(SIZE), z = random.nextInt(SIZE);
+            if (!blocked[x][z])
+                return new Location(world, x, 1, z);
+        }
+    }
+
+    @Test
+    public void invalidateMatchesRebuild() {
+        Random random = new Random(2);
+        Location goal = findOpen(random);
+        FlowField field = new FlowField(goal, MAX_COST, source, examiner);
+        for (int i = 0; i < 30; i++) {
+            int x = random.nextInt(SIZE), z = random.nextInt(SIZE);
+            if (x == goal.getBlockX() && z == goal.getBlockZ())
+                continue;
+            blocked[x][z] = !blocked[x][z];
+            field.invalidate(x, 1, z);
+            field.invalidate(x, 2, z);
+        }
+        assertSameCosts(new FlowField(goal, MAX_COST, source, examiner), field);
+    }
+
+    @Test
+    public void setGoalMatchesRebuild() {
+        Random random = new Random(4);
+        FlowField field = new FlowField(findOpen(random), MAX_COST, source, examiner);
+        for (int i = 0; i < 10; i++) {
+            Location goal = findOpen(random);
+            field.setGoal(goal);
+            assertSameCosts(new FlowField(goal, MAX_COST, source, examiner), field);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        Random random = new Random(7);
+        blocked = new boolean[SIZE][SIZE];
+        for (int x = 0; x < SIZE; x++) {
+            for (int z = 0; z < SIZE; z++) {
+                blocked[x][z] = random.nextInt(5) == 0;
+            }
+        }
+        world = Mockito.mock(World.class);
+        Mockito.when(world.getMaxHeight()).thenReturn(16);
+        Block air = Mockito.mock(Block.class);
+        Mockito.when(air.getType()).thenReturn(Material.AIR);
+        Mockito.when(world.getBlockAt(Mockito.any(Location.class))).thenReturn(air);
+        source = new GridBlockSource();
+        examiner = new MinecraftBlockExaminer();
+    }
+
+    /**
+     * A floor at height 0 with walls two blocks high on the blocked columns and around the grid.
+     */
+    private class GridBlockSource extends BlockSource {
+        @Override
+        public int getBlockFlags(int x, int y, int z) {
+            boolean outside = x < 0 || z < 0 || x >= SIZE || z >= SIZE;
+            if (y == 0 || ((y == 1 || y == 2) && (outside || blocked[x][z])))
+                return BlockFlags.SOLID | BlockFlags.STANDABLE;
+            return BlockFlags.AIR;
+        }
+
+        @Override
+        public BoundingBox getCollisionBox(int x, int y, int z) {
+            return null;
+        }
+
+        @Override
+        public Material getMaterialAt(int x, int y, int z) {
+            return BlockFlags.canStandIn(getBlockFlags(x, y, z)) ? Material.AIR : Material.STONE;
+        }
+
+        @Override
+        public World getWorld() {
+            return world;
+        }
+    }
+
+    private static final float MAX_COST = 20;
+    private static final int SIZE = 40;
+}
@@ -0,0 +1,212 @@
+package net.citizensnpcs.api.astar.pathfinder;
+
+import java.lang.reflect.Proxy;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.Server;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.block.data.Waterlogged;
+import org.bukkit.block.data.type.Slab;
+import org.bukkit.block.data.type.TrapDoor;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Compares the {@link MinecraftBlockExaminer} material lookup table against the name and set based checks it replaced,
+ * and its block data decoders against the <code>instanceof</code> checks made on every block before. Block data comes
+ * from a stub server that answers {@link Material#createBlockData()} with proxies, so both block data benchmarks
+ * include the proxy calls reading the block state. Run with {@link #main(String[])} from the test classpath.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MaterialClassificationBenchmark {
+    private Material[] blocks;
+    private Material[] materials;
+    private BlockData[] states;
+
+    @Benchmark
+    public void dataDecoders(Blackhole hole) {
+        for (int i = 0; i < blocks.length; i++) {
+            hole.consume(decodeWithTable(blocks[i], states[i]));
+        }
+    }
+
+    @Benchmark
+    public void dataInstanceChecks(Blackhole hole) {
+        for (int i = 0; i < blocks.length; i++) {
+            hole.consume(decodeWithInstanceChecks(blocks[i], states[i]));
+        }
+    }
+
+    @Benchmark
+    public void nameChecks(Blackhole hole) {
+        for (Material material : materials) {
+            String name = material.name();
+            hole.consume(name.contains("DOOR") && !name.contains("TRAPDOOR"));
+            hole.consume(name.contains("GATE") && !name.contains("GATEWAY"));
+            hole.consume(LIQUIDS.contains(material));
+            hole.consume(!UNWALKABLE.contains(material) && material.isSolid());
+            hole.consume(!material.isSolid());
+        }
+    }
+
+    @Setup
+    public void setup() {
+        // the server must be set before MinecraftBlockExaminer classifies the block data of each material
+        installServer();
+        Material[] values = Material.values();
+        Random random = new Random(0);
+        materials = new Material[4096];
+        for (int i = 0; i < materials.length; i++) {
+            materials[i] = values[random.nextInt(values.length)];
+        }
+        List<Material> types = Lists.newArrayList();
+        for (Material material : values) {
+            if (material.isBlock() && !material.name().startsWith("LEGACY_")) {
+                types.add(material);
+            }
+        }
+        blocks = new Material[4096];
+        states = new BlockData[blocks.length];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = types.get(random.nextInt(types.size()));
+            states[i] = createState(blocks[i], random);
+            if (decodeWithTable(blocks[i], states[i]) != decodeWithInstanceChecks(blocks[i], states[i]))
+                throw new IllegalStateException("block data of " + blocks[i] + " decoded differently");
+        }
+    }
+
+    @Benchmark
+    public void table(Blackhole hole) {
+        for (Material material : materials) {
+            hole.consume(MinecraftBlockExaminer.isDoor(material));
+            hole.consume(MinecraftBlockExaminer.isGate(material));
+            hole.consume(MinecraftBlockExaminer.isLiquid(material));
+            hole.consume(MinecraftBlockExaminer.canStandOn(material));
+            hole.consume(MinecraftBlockExaminer.canStandIn(material));
+        }
+    }
+
+    @Benchmark
+    public void tableFlags(Blackhole hole) {
+        for (Material material : materials) {
+            int flags = MinecraftBlockExaminer.getBlockFlags(material, null);
+            hole.consume((flags & BlockFlags.DOOR) != 0);
+            hole.consume((flags & BlockFlags.GATE) != 0);
+            hole.consume((flags & BlockFlags.LIQUID) != 0);
+            hole.consume(BlockFlags.canStandOn(flags));
+            hole.consume(BlockFlags.canStandIn(flags));
+        }
+    }
+
+    /**
+     * Creates block data for the material with a random state, implementing the same block data interface as the
+     * server would for slabs, trapdoors and common waterloggable blocks.
+     */
+    private static BlockData createState(Material material, Random random) {
+        String name = material.name();
+        Class<?> type = name.endsWith("_SLAB") ? Slab.class
+                : name.endsWith("_TRAPDOOR") ? TrapDoor.class
+                        : name.endsWith("_STAIRS") || name.endsWith("_FENCE") || name.endsWith("_WALL")
+                                ? Waterlogged.class
+                                : BlockData.class;
+        Slab.Type slab = Slab.Type.values()[random.nextInt(Slab.Type.values().length)];
+        boolean open = random.nextBoolean(), waterlogged = random.nextBoolean();
+        return (BlockData) Proxy.newProxyInstance(MaterialClassificationBenchmark.class.getClassLoader(),
+                new Class<?>[] { type }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getMaterial":
+                            return material;
+                        case "getType":
+                            return slab;
+                        case "isOpen":
+                            return open;
+                        case "isWaterlogged":
+                            return waterlogged;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            return method.getReturnType() == boolean.class ? false : null;
+                    }
+                });
+    }
+
+    /**
+     * Classifies block data the way {@link MinecraftBlockExaminer} did before the decoders, checking every block.
+     */
+    private static int decodeWithInstanceChecks(Material material, BlockData data) {
+        int flags = MinecraftBlockExaminer.getBlockFlags(material, null);
+        if (data instanceof Slab) {
+            if (((Slab) data).getType() != Slab.Type.BOTTOM) {
+                flags |= BlockFlags.TOP_SLAB;
+            }
+        } else if (data instanceof TrapDoor) {
+            flags |= BlockFlags.TRAPDOOR;
+            if (!((TrapDoor) data).isOpen()) {
+                flags |= BlockFlags.CLOSED_TRAPDOOR;
+            }
+        }
+        try {
+            if (data instanceof Waterlogged && ((Waterlogged) data).isWaterlogged()) {
+                flags |= BlockFlags.WATERLOGGED;
+            }
+        } catch (Throwable t) {
+        }
+        return flags;
+    }
+
+    /**
+     * Classifies block data as {@link BlockSource#getBlockFlags(int, int, int)} does, only reading it for materials
+     * with a decoder.
+     */
+    private static int decodeWithTable(Material material, BlockData data) {
+        return MinecraftBlockExaminer.getBlockFlags(material,
+                MinecraftBlockExaminer.hasDataFlags(material) ? data : null);
+    }
+
+    private static void installServer() {
+        if (Bukkit.getServer() != null)
+            return;
+        Server server = Mockito.mock(Server.class);
+        Mockito.when(server.getLogger()).thenReturn(Logger.getLogger(MaterialClassificationBenchmark.class.getName()));
+        Mockito.when(server.createBlockData(Mockito.any(Material.class)))
+                .thenAnswer(invocation -> createState((Material) invocation.getArguments()[0], new Random(0)));
+        Bukkit.setServer(server);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(MaterialClassificationBenchmark.class.getSimpleName()).build())
+                .run();
+    }
+
+    private static final Set<Material> LIQUIDS = EnumSet.of(Material.WATER, Material.LAVA);
+    private static final Set<Material> UNWALKABLE = EnumSet.of(Material.AIR, Material.CACTUS);
+}
@@ -0,0 +1,116 @@
+package net.citizensnpcs.api.hpastar;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import net.citizensnpcs.api.astar.pathfinder.BlockFlags;
+import net.citizensnpcs.api.astar.pathfinder.BlockSource;
+import net.citizensnpcs.api.util.BoundingBox;
+
+/**
+ * Measures building one {@link HPAGraph} region over a synthetic maze, serially and with {@link ForkJoinPool}s of
+ * different sizes. Run with {@link #main(String[])} from the test classpath.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HPAGraphBuildBenchmark {
+    @Param({ "0", "2", "4", "8" })
+    public int parallelism;
+    private ForkJoinPool pool;
+    private BlockSource source;
+
+    @Benchmark
+    public HPAGraph build() {
+        HPAGraph graph = new HPAGraph(source, 0, 0, 0);
+        graph.setForkJoinPool(pool);
+        graph.addClusters(0, 0);
+        return graph;
+    }
+
+    @Setup
+    public void setup() {
+        pool = parallelism == 0 ? null : new ForkJoinPool(parallelism);
+        source = new MazeBlockSource(0);
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(HPAGraphBuildBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    /**
+     * Two floors of randomly walled corridors inside a 64 block high world.
+     */
+    private static class MazeBlockSource extends BlockSource {
+        private final boolean[] walls = new boolean[SIZE * SIZE * 2];
+        private final World world;
+
+        private MazeBlockSource(long seed) {
+            Random random = new Random(seed);
+            for (int i = 0; i < walls.length; i++) {
+                walls[i] = random.nextInt(4) == 0;
+            }
+            world = Mockito.mock(World.class);
+            Mockito.when(world.getMaxHeight()).thenReturn(64);
+        }
+
+        @Override
+        public int getBlockFlags(int x, int y, int z) {
+            int floor = y < 32 ? 0 : 1;
+            int base = floor == 0 ? 8 : 40;
+            if (y == base)
+                return BlockFlags.SOLID | BlockFlags.STANDABLE;
+            if ((y == base + 1 || y == base + 2) && walls[(floor * SIZE + Math.floorMod(z, SIZE)) * SIZE
+                    + Math.floorMod(x, SIZE)])
+                return BlockFlags.SOLID | BlockFlags.STANDABLE;
+            return BlockFlags.AIR;
+        }
+
+        @Override
+        public BoundingBox getCollisionBox(int x, int y, int z) {
+            return null;
+        }
+
+        @Override
+        public Material getMaterialAt(int x, int y, int z) {
+            return BlockFlags.canStandIn(getBlockFlags(x, y, z)) ? Material.AIR : Material.STONE;
+        }
+
+        @Override
+        public World getWorld() {
+            return world;
+        }
+    }
+
+    private static final int SIZE = 64;
+}
@@ -0,0 +1,296 @@
+package net.citizensnpcs.api.hpastar;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import net.citizensnpcs.api.astar.pathfinder.BlockFlags;
+import net.citizensnpcs.api.astar.pathfinder.BlockSource;
+import net.citizensnpcs.api.util.BoundingBox;
+
+public class HPAGraphTest {
+    private TerrainBlockSource source;
+    private World world;
+
+    private HPAGraphStorage createStorage() throws IOException {
+        File file = File.createTempFile("hpagraph", ".bin");
+        file.deleteOnExit();
+        return new HPAGraphStorage(file);
+    }
+
+    /**
+     * Lists every edge of the graph by the positions of its nodes, in a fixed order.
+     */
+    private List<String> describeEdges(HPAGraph graph) {
+        List<String> edges = Lists.newArrayList();
+        for (int level = 0; level < graph.clusters.size(); level++) {
+            for (HPACluster cluster : graph.clusters.get(level)) {
+                for (HPAGraphNode node : cluster.nodes) {
+                    for (HPAGraphEdge edge : node.getEdges(level)) {
+                        // costs of equally short paths may be summed in a different order
+                        edges.add(level + " " + node + " -> " + edge.to + " " + edge.type + " "
+                                + Math.round(edge.weight * 1000));
+                    }
+                }
+            }
+        }
+        Collections.sort(edges);
+        return edges;
+    }
+
+    /**
+     * Lists the clusters of each level in order with their entrance nodes and the exact costs of their edges.
+     */
+    private List<String> describeGraph(HPAGraph graph) {
+        List<String> lines = Lists.newArrayList();
+        for (int level = 0; level < graph.clusters.size(); level++) {
+            for (HPACluster cluster : graph.clusters.get(level)) {
+                lines.add(level + " " + cluster);
+                for (HPAGraphNode node : cluster.nodes) {
+                    lines.add("  " + node);
+                    for (HPAGraphEdge edge : node.getEdges(level)) {
+                        lines.add("    -> " + edge.to + " " + edge.type + " " + Float.floatToIntBits(edge.weight));
+                    }
+                }
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Returns the first block on the ground starting from the given column, skipping steps and walls.
+     */
+    private Location findGround(HPAGraph graph, int x, int z) {
+        while (!graph.walkable(x, GROUND + 1, z)) {
+            x++;
+        }
+        return new Location(world, x, GROUND + 1, z);
+    }
+
+    @Test
+    public void findPathKeepsEntranceNodes() {
+        HPAGraph graph = new HPAGraph(source, 0, 0, 0);
+        graph.addClusters(0, 0);
+        HPACluster cluster = null;
+        for (HPACluster candidate : graph.clusters.get(0)) {
+            if (!candidate.nodes.isEmpty()) {
+                cluster = candidate;
+                break;
+            }
+        }
+        assertThat(cluster, notNullValue());
+        HPAGraphNode entrance = cluster.nodes.get(0);
+        int edges = entrance.getEdges(0).size();
+        Location start = new Location(world, entrance.x, entrance.y, entrance.z);
+        graph.findPath(start, findGround(graph, 40, 40));
+        boolean kept = false;
+        for (HPAGraphNode node : cluster.nodes) {
+            kept |= node == entrance;
+        }
+        assertThat(kept, is(true));
+        assertThat(entrance.getEdges(0).size() >= edges, is(true));
+    }
+
+    @Test
+    public void findPathOnlySearchesBuiltRegions() {
+        HPAGraph graph = new HPAGraph(source, 0, 0, 0);
+        Location start = findGround(graph, 2, 2), goal = findGround(graph, 60, 60);
+        assertThat(graph.findPath(start, goal), nullValue());
+        assertThat(graph.builtRegions.isEmpty(), is(true));
+        assertThat(graph.buildPendingRegions(0), is(true));
+        graph.addClusters(start.getBlockX(), start.getBlockZ());
+        assertThat(graph.findPath(start, goal), notNullValue());
+    }
+
+    @Test
+    public void parallelBuildMatchesSerialBuild() {
+        HPAGraph serial = new HPAGraph(source, 0, 0, 0);
+        serial.addClusters(0, 0);
+        serial.addClusters(HPAGraph.REGION_SIZE, 0);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            HPAGraph parallel = new HPAGraph(source, 0, 0, 0);
+            parallel.setForkJoinPool(pool);
+            parallel.addClusters(0, 0);
+            parallel.addClusters(HPAGraph.REGION_SIZE, 0);
+            assertEquals(describeGraph(serial), describeGraph(parallel));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void updatedClustersMatchFreshBuild() {
+        HPAGraph graph = new HPAGraph(source, 0, 0, 0);
+        graph.addClusters(0, 0);
+        Random random = new Random(9);
+        for (int i = 0; i < 40; i++) {
+            // favour cluster borders, where entrances between layers are found
+            int x = random.nextBoolean() ? HPAGraph.BASE_CLUSTER_SIZE * random.nextInt(4) - random.nextInt(2)
+                    : random.nextInt(HPAGraph.REGION_SIZE);
+            int z = random.nextInt(HPAGraph.REGION_SIZE);
+            x = Math.floorMod(x, HPAGraph.REGION_SIZE);
+            int from = source.getHeight(x, z), to = GROUND + random.nextInt(4);
+            source.heights[x][z] = to;
+            for (int y = Math.min(from, to) + 1; y <= Math.max(from, to); y++) {
+                graph.blockChanged(x, y, z);
+            }
+        }
+        graph.updateDirtyClusters();
+        HPAGraph fresh = new HPAGraph(source, 0, 0, 0);
+        fresh.addClusters(0, 0);
+        assertEquals(describeEdges(fresh), describeEdges(graph));
+    }
+
+    @Test
+    public void loadRebuildsOnlyChangedChunks() throws IOException {
+        HPAGraph graph = new HPAGraph(source, 0, 0, 0);
+        graph.addClusters(0, 0);
+        HPAGraphStorage storage = createStorage();
+        storage.save(graph);
+        // chunk (1, 1) is the column of level 0 clusters at (16, 16)
+        source.heights[20][20] = source.getHeight(20, 20) == GROUND ? GROUND + 3 : GROUND;
+        HPAGraph loaded = new HPAGraph(source, 0, 0, 0);
+        assertThat(storage.load(loaded), is(true));
+        Map<HPAGraphNode, HPACluster> before = new IdentityHashMap<HPAGraphNode, HPACluster>();
+        for (HPACluster cluster : loaded.clusters.get(0)) {
+            for (HPAGraphNode node : cluster.nodes) {
+                before.put(node, cluster);
+            }
+        }
+        loaded.updateDirtyClusters();
+        Set<HPAGraphNode> after = Sets.newIdentityHashSet();
+        for (HPACluster cluster : loaded.clusters.get(0)) {
+            after.addAll(cluster.nodes);
+        }
+        for (Map.Entry<HPAGraphNode, HPACluster> entry : before.entrySet()) {
+            int dx = Math.abs(entry.getValue().clusterX - 16), dz = Math.abs(entry.getValue().clusterZ - 16);
+            if (dx == 0 && dz == 0) {
+                assertThat(after.contains(entry.getKey()), is(false));
+            } else if (dx > HPAGraph.BASE_CLUSTER_SIZE || dz > HPAGraph.BASE_CLUSTER_SIZE) {
+                // only the changed clusters and the entrances of their neighbours are rebuilt
+                assertThat(after.contains(entry.getKey()), is(true));
+            }
+        }
+        HPAGraph fresh = new HPAGraph(source, 0, 0, 0);
+        fresh.addClusters(0, 0);
+        assertEquals(describeEdges(fresh), describeEdges(loaded));
+    }
+
+    @Test
+    public void saveAndLoadRestoresGraph() throws IOException {
+        HPAGraph graph = new HPAGraph(source, 0, 0, 0);
+        graph.addClusters(0, 0);
+        HPAGraphStorage storage = createStorage();
+        assertThat(storage.save(graph), is(true));
+        HPAGraph loaded = new HPAGraph(source, 0, 0, 0);
+        assertThat(storage.load(loaded), is(true));
+        assertEquals(graph.builtRegions, loaded.builtRegions);
+        for (int level = 0; level <= HPAGraph.MAX_DEPTH; level++) {
+            assertEquals(graph.clusters.get(level).size(), loaded.clusters.get(level).size());
+        }
+        assertEquals(describeEdges(graph), describeEdges(loaded));
+        assertEquals(graph.getChunkHashes(), loaded.getChunkHashes());
+        assertThat(storage.load(new HPAGraph(source, 0, 0, 0)), is(true));
+        assertThat(new HPAGraphStorage(new File(storage.getFile().getPath() + ".missing"))
+                .load(new HPAGraph(source, 0, 0, 0)), is(false));
+    }
+
+    @Test
+    public void saveReportsFailedReplace() throws IOException {
+        HPAGraph graph = new HPAGraph(source, 0, 0, 0);
+        graph.addClusters(0, 0);
+        // a directory that is not empty cannot be replaced by the saved file
+        File folder = Files.createTempDirectory("hpagraph").toFile();
+        File target = new File(folder, "graph");
+        File child = new File(target, "child");
+        assertThat(child.getParentFile().mkdir() && child.createNewFile(), is(true));
+        try {
+            assertThat(new HPAGraphStorage(target).save(graph), is(false));
+            assertThat(child.exists(), is(true));
+            assertEquals(Arrays.asList(target), Arrays.asList(folder.listFiles()));
+        } finally {
+            child.delete();
+            target.delete();
+            folder.delete();
+        }
+    }
+
+    @Before
+    public void setUp() {
+        world = Mockito.mock(World.class);
+        Mockito.when(world.getMaxHeight()).thenReturn(16);
+        Mockito.when(world.getUID()).thenReturn(UUID.randomUUID());
+        Mockito.when(world.isChunkLoaded(Mockito.anyInt(), Mockito.anyInt())).thenReturn(true);
+        source = new TerrainBlockSource(world, new Random(3));
+    }
+
+    /**
+     * Ground at height 3 with raised steps that can be walked onto and walls that cannot, repeating every region.
+     */
+    private static class TerrainBlockSource extends BlockSource {
+        private final int[][] heights = new int[HPAGraph.REGION_SIZE][HPAGraph.REGION_SIZE];
+        private final World world;
+
+        private TerrainBlockSource(World world, Random random) {
+            this.world = world;
+            for (int x = 0; x < heights.length; x++) {
+                for (int z = 0; z < heights.length; z++) {
+                    int roll = random.nextInt(10);
+                    heights[x][z] = roll < 7 ? GROUND : roll < 9 ? GROUND + 1 : GROUND + 3;
+                }
+            }
+        }
+
+        @Override
+        public int getBlockFlags(int x, int y, int z) {
+            return y <= getHeight(x, z) ? BlockFlags.SOLID | BlockFlags.STANDABLE : BlockFlags.AIR;
+        }
+
+        @Override
+        public BoundingBox getCollisionBox(int x, int y, int z) {
+            return null;
+        }
+
+        private int getHeight(int x, int z) {
+            return heights[Math.floorMod(x, heights.length)][Math.floorMod(z, heights.length)];
+        }
+
+        @Override
+        public Material getMaterialAt(int x, int y, int z) {
+            return BlockFlags.canStandIn(getBlockFlags(x, y, z)) ? Material.AIR : Material.STONE;
+        }
+
+        @Override
+        public World getWorld() {
+            return world;
+        }
+    }
+
+    private static final int GROUND = 3;
+}
@@ -0,0 +1,125 @@
+package net.citizensnpcs.api.npc;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.function.Predicate;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+public class NPCSpatialIndexTest {
+    private NPCSpatialIndex index;
+    private final List<Location> locations = Lists.newArrayList();
+    private final List<NPC> npcs = Lists.newArrayList();
+    private World[] worlds;
+
+    private NPC createNPC(int id, Location location) {
+        NPC npc = Mockito.mock(NPC.class);
+        Entity entity = Mockito.mock(Entity.class);
+        Mockito.when(npc.getId()).thenReturn(id);
+        Mockito.when(npc.isSpawned()).thenReturn(true);
+        Mockito.when(npc.getEntity()).thenReturn(entity);
+        Mockito.when(entity.getLocation(Mockito.any(Location.class))).thenAnswer(invocation -> {
+            Location out = (Location) invocation.getArguments()[0];
+            out.setWorld(location.getWorld());
+            out.setX(location.getX());
+            out.setY(location.getY());
+            out.setZ(location.getZ());
+            return out;
+        });
+        return npc;
+    }
+
+    /**
+     * Lists the NPCs within the radius of a location by checking every NPC, nearest first.
+     */
+    private List<NPC> findNearby(Location location, double radius, Predicate<NPC> filter) {
+        List<NPC> found = Lists.newArrayList();
+        for (int i = 0; i < npcs.size(); i++) {
+            Location other = locations.get(i);
+            if (other.getWorld() == location.getWorld() && other.distanceSquared(location) <= radius * radius
+                    && (filter == null || filter.test(npcs.get(i)))) {
+                found.add(npcs.get(i));
+            }
+        }
+        Collections.sort(found,
+                Comparator.comparingDouble(npc -> locations.get(npc.getId()).distanceSquared(location)));
+        return found;
+    }
+
+    @Test
+    public void getNearbyMatchesFullScan() {
+        Random random = new Random(5);
+        for (int i = 0; i < 200; i++) {
+            Location location = randomLocation(random);
+            double radius = random.nextDouble() * (i % 10 == 0 ? 200 : 40);
+            Predicate<NPC> filter = i % 2 == 0 ? null : npc -> npc.getId() % 3 != 0;
+            assertEquals(Sets.newHashSet(findNearby(location, radius, filter)),
+                    Sets.newHashSet(index.getNearby(location, radius, filter)));
+        }
+    }
+
+    @Test
+    public void getNearestReturnsClosestFirst() {
+        Random random = new Random(6);
+        for (int i = 0; i < 200; i++) {
+            Location location = randomLocation(random);
+            double radius = random.nextDouble() * 60;
+            int count = 1 + random.nextInt(8);
+            List<NPC> expected = findNearby(location, radius, null);
+            assertEquals(expected.subList(0, Math.min(count, expected.size())),
+                    index.getNearest(location, count, radius, null));
+        }
+    }
+
+    private Location randomLocation(Random random) {
+        return new Location(worlds[random.nextInt(worlds.length)], random.nextDouble() * 200 - 100,
+                random.nextDouble() * 20, random.nextDouble() * 200 - 100);
+    }
+
+    @Before
+    public void setUp() {
+        worlds = new World[2];
+        for (int i = 0; i < worlds.length; i++) {
+            worlds[i] = Mockito.mock(World.class);
+            Mockito.when(worlds[i].getUID()).thenReturn(UUID.randomUUID());
+        }
+        Random random = new Random(4);
+        for (int i = 0; i < 300; i++) {
+            Location location = randomLocation(random);
+            locations.add(location);
+            npcs.add(createNPC(i, location));
+        }
+        NPCRegistry first = Mockito.mock(NPCRegistry.class), second = Mockito.mock(NPCRegistry.class);
+        Mockito.when(first.iterator()).thenAnswer(invocation -> npcs.subList(0, 150).iterator());
+        Mockito.when(second.iterator()).thenAnswer(invocation -> npcs.subList(150, npcs.size()).iterator());
+        index = new NPCSpatialIndex(Arrays.asList(first, second));
+        index.update();
+    }
+
+    @Test
+    public void updateSkipsDespawnedNPCs() {
+        assertThat(index.size(), is(npcs.size()));
+        Location location = locations.get(0);
+        assertThat(index.getNearby(location, 0).contains(npcs.get(0)), is(true));
+        Mockito.when(npcs.get(0).isSpawned()).thenReturn(false);
+        index.update();
+        assertThat(index.size(), is(npcs.size() - 1));
+        assertThat(index.getNearby(location, 0).contains(npcs.get(0)), is(false));
+    }
+}
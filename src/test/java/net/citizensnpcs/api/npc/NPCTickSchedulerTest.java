@@ -0,0 +1,104 @@
+package net.citizensnpcs.api.npc;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Collections;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class NPCTickSchedulerTest {
+    private long tick;
+
+    private NPC createNPC(int id) {
+        NPC npc = Mockito.mock(NPC.class);
+        Mockito.when(npc.getId()).thenReturn(id);
+        return npc;
+    }
+
+    /**
+     * Creates a spawned NPC in a world without players, so that it is always beyond the level of detail distance.
+     */
+    private NPC createRemoteNPC(int id) {
+        NPC npc = createNPC(id);
+        World world = Mockito.mock(World.class);
+        Mockito.when(world.getPlayers()).thenReturn(Collections.<Player> emptyList());
+        Entity entity = Mockito.mock(Entity.class);
+        Mockito.when(npc.isSpawned()).thenReturn(true);
+        Mockito.when(npc.getEntity()).thenReturn(entity);
+        Mockito.when(entity.getLocation(Mockito.any(Location.class))).thenAnswer(invocation -> {
+            Location location = (Location) invocation.getArguments()[0];
+            location.setWorld(world);
+            return location;
+        });
+        return npc;
+    }
+
+    @Test
+    public void lodKeepsEveryTickRunnables() {
+        NPCTickScheduler scheduler = new NPCTickScheduler(createRemoteNPC(3), () -> tick);
+        NPCTickScheduler.setLodDistance(32);
+        int[] runs = new int[1];
+        for (tick = 0; tick < 160; tick++) {
+            scheduler.tick();
+            scheduler.run(() -> runs[0]++, 1, true);
+        }
+        assertThat(scheduler.getLodMultiplier(), is(8));
+        assertThat(runs[0], is(160));
+    }
+
+    @Test
+    public void lodMultipliesPeriods() {
+        NPCTickScheduler scheduler = new NPCTickScheduler(createRemoteNPC(3), () -> tick);
+        NPCTickScheduler.setLodDistance(32);
+        int[] lodRuns = new int[1], runs = new int[1];
+        for (tick = 0; tick < 160; tick++) {
+            scheduler.tick();
+            scheduler.run(() -> lodRuns[0]++, 2, true);
+            scheduler.run(() -> runs[0]++, 2, false);
+        }
+        // with no players in the world the multiplier becomes 8 on the first update at tick 17, so the runnable ran on
+        // the 8 odd ticks before it and then every 16 ticks from tick 29
+        assertThat(scheduler.getLodMultiplier(), is(8));
+        assertThat(runs[0], is(80));
+        assertThat(lodRuns[0], is(8 + 9));
+        NPCTickScheduler.setLodDistance(0);
+        scheduler.tick();
+        assertThat(scheduler.getLodMultiplier(), is(1));
+    }
+
+    @Test
+    public void periodsAreSpreadByNPCId() {
+        NPCTickScheduler[] schedulers = new NPCTickScheduler[20];
+        for (int i = 0; i < schedulers.length; i++) {
+            schedulers[i] = new NPCTickScheduler(createNPC(i), () -> tick);
+        }
+        int[] runs = new int[schedulers.length];
+        for (tick = 100; tick < 104; tick++) {
+            int[] due = new int[1];
+            for (int i = 0; i < schedulers.length; i++) {
+                int id = i;
+                schedulers[i].tick();
+                schedulers[i].run(() -> {
+                    runs[id]++;
+                    due[0]++;
+                }, 4, true);
+            }
+            assertThat(due[0], is(schedulers.length / 4));
+        }
+        for (int i = 0; i < schedulers.length; i++) {
+            assertThat(runs[i], is(1));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        NPCTickScheduler.setLodDistance(0);
+    }
+}